@@ -0,0 +1,73 @@
+package code;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Payload realistici usati dai benchmark, generati in modo deterministico così che i risultati siano confrontabili
+ * tra esecuzioni diverse
+ */
+public final class Payloads {
+    private static final String[] SERVIZI = {"TV in camera", "Palestra", "Cancellazione gratuita", "Colazione inclusa"};
+
+    private Payloads() {}
+
+    /**
+     * @param citta città degli hotel
+     * @param hotels numero di hotel
+     * @return body di una risposta a searchAllHotels, formattato come lo formatta il server
+     */
+    public static String hotelArray(String citta, int hotels) {
+        JsonArray array = new JsonArray();
+        for (int i = 1; i <= hotels; i++) {
+            JsonObject ratings = new JsonObject();
+            ratings.addProperty("cleaning", i % 6);
+            ratings.addProperty("position", (i * 3) % 6);
+            ratings.addProperty("services", (i * 5) % 6);
+            ratings.addProperty("quality", (i * 7) % 6);
+
+            JsonArray servizi = new JsonArray();
+            for (int s = 0; s <= i % SERVIZI.length; s++) servizi.add(SERVIZI[s]);
+
+            JsonObject hotel = new JsonObject();
+            hotel.addProperty("id", i);
+            hotel.addProperty("name", "Hotel " + citta + " " + i);
+            hotel.addProperty("description", "Un ridente hotel a " + citta + ", in Via della Rinascita, " + i);
+            hotel.addProperty("city", citta);
+            hotel.addProperty("phone", "347-" + (1000000 + i));
+            hotel.add("services", servizi);
+            hotel.addProperty("rate", (i % 50) / 10.0);
+            hotel.add("ratings", ratings);
+            array.add(hotel);
+        }
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return gson.toJson(array);
+    }
+
+    /**
+     * @param body body della risposta
+     * @return la risposta completa come arriva dal socket, compresa la riga vuota di terminazione
+     */
+    public static String rawResponse(String body) {
+        return "200 OK\n" + body + "\n\n";
+    }
+
+    /**
+     * @param cities numero di città aggiornate
+     * @return un messaggio multicast con le nuove prime posizioni
+     */
+    public static byte[] firstPositions(int cities) {
+        JsonArray array = new JsonArray();
+        for (int i = 1; i <= cities; i++) {
+            JsonObject primo = new JsonObject();
+            primo.addProperty("citta", "Citta" + i);
+            primo.addProperty("nomeHotel", "Hotel Citta" + i + " " + (i % 10 + 1));
+            array.add(primo);
+        }
+        return new Gson().toJson(array).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,30 @@
+package code;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della costruzione delle richieste: JsonObject e serializzazione con Gson della recensione
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RequestBenchmark {
+
+    private HotelierClient client;
+
+    @Setup
+    public void setup() {
+        // il client non viene connesso: serve solo per costruire le richieste
+        client = new HotelierClient("localhost", 0);
+    }
+
+    @Benchmark
+    public String insertReview() {
+        return client.creaRichiestaInsertReview("Hotel Roma 1", "Roma", 4.5, 4, 3.5, 5, 2.5);
+    }
+}
@@ -0,0 +1,73 @@
+package code.fakeserver;
+
+import code.HotelierClient;
+import code.entities.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark delle richieste complete (serializzazione, socket, lettura e decodifica della risposta) contro il server
+ * finto avviato nel processo, senza bisogno di un server HOTELIER vero né di rete
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RoundTripBenchmark {
+
+    @Param({"10", "1000"})
+    public int hotels;
+
+    // richieste inviate in pipelining per operazione
+    @Param({"1", "16"})
+    public int pipeline;
+
+    private FakeServer server;
+
+    private HotelierClient client;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new FakeServer(FakeServerConfig.fromArgs("port=0", "cities=Roma", "hotels=" + hotels));
+        int porta = server.start();
+        client = new HotelierClient(server.getHostName(), porta);
+        client.connect();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int searchHotel() {
+        return attendi(pipeline, () -> client.searchHotel("Hotel Roma 1", "Roma"));
+    }
+
+    @Benchmark
+    public int searchAllHotels() {
+        return attendi(pipeline, () -> client.searchAllHotels("Roma").thenApply(r -> {
+            r.getHotels();
+            return r;
+        }));
+    }
+
+    private static int attendi(int n, Supplier<CompletableFuture<Response>> richiesta) {
+        List<CompletableFuture<Response>> risposte = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) risposte.add(richiesta.get());
+        int ok = 0;
+        for (CompletableFuture<Response> risposta : risposte) {
+            if (risposta.join().getStatus() == 200) ok++;
+        }
+        return ok;
+    }
+}
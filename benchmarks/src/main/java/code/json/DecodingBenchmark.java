@@ -0,0 +1,62 @@
+package code.json;
+
+import code.Payloads;
+import code.entities.Hotel;
+import code.entities.Response;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della decodifica del body di searchAllHotels: albero di JsonElement, Gson riflessivo e TypeAdapter scritti
+ * a mano, più il secondo accesso al body di una risposta già decodificata
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DecodingBenchmark {
+
+    @Param({"1", "100", "3000"})
+    public int hotels;
+
+    private String body;
+
+    private Gson reflection;
+
+    private Response decodificata;
+
+    @Setup
+    public void setup() {
+        body = Payloads.hotelArray("Roma", hotels);
+        reflection = new Gson();
+        decodificata = new Response(200, "OK", body);
+        decodificata.getHotels();
+    }
+
+    @Benchmark
+    public JsonElement jsonTree() {
+        return JsonParser.parseString(body);
+    }
+
+    @Benchmark
+    public Hotel[] gsonReflection() {
+        return reflection.fromJson(body, Hotel[].class);
+    }
+
+    @Benchmark
+    public List<Hotel> typeAdapter() {
+        return JsonCodec.leggiLista(body, Hotel.class);
+    }
+
+    @Benchmark
+    public List<Hotel> responseCached() {
+        return decodificata.getHotels();
+    }
+}
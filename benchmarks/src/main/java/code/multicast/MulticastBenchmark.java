@@ -0,0 +1,62 @@
+package code.multicast;
+
+import code.Payloads;
+import code.entities.FirstPositionHotel;
+import code.json.JsonCodec;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della decodifica dei messaggi multicast con le nuove prime posizioni: decoder sui byte a confronto con
+ * la decodifica di Gson, riflessiva e con il TypeAdapter scritto a mano
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MulticastBenchmark {
+
+    @Param({"1", "20", "200"})
+    public int cities;
+
+    private FirstPositionDecoder decoder;
+
+    private Gson gson;
+
+    private Type listType;
+
+    private byte[] messaggio;
+
+    @Setup
+    public void setup() {
+        decoder = new FirstPositionDecoder();
+        gson = new Gson();
+        listType = new TypeToken<ArrayList<FirstPositionHotel>>() {}.getType();
+        messaggio = Payloads.firstPositions(cities);
+    }
+
+    @Benchmark
+    public List<FirstPositionHotel> decoder() {
+        decoder.decodifica(messaggio, 0, messaggio.length);
+        return decoder.getPrimePosizioni();
+    }
+
+    @Benchmark
+    public List<FirstPositionHotel> gsonTypeToken() {
+        return gson.fromJson(new String(messaggio, 0, messaggio.length), listType);
+    }
+
+    @Benchmark
+    public List<FirstPositionHotel> gsonTypeAdapter() {
+        return JsonCodec.leggiLista(new String(messaggio, 0, messaggio.length, StandardCharsets.UTF_8), FirstPositionHotel.class);
+    }
+}
@@ -0,0 +1,165 @@
+package code.net;
+
+import code.Payloads;
+import code.entities.Response;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della ricezione delle risposte: parsing con toResponseObject e lettura completa (accumulo delle righe e
+ * framing) con i tre trasporti, accumulata o in streaming, per risposte a searchAllHotels da un hotel a qualche
+ * migliaio di hotel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ResponseBenchmark {
+
+    @Param({"1", "100", "3000"})
+    public int hotels;
+
+    // risposta accumulata come la restituisce il ciclo di lettura delle righe
+    private String accumulata;
+
+    private LineTransport lineTransport;
+
+    private ChannelTransport channelTransport;
+
+    private BinaryTransport binaryTransport;
+
+    @Setup
+    public void setup() {
+        String body = Payloads.hotelArray("Roma", hotels);
+        accumulata = "200 OK\n" + body + "\n";
+
+        byte[] raw = Payloads.rawResponse(body).getBytes(StandardCharsets.UTF_8);
+        lineTransport = new LineTransport(new CyclicInputStream(raw), new ByteArrayOutputStream(), () -> {});
+        channelTransport = new ChannelTransport(new CyclicChannel(raw));
+
+        // stessa risposta nel formato binario: lunghezza, status code, descrizione e body
+        byte[] payload = ("OK\n" + body).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(6 + payload.length);
+        frame.putInt(payload.length + 2).putShort((short) 200).put(payload);
+        binaryTransport = new BinaryTransport(new CyclicInputStream(frame.array()), new ByteArrayOutputStream(), () -> {});
+    }
+
+    @Benchmark
+    public Response toResponseObject() {
+        return LineTransport.toResponseObject(accumulata);
+    }
+
+    @Benchmark
+    public Response lineTransportRead() {
+        return lineTransport.read();
+    }
+
+    @Benchmark
+    public Response channelTransportRead() throws IOException {
+        return channelTransport.read();
+    }
+
+    @Benchmark
+    public Response channelTransportStreaming() throws IOException {
+        return channelTransport.read(ResponseBenchmark::scorriHotel);
+    }
+
+    @Benchmark
+    public Response lineTransportStreaming() throws IOException {
+        return lineTransport.read(ResponseBenchmark::scorriHotel);
+    }
+
+    @Benchmark
+    public Response binaryTransportRead() throws IOException {
+        return binaryTransport.read();
+    }
+
+    @Benchmark
+    public Response binaryTransportStreaming() throws IOException {
+        return binaryTransport.read(ResponseBenchmark::scorriHotel);
+    }
+
+    private static String scorriHotel(int status, Reader body) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return "";
+    }
+
+    /**
+     * Stream che ripete all'infinito la stessa risposta, senza passare dal socket
+     */
+    static class CyclicInputStream extends InputStream {
+        private final byte[] data;
+        private int pos;
+
+        CyclicInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            byte b = data[pos];
+            pos = (pos + 1) % data.length;
+            return b & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = Math.min(len, data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos = (pos + n) % data.length;
+            return n;
+        }
+    }
+
+    /**
+     * Canale che ripete all'infinito la stessa risposta, senza passare dal socket
+     */
+    static class CyclicChannel implements ByteChannel {
+        private final byte[] data;
+        private int pos;
+
+        CyclicChannel(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            int n = Math.min(dst.remaining(), data.length - pos);
+            dst.put(data, pos, n);
+            pos = (pos + n) % data.length;
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package code.startup;
+
+import code.fakeserver.FakeServer;
+import code.fakeserver.FakeServerConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Tempo di avvio del client interattivo: dall'avvio della JVM alla stampa di "Connected to", contro il server finto
+ * avviato nel processo del benchmark.<br>
+ * Usa il JAR costruito con <code>mvn -Pcds package</code> nella cartella <code>jar</code> (di default
+ * <code>../target</code>), avviato sul posto perché l'archivio AppCDS vale solo per il percorso del JAR usato
+ * nell'addestramento; la cartella di lavoro è una cartella temporanea con la sola configurazione. Con
+ * <code>avvio=rapido</code> la JVM viene lanciata con le opzioni di <code>startup.args</code> (archivio compreso), con
+ * <code>avvio=default</code> senza.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"../target"})
+    public String jar;
+
+    @Param({"default", "rapido"})
+    public String avvio;
+
+    private FakeServer server;
+
+    private Path cartella;
+
+    private List<String> comando;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new FakeServer(FakeServerConfig.fromArgs("port=0"));
+        int porta = server.start();
+
+        Path build = Paths.get(jar).toAbsolutePath();
+        if (!Files.exists(build.resolve("HotelierClient.jar"))) {
+            throw new IllegalStateException("JAR non trovato in " + build + ": eseguire prima mvn -Pcds package");
+        }
+        cartella = Files.createTempDirectory("hotelier-startup");
+        // journal e trace disabilitati: si misura solo l'avvio fino alla connessione
+        Files.write(cartella.resolve("application.properties"), Arrays.asList(
+                "server.address = " + server.getHostName(),
+                "server.port = " + porta,
+                "journal.file =",
+                "trace.file ="), StandardCharsets.UTF_8);
+
+        comando = new ArrayList<>();
+        comando.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (avvio.equals("rapido")) comando.add("@" + build.resolve("startup.args"));
+        comando.add("-jar");
+        comando.add(build.resolve("HotelierClient.jar").toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+        try (Stream<Path> file = Files.walk(cartella)) {
+            file.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean avvioFinoAConnessione() throws IOException, InterruptedException {
+        Process processo = new ProcessBuilder(comando)
+                .directory(cartella.toFile())
+                .redirectErrorStream(true)
+                .start();
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(processo.getInputStream(), StandardCharsets.UTF_8))) {
+            String riga;
+            while ((riga = output.readLine()) != null) {
+                if (riga.startsWith("Connected to")) return true;
+            }
+            throw new IllegalStateException("Il client si è chiuso senza connettersi");
+        } finally {
+            processo.destroyForcibly().waitFor();
+        }
+    }
+}
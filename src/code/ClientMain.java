@@ -1,115 +1,64 @@
 package code;
 
-import code.entities.FirstPositionHotel;
+import code.batch.BatchRunner;
+import code.cache.SearchCache;
 import code.entities.Response;
+import code.fakeserver.FakeServer;
+import code.importer.ReviewImporter;
+import code.journal.ReviewJournal;
+import code.loadtest.LoadGenerator;
+import code.metrics.ClientMetrics;
+import code.multicast.NotificationHistory;
+import code.net.ConnectionPool;
+import code.net.Endpoint;
+import code.net.EndpointSelector;
+import code.ranking.RankingIndex;
+import code.startup.TrainingRun;
+import code.trace.TraceRecorder;
+import code.trace.TraceReplay;
 import code.utils.AppConfig;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
 
+import javax.management.JMException;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.lang.reflect.Type;
-import java.net.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClientMain {
     private String hostName;
 
     private int port;
 
-    // per leggere i messaggi inviati dal server
-    private Scanner in;
-
-    // per scrivere messaggi al server
-    private PrintWriter out;
+    // client programmatico su cui vengono eseguiti i comandi
+    private HotelierClient client;
 
     // per leggere input da terminale
     private Scanner terminal;
 
+    // per stampare a video gli hotel ricevuti in streaming, creato alla prima stampa
     private Gson gson;
 
-    // attende i messaggi multicast
-    private Thread listener;
-
-    // permette allo shutdown di interrompere il thread che attende un messaggio
-    private AtomicBoolean stopListener;
-
-    // variabile utilizzata dal thread in background per salvare le nuove prime posizioni
-    private final Map<String, String> newFirstPositions;
+    // true mentre l'utente è fermo al prompt dei comandi: le notifiche vengono stampate appena arrivano
+    private final AtomicBoolean alPrompt = new AtomicBoolean(false);
 
     public ClientMain() {
         hostName = AppConfig.getServerAddress();
         port = AppConfig.getServerPort();
-        gson = new GsonBuilder().setPrettyPrinting().create();
-        stopListener = new AtomicBoolean(false);
-        newFirstPositions = new HashMap<>();
     }
 
-    private void startBackgroundListener(String group, int port) {
-        this.stopListener.set(false);
-        this.listener = new Thread(() -> {
-            MulticastSocket ms = null;
-            InetAddress ia = null;
-            try {
-                // serve per l'elaborazione del'array di hotel
-                Type listType = new TypeToken<ArrayList<FirstPositionHotel>>() {}.getType();
-
-                ms = new MulticastSocket(port);
-                ia = InetAddress.getByName(group);
-                ms.joinGroup(ia);
-                // ogni due secondi, se non riceve niente, controlla la guardia del while (permette la corretta terminazione del programma)
-                ms.setSoTimeout(2000);
-
-                byte[] buffer = new byte[2048];
-                DatagramPacket dp = new DatagramPacket(buffer, buffer.length);
-                while (!stopListener.get()) {
-                    try {
-                        // attende di ricevere un messaggio
-                        ms.receive(dp);
-
-                        // messaggio ricevuto: elabora l'array e lo inserisce nella mappa, mantenendo la lock
-                        synchronized (this.newFirstPositions) {
-                            // prendo la risposta come stringa
-                            String response = new String(dp.getData(), 0, dp.getLength());
-                            // creo la lista di prime posizioni
-                            ArrayList<FirstPositionHotel> newFirstPositions = null;
-                            try {
-                                newFirstPositions = gson.fromJson(response, listType);
-                            } catch (JsonSyntaxException ignored) {
-                            }
-                            if (newFirstPositions != null && !newFirstPositions.isEmpty()) {
-                                // se ci sono aggiornamenti, li metto nella mappa condivisa this.newPositions
-                                for (FirstPositionHotel newFirstPosition : newFirstPositions) {
-                                    this.newFirstPositions.put(newFirstPosition.getCitta(), newFirstPosition.getNomeHotel());
-                                }
-                            }
-                        }
-
-                    } catch (SocketTimeoutException ignored) {
-                        // scaduto il timer sulla receive, controllo la guardia del while
-                    }
-                }
-
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                // esco dal gruppo multicast
-                if (ms != null && ia != null) {
-                    try {
-                        ms.leaveGroup(ia);
-                        ms.close();
-                    } catch (IOException ignored) {}
-                }
-            }
-        });
-
-        this.listener.start();
+    private Gson gson() {
+        if (gson == null) gson = new GsonBuilder().setPrettyPrinting().create();
+        return gson;
     }
 
     /**
@@ -121,14 +70,7 @@ public class ClientMain {
         System.out.print("username: "); String username = terminal.nextLine();
         System.out.print("password: "); String password = terminal.nextLine();
 
-        JsonObject json = new JsonObject();
-        json.addProperty("username", username);
-        json.addProperty("password", password);
-
-        String request = "register\n" +
-                gson.toJson(json) + "\n";
-
-        Response response = toResponseObject(performRequest(request));
+        Response response = client.register(username, password).join();
 
         System.out.println(response.printResponseFormat());
 
@@ -143,29 +85,31 @@ public class ClientMain {
         System.out.print("username: "); String username = terminal.nextLine();
         System.out.print("password: "); String password = terminal.nextLine();
 
-        JsonObject json = new JsonObject();
-        json.addProperty("username", username);
-        json.addProperty("password", password);
-
-        String request = "login\n" +
-                gson.toJson(json) + "\n";
+        // la connessione potrebbe essere caduta (o non essere mai stata aperta): riprovo prima del login
+        if (!client.isConnected()) {
+            try {
+                client.connect();
+                System.out.println("Connected to " + client.getHostName() + ":" + client.getPort());
+            } catch (IOException e) {
+                System.out.println("Server non raggiungibile: " + e.getMessage());
+                return;
+            }
+        }
 
-        Response response = toResponseObject(performRequest(request));
+        Response response = client.login(username, password).join();
 
         System.out.println(response.printResponseFormat());
 
+        if (response.getStatus() == 200 && !client.isListening()) {
+            System.out.println("Errore nell'elaborazione del corpo della risposta");
+        }
 
-        if (response.getStatus() == 200) {
-            // se il login è andato a buon fine, il client si mette in ascolto di notifiche sui ranking locali
-            // estrapolo gruppo e porta dal corpo della risposta
-            try {
-                JsonObject jsonResponse = gson.fromJson(response.getBody(), JsonObject.class);
-                String group = jsonResponse.get("group").getAsString();
-                int port = jsonResponse.get("port").getAsInt();
-                startBackgroundListener(group, port);
-            } catch (JsonSyntaxException | NullPointerException e) {
-                System.out.println("Errore nell'elaborazione del corpo della risposta");
-            }
+        // invio le recensioni inserite mentre il server non era raggiungibile
+        ReviewJournal journal = client.getJournal();
+        if (response.getStatus() == 200 && journal != null && journal.getPendenti(username) > 0) {
+            ReviewJournal.Esito esito = client.replayJournal().join();
+            System.out.println(esito);
+            for (String rifiutata : esito.getRifiutate()) System.out.println("\t" + rifiutata);
         }
     }
 
@@ -174,20 +118,10 @@ public class ClientMain {
      */
     private void logout() {
 
-        String request = "logout\n";
-
-        Response response = toResponseObject(performRequest(request));
+        Response response = client.logout().join();
 
         System.out.println(response.printResponseFormat());
 
-        if (response.getStatus() == 200) {
-            this.stopListener.set(true);
-
-            synchronized (this.newFirstPositions) {
-                newFirstPositions.clear();
-            }
-        }
-
     }
 
     /**
@@ -199,14 +133,7 @@ public class ClientMain {
         System.out.print("Nome Hotel: "); String hotel = terminal.nextLine();
         System.out.print("Città: "); String citta = terminal.nextLine();
 
-        JsonObject json = new JsonObject();
-        json.addProperty("nomeHotel", hotel);
-        json.addProperty("citta", citta);
-
-        String request = "searchHotel\n" +
-                gson.toJson(json) + "\n";
-
-        Response response = toResponseObject(performRequest(request));
+        Response response = client.searchHotel(hotel, citta).join();
 
         System.out.println(response.printResponseFormat());
 
@@ -214,21 +141,137 @@ public class ClientMain {
 
     /**
      * Permette di cercare gli hotel in una determinata città<br>
-     * Richiede di passare la città
+     * Richiede di passare la città. Gli hotel vengono stampati man mano che arrivano dal server
      */
     private void searchAllHotels() {
 
         System.out.print("Città: "); String citta = terminal.nextLine();
 
-        JsonObject json = new JsonObject();
-        json.addProperty("citta", citta);
+        AtomicInteger trovati = new AtomicInteger();
+        Response response = client.searchAllHotels(citta, hotel -> {
+            trovati.incrementAndGet();
+            System.out.println(gson().toJson(hotel));
+        }).join();
 
-        String request = "searchAllHotels\n" +
-                gson.toJson(json) + "\n";
+        if (response.getStatus() == 200) {
+            System.out.println(response.getStatus() + " " + response.getDescription() + " - hotel trovati: " + trovati.get());
+        } else {
+            System.out.println(response.printResponseFormat());
+        }
 
-        Response response = toResponseObject(performRequest(request));
+    }
 
-        System.out.println(response.printResponseFormat());
+    /**
+     * Permette di vedere i cambi di prima posizione notificati dal server<br>
+     * Richiede di passare la città (vuota per tutte) e l'orario da cui partire (vuoto per tutto lo storico)
+     */
+    private void showStorico() {
+
+        NotificationHistory storico = client.getNotifiche().getStorico();
+        if (storico == null) {
+            System.out.println("Storico delle notifiche disabilitato");
+            return;
+        }
+
+        System.out.print("Città (vuota per tutte): "); String citta = terminal.nextLine().trim();
+        long da = 0;
+        System.out.print("Da (hh:mm di oggi, vuoto per tutto lo storico): "); String orario = terminal.nextLine().trim();
+        if (!orario.isEmpty()) {
+            try {
+                da = LocalTime.parse(orario).atDate(LocalDate.now()).atZone(ZoneId.systemDefault())
+                        .toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                System.out.println("Errore nel valore inserito!");
+                return;
+            }
+        }
+
+        List<NotificationHistory.Cambio> cambi = storico.cambi(citta.isEmpty() ? null : citta, da);
+        if (cambi.isEmpty()) System.out.println("Nessun cambio di prima posizione");
+        DateTimeFormatter formato = DateTimeFormatter.ofPattern("HH:mm:ss");
+        for (NotificationHistory.Cambio cambio : cambi) {
+            String ora = Instant.ofEpochMilli(cambio.getIstante()).atZone(ZoneId.systemDefault()).format(formato);
+            System.out.println(ora + " Città: " + cambio.getCitta() + ", Nome Hotel: " + cambio.getNomeHotel() +
+                    (cambio.getSeq() > 0 ? " (#" + cambio.getSeq() + ")" : ""));
+        }
+        System.out.println(storico);
+
+    }
+
+    /**
+     * Permette di cercare gli hotel di più città in parallelo<br>
+     * Richiede di passare le città separate da virgola. Gli hotel di tutte le città vengono stampati insieme, seguiti
+     * dall'esito della ricerca per ogni città
+     */
+    private void searchMultiCity() {
+
+        System.out.print("Città (separate da virgola): "); String input = terminal.nextLine();
+
+        List<String> citta = new ArrayList<>();
+        for (String c : input.split(",")) {
+            if (!c.trim().isEmpty()) citta.add(c.trim());
+        }
+        if (citta.isEmpty()) {
+            System.out.println("Nessuna città inserita");
+            return;
+        }
+
+        Map<String, Response> risposte = client.searchAllHotels(citta).join();
+        System.out.println(gson().toJson(client.unisciHotel(risposte)));
+        for (Map.Entry<String, Response> entry : risposte.entrySet()) {
+            Response response = entry.getValue();
+            System.out.println(entry.getKey() + ": " + response.getStatus() + " " + response.getDescription());
+        }
+
+    }
+
+    /**
+     * Mostra le classifiche ricavate localmente dalle ricerche e dalle notifiche, senza interrogare il server<br>
+     * Richiede la città (vuota per i primi classificati di tutte le città), poi un hotel di cui mostrare la posizione
+     * o, se vuoto, quanti hotel della classifica mostrare
+     */
+    private void showRanking() {
+
+        RankingIndex ranking = client.getRanking();
+        if (ranking == null) {
+            System.out.println("Classifiche locali disabilitate");
+            return;
+        }
+
+        System.out.print("Città (vuota per i primi di tutte le città): "); String citta = terminal.nextLine().trim();
+        if (citta.isEmpty()) {
+            Map<String, String> leader = ranking.leader();
+            if (leader.isEmpty()) System.out.println("Nessuna classifica locale: cerca prima gli hotel di una città");
+            for (Map.Entry<String, String> entry : leader.entrySet()) {
+                System.out.println("Città: " + entry.getKey() + ", Nome Hotel: " + entry.getValue());
+            }
+            return;
+        }
+
+        RankingIndex.Classifica classifica = ranking.getClassifica(citta);
+        if (classifica == null) {
+            System.out.println("Nessuna classifica locale per " + citta + ": cerca prima i suoi hotel");
+            return;
+        }
+
+        System.out.print("Nome Hotel (vuoto per la classifica): "); String hotel = terminal.nextLine().trim();
+        if (!hotel.isEmpty()) {
+            int posizione = classifica.posizione(hotel);
+            System.out.println(posizione > 0 ? hotel + " è in posizione " + posizione + " su " + classifica.getSize()
+                    : hotel + " non è nella classifica locale di " + citta);
+            return;
+        }
+
+        int n;
+        try {
+            System.out.print("Quanti hotel: "); n = Integer.parseInt(terminal.nextLine().trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Errore nel valore inserito!");
+            return;
+        }
+        List<String> primi = classifica.primi(n);
+        for (int i = 0; i < primi.size(); i++) System.out.println((i + 1) + ". " + primi.get(i));
+        if (!classifica.isCompleta()) System.out.println("(è noto solo il primo posto, notificato dal server)");
 
     }
 
@@ -245,27 +288,27 @@ public class ClientMain {
         double globalScore, pulizia, posizione, servizi, qualita;
         try {
             System.out.print("Global Score: ");globalScore = Double.parseDouble(terminal.nextLine());
-            if (globalScore < 0 || globalScore > 5) {
+            if (!HotelierClient.votoValido(globalScore)) {
                 System.out.println("Errore intervallo global score! Il valore deve essere compreso tra 0 e 5");
                 return;
             }
             System.out.print("Pulizia: ");pulizia = Double.parseDouble(terminal.nextLine());
-            if (pulizia < 0 || pulizia > 5) {
+            if (!HotelierClient.votoValido(pulizia)) {
                 System.out.println("Errore intervallo pulizia! Il valore deve essere compreso tra 0 e 5");
                 return;
             }
             System.out.print("Posizione: ");posizione = Double.parseDouble(terminal.nextLine());
-            if (posizione < 0 || posizione > 5) {
+            if (!HotelierClient.votoValido(posizione)) {
                 System.out.println("Errore intervallo posizione! Il valore deve essere compreso tra 0 e 5");
                 return;
             }
             System.out.print("Servizi: ");servizi = Double.parseDouble(terminal.nextLine());
-            if (servizi < 0 || servizi > 5) {
+            if (!HotelierClient.votoValido(servizi)) {
                 System.out.println("Errore intervallo servizi! Il valore deve essere compreso tra 0 e 5");
                 return;
             }
             System.out.print("Qualità/prezzo: ");qualita = Double.parseDouble(terminal.nextLine());
-            if (qualita < 0 || qualita > 5) {
+            if (!HotelierClient.votoValido(qualita)) {
                 System.out.println("Errore intervallo qualità! Il valore deve essere compreso tra 0 e 5");
                 return;
             }
@@ -274,23 +317,7 @@ public class ClientMain {
             return;
         }
 
-        // i ratings delle categorie vanno in un sotto-oggetto
-        JsonObject rates = new JsonObject();
-        rates.addProperty("cleaning", pulizia);
-        rates.addProperty("position", posizione);
-        rates.addProperty("services", servizi);
-        rates.addProperty("quality", qualita);
-
-        JsonObject json = new JsonObject();
-        json.addProperty("nomeHotel", hotel);
-        json.addProperty("citta", citta);
-        json.addProperty("globalScore", globalScore);
-        json.add("singleScores", rates);
-
-        String request = "insertReview\n" +
-                gson.toJson(json) + "\n";
-
-        Response response = toResponseObject(performRequest(request));
+        Response response = client.insertReview(hotel, citta, globalScore, pulizia, posizione, servizi, qualita).join();
 
         System.out.println(response.printResponseFormat());
 
@@ -301,79 +328,77 @@ public class ClientMain {
      */
     private void showMyBadges() {
 
-        String request = "showMyBadges\n";
-
-        Response response = toResponseObject(performRequest(request));
+        Response response = client.showMyBadges().join();
 
         System.out.println(response.printResponseFormat());
 
     }
 
     /**
-     * Permette di eseguire la richiesta passata come stringa al server.
-     * Si aspetta di riceve un messaggio che termina appena viene trovata una riga vuota
-     * @param request richiesta da mandare, in formato json
-     * @return una stringa rappresentante la risposta del server
+     * Stampa le nuove prime posizioni (se presenti), consumandole dal client
+     * @param aCapo true per andare a capo prima di stampare (il cursore è sul prompt)
+     * @return true se è stato stampato qualcosa
      */
-    private String performRequest(String request) {
-        out.println(request);
-
-        StringBuilder bodyBuilder = new StringBuilder();
-        while (in.hasNextLine()) {
-            String line = in.nextLine();
-            if (line.isEmpty()) break;
-            bodyBuilder.append(line).append("\n");
-        }
+    private synchronized boolean stampaPrimePosizioni(boolean aCapo) {
+        Map<String, String> primePosizioni = client.consumaPrimePosizioni();
+        if (!primePosizioni.isEmpty()) {
+            StringBuilder builder = new StringBuilder(aCapo ? "\n" : "")
+                    .append("-------------------------\nNuovi primi posti:\n");
+
+            for (Map.Entry<String, String> entry : primePosizioni.entrySet()) {
+                builder.append("Città: ").append(entry.getKey())
+                        .append(", Nome Hotel: ").append(entry.getValue()).append("\n");
+            }
 
-        return bodyBuilder.toString();
+            builder.append("-------------------------\n");
+
+            System.out.print(builder);
+            return true;
+        }
+        return false;
     }
 
     /**
-     * Permette di prendere la risposta del server e trasformarla in un oggetto che distingue le diverse parti<br>
-     * Contiene lo status code, la descrizione associata allo status code, e il body
-     * @param response la risposta del server
-     * @return risposta del server come entità Response
-     * @see Response
+     * Invocato dal thread del listener all'arrivo di una notifica: se l'utente è fermo al prompt la stampa subito,
+     * altrimenti resta in attesa fino al prossimo prompt per non sporcare l'output del comando in corso
      */
-    private Response toResponseObject(String response) {
-        Scanner scanner = new Scanner(response);
-        Integer status = scanner.nextInt();
-        String descrizione = scanner.nextLine().trim();
-
-        StringBuilder bodyBuilder = new StringBuilder();
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine();
-            if (line.isEmpty()) break;
-            bodyBuilder.append(line).append("\n");
+    private void notificaPrimaPosizione() {
+        if (!alPrompt.get()) return;
+        synchronized (this) {
+            // ricontrollo dentro il lock: il prompt potrebbe essere stato appena lasciato
+            if (!alPrompt.get()) return;
+            if (stampaPrimePosizioni(true)) System.out.print("=>");
         }
-
-        return new Response(status, descrizione, bodyBuilder.toString());
     }
 
     /**
-     * Stampa le nuove prime posizioni (se presenti), preservando concorrenza sulla mappa
+     * Invocato dal thread di riconnessione quando la connessione caduta è stata ripristinata
+     * @param endpoint server a cui il client si è riconnesso
      */
-    private void stampaPrimePosizioni() {
-        synchronized (this.newFirstPositions) {
-            if (!this.newFirstPositions.isEmpty()) {
-                StringBuilder builder = new StringBuilder("-------------------------\nNuovi primi posti:\n");
-
-                // consuma tutte le città che hanno cambiato posizione e le elimina dalla mappa
-                Iterator<Map.Entry<String, String>> entryIterator = this.newFirstPositions.entrySet().iterator();
-                while (entryIterator.hasNext()) {
-                    Map.Entry<String, String> entry = entryIterator.next();
-                    builder.append("Città: ").append(entry.getKey())
-                            .append(", Nome Hotel: ").append(entry.getValue()).append("\n");
-                    entryIterator.remove();
-                }
-
-                builder.append("-------------------------\n");
-
-                System.out.print(builder);
+    private void notificaRiconnessione(Endpoint endpoint) {
+        synchronized (this) {
+            String messaggio = "Connessione ripristinata con " + endpoint;
+            if (alPrompt.get()) {
+                System.out.print("\n" + messaggio + "\n=>");
+            } else {
+                System.out.println(messaggio);
             }
         }
     }
 
+    /**
+     * Costruisce i server a cui connettersi dalle proprietà server.endpoints (o server.address e server.port) e avvia
+     * le sonde, se abilitate e con più di un server
+     */
+    private static EndpointSelector creaEndpoints() {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String endpoint : AppConfig.getServerEndpoints()) endpoints.add(Endpoint.parse(endpoint, AppConfig.getServerPort()));
+        EndpointSelector selector = new EndpointSelector(endpoints, AppConfig.getServerProbeInterval(),
+                AppConfig.getReconnectMin(), AppConfig.getReconnectMax());
+        selector.start();
+        return selector;
+    }
+
     /**
      * attende i comandi da tastiera
      */
@@ -389,6 +414,9 @@ public class ClientMain {
                 "\t6 -> inserisci recensione di un hotel\n" +
                 "\t7 -> mostra i miei badges\n" +
                 "\t8 -> mostra legenda comandi\n" +
+                "\t9 -> cerca hotel in più città\n" +
+                "\t10 -> mostra le classifiche locali\n" +
+                "\t11 -> mostra lo storico dei primi posti\n" +
                 "\t0 -> chiudi il programma";
 
         System.out.println(legenda);
@@ -399,11 +427,20 @@ public class ClientMain {
             boolean stop = false;
             do {
                 // controllo se ci sono notifiche sulle prime posizioni, e nel caso stampo
-                stampaPrimePosizioni();
-
-                System.out.print("=>");
+                synchronized (this) {
+                    stampaPrimePosizioni(false);
+                    System.out.print("=>");
+                    alPrompt.set(true);
+                }
                 try {
-                    String line = terminal.nextLine();
+                    String line;
+                    try {
+                        line = terminal.nextLine();
+                    } finally {
+                        synchronized (this) {
+                            alPrompt.set(false);
+                        }
+                    }
                     if (!line.isEmpty()) {
                         command = Integer.parseInt(line);
                         stop = true;
@@ -415,64 +452,134 @@ public class ClientMain {
                 }
             } while(!stop);
 
-            switch (command) {
-                case 0:
-                    end = true;
-                    break;
-                case 1:
-                    register();
-                    break;
-                case 2:
-                    login();
-                    break;
-                case 3:
-                    logout();
-                    break;
-                case 4:
-                    searchHotel();
-                    break;
-                case 5:
-                    searchAllHotels();
-                    break;
-                case 6:
-                    insertReview();
-                    break;
-                case 7:
-                    showMyBadges();
-                    break;
-                case 8:
-                    System.out.println(legenda);
-                    break;
-                default:
-                    System.out.println("Nessun comando associato al codice!\n" + legenda);
-                    break;
+            try {
+                switch (command) {
+                    case 0:
+                        end = true;
+                        break;
+                    case 1:
+                        register();
+                        break;
+                    case 2:
+                        login();
+                        break;
+                    case 3:
+                        logout();
+                        break;
+                    case 4:
+                        searchHotel();
+                        break;
+                    case 5:
+                        searchAllHotels();
+                        break;
+                    case 6:
+                        insertReview();
+                        break;
+                    case 7:
+                        showMyBadges();
+                        break;
+                    case 8:
+                        System.out.println(legenda);
+                        break;
+                    case 9:
+                        searchMultiCity();
+                        break;
+                    case 10:
+                        showRanking();
+                        break;
+                    case 11:
+                        showStorico();
+                        break;
+                    default:
+                        System.out.println("Nessun comando associato al codice!\n" + legenda);
+                        break;
+                }
+            } catch (CompletionException e) {
+                // connessione caduta: il client resta attivo, le recensioni vengono salvate nel journal se abilitato
+                System.out.println("Errore di comunicazione con il server: " + e.getCause().getMessage());
             }
         }
     }
 
     /**
-     * Esegue le operazioni necessarie per una corretta terminazione del server, ovvero avvisa il thread listener di uscire
-     * dal while
+     * Espone le metriche via JMX e ne avvia la scrittura periodica su file, se abilitate in application.properties
      */
-    private void shutdown() {
-        this.stopListener.set(true);
+    private void avviaMetriche() {
+        ClientMetrics metriche = ClientMetrics.getDefault();
+        if (AppConfig.isMetricsJmx()) {
+            // l'avvio del server MBean della piattaforma costa centinaia di millisecondi: avviene in background,
+            // senza ritardare la connessione
+            Thread jmx = new Thread(() -> {
+                try {
+                    metriche.registraJmx();
+                } catch (JMException e) {
+                    // le metriche non sono indispensabili: il client funziona comunque
+                    System.out.println("Impossibile esporre le metriche via JMX: " + e.getMessage());
+                }
+            }, "hotelier-jmx");
+            jmx.setDaemon(true);
+            jmx.start();
+        }
+        if (AppConfig.getMetricsDumpFile() != null) {
+            metriche.avviaDump(AppConfig.getMetricsDumpFile(), AppConfig.getMetricsDumpInterval());
+        }
     }
 
     public void start() {
-        System.out.println("Trying " + hostName + ":" + port + " ...");
-        try (Socket socket = new Socket(hostName, port);
-             Scanner in = new Scanner(socket.getInputStream());
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        System.out.println("Trying " + String.join(", ", AppConfig.getServerEndpoints()) + " ...");
+        try (HotelierClient client = new HotelierClient(hostName, port);
              Scanner terminal = new Scanner(System.in)) {
 
-            this.in = in;
-            this.out = out;
+            EndpointSelector endpoints = creaEndpoints();
+            client.setEndpoints(endpoints);
+            client.setListenerRiconnessione(this::notificaRiconnessione);
+
+            if (AppConfig.getCacheSize() > 0) {
+                SearchCache cache = new SearchCache(AppConfig.getCacheSize(), AppConfig.getCacheTtl());
+                client.setCache(cache);
+                // esposta via JMX solo quando le metriche vengono registrate, dopo la connessione
+                ClientMetrics.getDefault().setCache(cache);
+            }
+            if (AppConfig.isRankingIndex()) client.setRanking(new RankingIndex());
+            if (AppConfig.getNotificationHistory() > 0) {
+                client.getNotifiche().setStorico(new NotificationHistory(AppConfig.getNotificationHistory()));
+            }
+            ReviewJournal journal = null;
+            if (AppConfig.getJournalFile() != null) {
+                journal = new ReviewJournal(AppConfig.getJournalFile(), AppConfig.getJournalBatch(), AppConfig.isJournalSync());
+                client.setJournal(journal);
+            }
+            try {
+                client.connect();
+            } catch (IOException e) {
+                // senza journal non c'è niente da fare offline
+                if (journal == null) throw e;
+                System.out.println("Server non raggiungibile: le recensioni salvate in " + journal.getFile() +
+                        " verranno inviate dopo il login dei loro autori");
+            }
+            if (journal != null && journal.getPendenti() > 0) {
+                System.out.println("Recensioni salvate offline in attesa di invio: " + journal.getPendenti());
+            }
+            if (AppConfig.getPoolSize() > 0 && client.isConnected()) {
+                ConnectionPool pool = new ConnectionPool(endpoints, AppConfig.getPoolSize(),
+                        AppConfig.getPoolIdleTimeout(), AppConfig.getPoolWarmup());
+                pool.start();
+                client.setPool(pool);
+            }
+            this.client = client;
             this.terminal = terminal;
+            // le notifiche vengono consegnate in push appena arrivano dal listener
+            client.getNotifiche().iscrivi(primaPosizione -> notificaPrimaPosizione());
 
-            System.out.println("Connected to " + hostName);
+            if (client.isConnected()) System.out.println("Connected to " + client.getHostName() + ":" + client.getPort());
+            // dopo la connessione, così l'esposizione via JMX non ne ritarda l'apertura
+            avviaMetriche();
 
             waitForCommands();
 
+            if (client.getCompressione() != null) System.out.println(client.getCompressione());
+            if (client.getCache() != null) System.out.println(client.getCache());
+            ClientMetrics.getDefault().fermaDump();
             System.out.println("Shutting down client...");
 
         } catch (IOException e) {
@@ -480,8 +587,6 @@ public class ClientMain {
         } catch (Exception e) {
             System.out.println("UNEXPETDED ERROR. SHUTTING DOWN");
             e.printStackTrace();
-        } finally {
-            shutdown();
         }
     }
 
@@ -495,10 +600,45 @@ public class ClientMain {
         return file.exists() && file.canRead();
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         if(!controllaPrerequisiti()) {
             throw new RuntimeException("ERRORE! Il programma per avviarsi correttamente deve avere il file application.properties presente nella stessa cartella del JAR/progetto");
         }
+
+        // registrazione del traffico, per tutte le modalità tranne il replay che legge un trace
+        boolean replay = args.length > 0 && args[0].equals("replay");
+        if (!AppConfig.getTraceFile().isEmpty() && !replay) {
+            TraceRecorder trace = TraceRecorder.avvia(AppConfig.getTraceFile());
+            Runtime.getRuntime().addShutdownHook(new Thread(trace::close));
+        }
+
+        // modalità di avvio alternative, selezionate dal primo argomento
+        if (args.length > 0) {
+            String[] parametri = Arrays.copyOfRange(args, 1, args.length);
+            switch (args[0]) {
+                case "loadtest":
+                    LoadGenerator.main(parametri);
+                    return;
+                case "import":
+                    ReviewImporter.main(parametri);
+                    return;
+                case "fakeserver":
+                    FakeServer.main(parametri);
+                    return;
+                case "replay":
+                    TraceReplay.main(parametri);
+                    return;
+                case "batch":
+                    BatchRunner.main(parametri);
+                    return;
+                case "training":
+                    TrainingRun.main(parametri);
+                    return;
+                default:
+                    throw new IllegalArgumentException("Modalità di avvio sconosciuta: " + args[0]);
+            }
+        }
+
         new ClientMain().start();
     }
 }
@@ -0,0 +1,885 @@
+package code;
+
+import code.cache.SearchCache;
+import code.entities.Hotel;
+import code.entities.LoginInfo;
+import code.entities.Response;
+import code.entities.Review;
+import code.journal.ReviewJournal;
+import code.json.JsonCodec;
+import code.multicast.NotificationBus;
+import code.multicast.RankingListener;
+import code.net.BodyHandler;
+import code.net.Compressione;
+import code.net.Connection;
+import code.net.ConnectionPool;
+import code.net.Endpoint;
+import code.net.EndpointSelector;
+import code.ranking.RankingIndex;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Client programmatico del servizio HOTELIER.<br>
+ * Espone ogni comando del protocollo come metodo tipizzato che restituisce un {@link CompletableFuture}, senza
+ * leggere dal terminale né stampare a video.<br>
+ * Le richieste vengono inviate in pipelining sulla singola connessione: invocare più metodi senza attendere i
+ * risultati (ad esempio una serie di {@link #searchHotel}) scrive le richieste una dietro l'altra, e le risposte
+ * vengono associate ai chiamanti in ordine FIFO.
+ */
+public class HotelierClient implements AutoCloseable {
+    // status della risposta locale restituita quando una recensione viene salvata nel journal invece che inviata
+    public static final int STATUS_SALVATA_OFFLINE = 202;
+
+    private final String hostName;
+
+    private final int port;
+
+    // connessione verso il server, su cui le richieste vengono inviate in pipelining
+    private volatile Connection connection;
+
+    // iscrizione alle notifiche multicast sul listener condiviso, attiva tra login e logout
+    private volatile RankingListener.Iscrizione iscrizione;
+
+    // consegna le nuove prime posizioni ricevute in multicast agli iscritti, e le conserva per consumaPrimePosizioni
+    private final NotificationBus notifiche;
+
+    // se false, il login non avvia l'ascolto delle notifiche multicast
+    private volatile boolean notificheAbilitate;
+
+    // cache delle ricerche, null se disabilitata
+    private volatile SearchCache cache;
+
+    // connessioni aggiuntive su cui distribuire le ricerche, null se le ricerche usano la connessione principale
+    private volatile ConnectionPool pool;
+
+    // journal in cui salvare le recensioni quando il server non è raggiungibile, null se disabilitato
+    private volatile ReviewJournal journal;
+
+    // classifiche delle città ricavate da ricerche e notifiche, null se disabilitate
+    private volatile RankingIndex ranking;
+
+    // server tra cui scegliere, con riconnessione automatica; null per usare solo hostName e port
+    private volatile EndpointSelector endpoints;
+
+    // server della connessione attuale, null se non si usano gli endpoint
+    private volatile Endpoint endpoint;
+
+    // esegue i tentativi di riconnessione, creato con gli endpoint
+    private ScheduledExecutorService riconnessione;
+
+    // username e password dell'ultimo login riuscito, per ripeterlo dopo una riconnessione; null dopo il logout
+    private volatile String[] credenziali;
+
+    // avvisato con il nuovo server dopo ogni riconnessione automatica
+    private volatile Consumer<Endpoint> listenerRiconnessione;
+
+    private final AtomicInteger riconnessioni;
+
+    private volatile boolean chiuso;
+
+    public HotelierClient(String hostName, int port) {
+        this.hostName = hostName;
+        this.port = port;
+        this.notifiche = new NotificationBus();
+        // le ricerche della città cambiata non sono più valide
+        this.notifiche.iscrivi(primaPosizione -> invalidaCitta(primaPosizione.getCitta()));
+        // il nuovo leader va in testa alla classifica locale
+        this.notifiche.iscrivi(primaPosizione -> {
+            RankingIndex ranking = this.ranking;
+            if (ranking != null) ranking.aggiornaPrimo(primaPosizione.getCitta(), primaPosizione.getNomeHotel());
+        });
+        this.notificheAbilitate = true;
+        this.riconnessioni = new AtomicInteger();
+    }
+
+    /**
+     * Apre la connessione verso il server (con gli endpoint, verso quello raggiungibile più veloce)
+     * @throws IOException se non è possibile connettersi
+     */
+    public synchronized void connect() throws IOException {
+        EndpointSelector endpoints = this.endpoints;
+        if (endpoints == null) {
+            this.connection = Connection.open(hostName, port);
+            return;
+        }
+        EndpointSelector.Aperta aperta = endpoints.apri();
+        Connection connection = aperta.getConnection();
+        this.endpoint = aperta.getEndpoint();
+        this.connection = connection;
+        // se la connessione cade (e non l'ha chiusa il client) si riconnette in background
+        connection.getChiusura().thenAccept(causa -> {
+            if (!chiuso && this.connection == connection) riconnetti(0);
+        });
+    }
+
+    /**
+     * Tenta di riaprire la connessione dopo un'attesa con jitter, e ripete il login (che rientra anche nel gruppo
+     * multicast indicato dal server) e l'invio delle recensioni salvate nel journal
+     * @param tentativo numero di tentativi già falliti
+     */
+    private void riconnetti(int tentativo) {
+        EndpointSelector endpoints = this.endpoints;
+        ScheduledExecutorService riconnessione = this.riconnessione;
+        if (endpoints == null || riconnessione == null || chiuso) return;
+        riconnessione.schedule(() -> {
+            synchronized (this) {
+                // già riconnesso, ad esempio da una connect esplicita
+                if (chiuso || isConnected()) return;
+                try {
+                    connect();
+                } catch (IOException e) {
+                    riconnetti(tentativo + 1);
+                    return;
+                }
+            }
+            riconnessioni.incrementAndGet();
+
+            String[] credenziali = this.credenziali;
+            if (credenziali != null) {
+                login(credenziali[0], credenziali[1]).thenAccept(response -> {
+                    ReviewJournal journal = this.journal;
+                    if (response.getStatus() == 200 && journal != null && journal.getPendenti(credenziali[0]) > 0) {
+                        replayJournal();
+                    }
+                });
+            }
+            Consumer<Endpoint> listener = listenerRiconnessione;
+            if (listener != null) listener.accept(endpoint);
+        }, endpoints.attesa(tentativo), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true se la connessione verso il server è aperta
+     */
+    public boolean isConnected() {
+        return connection != null && !connection.isClosed();
+    }
+
+    /**
+     * @return indirizzo del server della connessione attuale
+     */
+    public String getHostName() {
+        Endpoint endpoint = this.endpoint;
+        return endpoint != null ? endpoint.getHostName() : hostName;
+    }
+
+    /**
+     * @return porta del server della connessione attuale
+     */
+    public int getPort() {
+        Endpoint endpoint = this.endpoint;
+        return endpoint != null ? endpoint.getPort() : port;
+    }
+
+    /**
+     * Permette di disabilitare l'ascolto delle notifiche sui ranking locali dopo il login (utile quando nello stesso
+     * processo ci sono molte sessioni, come nel load test)
+     * @param notificheAbilitate false per non avviare il listener multicast
+     */
+    public void setNotificheAbilitate(boolean notificheAbilitate) {
+        this.notificheAbilitate = notificheAbilitate;
+    }
+
+    /**
+     * Abilita la cache delle ricerche: searchHotel e searchAllHotels restituiscono la risposta salvata, se presente.
+     * Le ricerche di una città vengono invalidate quando arriva una notifica di cambio del primo posto o quando
+     * viene inserita una recensione per un suo hotel
+     * @param cache cache da usare, null per disabilitarla
+     */
+    public void setCache(SearchCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return la cache delle ricerche, null se disabilitata
+     */
+    public SearchCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Abilita il pool di connessioni per le ricerche (searchHotel e searchAllHotels), che vengono così distribuite su
+     * più socket. Le richieste legate alla sessione (login, logout, insertReview, showMyBadges) restano sulla
+     * connessione principale. Il pool viene chiuso alla chiusura del client
+     * @param pool pool già avviato, null per usare solo la connessione principale
+     */
+    public void setPool(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return il pool di connessioni per le ricerche, null se disabilitato
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Abilita l'indice locale dei ranking: ogni searchAllHotels andata a buon fine ne aggiorna la classifica della
+     * città, e ogni notifica di cambio del primo posto ne aggiorna il leader. Permette di conoscere classifiche e
+     * posizioni senza interrogare il server
+     * @param ranking indice da usare, null per disabilitarlo
+     */
+    public void setRanking(RankingIndex ranking) {
+        this.ranking = ranking;
+    }
+
+    /**
+     * @return l'indice locale dei ranking, null se disabilitato
+     */
+    public RankingIndex getRanking() {
+        return ranking;
+    }
+
+    /**
+     * Abilita il journal delle recensioni: se il server non è raggiungibile, insertReview salva la recensione nel
+     * journal e restituisce subito una risposta con status {@link #STATUS_SALVATA_OFFLINE}, purché un utente abbia
+     * effettuato il login (altrimenti la recensione non viene salvata e l'invio fallisce). Le recensioni salvate
+     * vanno reinviate con {@link #replayJournal()} dopo il login dello stesso utente. Il journal viene chiuso alla chiusura del client
+     * @param journal journal da usare, null per disabilitarlo
+     */
+    public void setJournal(ReviewJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return il journal delle recensioni, null se disabilitato
+     */
+    public ReviewJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Abilita la scelta del server tra più endpoint e la riconnessione automatica: connect apre la connessione verso
+     * l'endpoint raggiungibile più veloce, e se la connessione cade il client si riconnette in background, con
+     * un'attesa crescente e casuale tra i tentativi, ripetendo l'ultimo login. Gli endpoint vengono chiusi alla
+     * chiusura del client
+     * @param endpoints endpoint già avviati, da impostare prima di connect
+     */
+    public synchronized void setEndpoints(EndpointSelector endpoints) {
+        this.endpoints = endpoints;
+        if (endpoints != null && riconnessione == null) {
+            riconnessione = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "hotelier-reconnect");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return gli endpoint tra cui scegliere il server, null se disabilitati
+     */
+    public EndpointSelector getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @param listener invocato con il nuovo server dopo ogni riconnessione automatica, dal thread di riconnessione
+     */
+    public void setListenerRiconnessione(Consumer<Endpoint> listener) {
+        this.listenerRiconnessione = listener;
+    }
+
+    /**
+     * @return numero di riconnessioni automatiche riuscite
+     */
+    public int getRiconnessioni() {
+        return riconnessioni.get();
+    }
+
+    /**
+     * Registra un nuovo utente
+     * @param username nome utente
+     * @param password password dell'utente
+     * @return la risposta del server
+     */
+    public CompletableFuture<Response> register(String username, String password) {
+        JsonObject json = new JsonObject();
+        json.addProperty("username", username);
+        json.addProperty("password", password);
+
+        return send("register\n" + gson().toJson(json) + "\n");
+    }
+
+    /**
+     * Effettua il login sul server. Se va a buon fine, il client si mette in ascolto delle notifiche sui ranking
+     * locali, usando gruppo e porta contenuti nella risposta; il future si completa dopo l'iscrizione al gruppo
+     * @param username nome utente
+     * @param password password dell'utente
+     * @return la risposta del server
+     */
+    public CompletableFuture<Response> login(String username, String password) {
+        JsonObject json = new JsonObject();
+        json.addProperty("username", username);
+        json.addProperty("password", password);
+
+        // eseguita dal thread che legge le risposte: l'iscrizione al gruppo non lo blocca, così le risposte in
+        // pipelining dietro al login non attendono l'ingresso nel gruppo multicast
+        return send("login\n" + gson().toJson(json) + "\n").thenCompose(response -> {
+            if (response.getStatus() == 200) credenziali = new String[]{username, password};
+            if (response.getStatus() == 200 && notificheAbilitate) {
+                // estrapolo gruppo e porta dal corpo della risposta
+                try {
+                    LoginInfo info = response.getLoginInfo();
+                    if (info != null && info.getGroup() != null) {
+                        // un'iscrizione fallita non fa fallire il login; il completamento passa dal thread del
+                        // listener al pool comune, perché le azioni dei chiamanti non blocchino le notifiche
+                        return startBackgroundListener(info.getGroup(), info.getPort())
+                                .handleAsync((iscritto, errore) -> response);
+                    }
+                } catch (JsonSyntaxException ignored) {
+                    // il login resta valido, ma le notifiche non sono attive (vedi isListening)
+                }
+            }
+            return CompletableFuture.completedFuture(response);
+        });
+    }
+
+    /**
+     * Effettua il logout, interrompendo l'ascolto delle notifiche
+     * @return la risposta del server
+     */
+    public CompletableFuture<Response> logout() {
+        return send("logout\n").thenApply(response -> {
+            if (response.getStatus() == 200) {
+                credenziali = null;
+                if (iscrizione != null) iscrizione.cancella();
+                notifiche.svuota();
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Cerca un hotel per nome e città
+     * @param nomeHotel nome dell'hotel
+     * @param citta città dell'hotel
+     * @return la risposta del server
+     */
+    public CompletableFuture<Response> searchHotel(String nomeHotel, String citta) {
+        SearchCache cache = this.cache;
+        long versione = 0;
+        if (cache != null) {
+            Response cached = cache.getHotel(nomeHotel, citta);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+            versione = cache.getVersione(citta);
+        }
+
+        JsonObject json = new JsonObject();
+        json.addProperty("nomeHotel", nomeHotel);
+        json.addProperty("citta", citta);
+
+        CompletableFuture<Response> future = sendLettura("searchHotel\n" + gson().toJson(json) + "\n", null);
+        if (cache != null) {
+            long versioneRichiesta = versione;
+            future = future.thenApply(response -> {
+                if (response.getStatus() == 200) cache.putHotel(nomeHotel, citta, response, versioneRichiesta);
+                return response;
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Cerca tutti gli hotel di una città
+     * @param citta città da cercare
+     * @return la risposta del server
+     */
+    public CompletableFuture<Response> searchAllHotels(String citta) {
+        SearchCache cache = this.cache;
+        long versione = 0;
+        if (cache != null) {
+            Response cached = cache.getHotels(citta);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+            versione = cache.getVersione(citta);
+        }
+
+        JsonObject json = new JsonObject();
+        json.addProperty("citta", citta);
+
+        CompletableFuture<Response> future = sendLettura("searchAllHotels\n" + gson().toJson(json) + "\n", null);
+        if (cache != null) {
+            long versioneRichiesta = versione;
+            future = future.thenApply(response -> {
+                if (response.getStatus() == 200) cache.putHotels(citta, response, versioneRichiesta);
+                return response;
+            });
+        }
+        RankingIndex ranking = this.ranking;
+        if (ranking != null) {
+            long versioneRanking = ranking.getVersione(citta);
+            future = future.thenApply(response -> {
+                if (response.getStatus() == 200) indicizza(ranking, citta, response, versioneRanking);
+                return response;
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Cerca tutti gli hotel di una città, leggendo la risposta in streaming: ogni hotel viene passato al consumer
+     * appena è stato decodificato, senza tenere in memoria l'intera risposta.<br>
+     * Il consumer viene invocato dal thread lettore della connessione. Se la ricerca va a buon fine il body della
+     * risposta restituita è vuoto, altrimenti contiene il messaggio d'errore del server.<br>
+     * Con la cache abilitata una ricerca già salvata non viene inviata: gli hotel salvati vengono passati al consumer
+     * dal thread chiamante, prima del ritorno. In questo caso gli hotel ricevuti vengono anche raccolti per salvarli
+     * nella cache, quindi la risposta resta in memoria per intero
+     * @param citta città da cercare
+     * @param hotel consumer invocato per ogni hotel, nell'ordine della risposta
+     * @return la risposta del server, completata dopo l'ultimo hotel
+     */
+    public CompletableFuture<Response> searchAllHotels(String citta, Consumer<JsonObject> hotel) {
+        SearchCache cache = this.cache;
+        long versione = 0;
+        if (cache != null) {
+            Response cached = cache.getHotels(citta);
+            if (cached != null) {
+                JsonElement hotels = cached.getJson();
+                // la decodifica è condivisa da chi legge la risposta salvata: al consumer vanno delle copie
+                if (hotels.isJsonArray()) {
+                    for (JsonElement h : hotels.getAsJsonArray()) {
+                        if (h.isJsonObject()) hotel.accept(h.getAsJsonObject().deepCopy());
+                    }
+                } else if (hotels.isJsonObject()) {
+                    hotel.accept(hotels.getAsJsonObject().deepCopy());
+                }
+                return CompletableFuture.completedFuture(new Response(cached.getStatus(), cached.getDescription(), ""));
+            }
+            versione = cache.getVersione(citta);
+        }
+
+        JsonObject json = new JsonObject();
+        json.addProperty("citta", citta);
+
+        RankingIndex ranking = this.ranking;
+        long versioneRanking = ranking != null ? ranking.getVersione(citta) : 0;
+        // hotel ricevuti, da salvare nella cache; null se la cache è disabilitata
+        JsonArray ricevuti = cache != null ? new JsonArray() : null;
+        String richiesta = "searchAllHotels\n" + gson().toJson(json) + "\n";
+        CompletableFuture<Response> future = sendLettura(richiesta, (status, body) -> {
+            if (status != 200) return BodyHandler.testo(body);
+
+            // per l'indice dei ranking basta il nome di ogni hotel
+            List<String> nomi = ranking != null ? new ArrayList<>() : null;
+            JsonReader reader = new JsonReader(body);
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    JsonObject h = gson().fromJson(reader, JsonObject.class);
+                    if (nomi != null) aggiungiNome(nomi, h);
+                    if (ricevuti != null) ricevuti.add(h.deepCopy());
+                    hotel.accept(h);
+                }
+                reader.endArray();
+            } else {
+                // risposta con un solo elemento
+                JsonObject h = gson().fromJson(reader, JsonObject.class);
+                if (nomi != null) aggiungiNome(nomi, h);
+                if (ricevuti != null) ricevuti.add(h.deepCopy());
+                hotel.accept(h);
+            }
+            if (nomi != null) ranking.aggiorna(citta, nomi, versioneRanking);
+            return "";
+        });
+        if (cache != null) {
+            long versioneRichiesta = versione;
+            future = future.thenApply(response -> {
+                if (response.getStatus() == 200) {
+                    cache.putHotels(citta, new Response(response.getStatus(), response.getDescription(),
+                            gson().toJson(ricevuti)), versioneRichiesta);
+                }
+                return response;
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Cerca tutti gli hotel di più città in parallelo: con il pool di connessioni le ricerche vengono distribuite sui
+     * socket del pool, altrimenti vengono inviate in pipelining sulla connessione principale
+     * @param citta città da cercare
+     * @return le risposte del server per ogni città, nell'ordine delle città
+     */
+    public CompletableFuture<Map<String, Response>> searchAllHotels(Collection<String> citta) {
+        Map<String, CompletableFuture<Response>> ricerche = new LinkedHashMap<>();
+        for (String c : citta) ricerche.computeIfAbsent(c, this::searchAllHotels);
+        return unisci(ricerche);
+    }
+
+    /**
+     * Cerca un hotel per nome in più città in parallelo, come {@link #searchAllHotels(Collection)}
+     * @param nomeHotel nome dell'hotel
+     * @param citta città in cui cercarlo
+     * @return le risposte del server per ogni città, nell'ordine delle città
+     */
+    public CompletableFuture<Map<String, Response>> searchHotel(String nomeHotel, Collection<String> citta) {
+        Map<String, CompletableFuture<Response>> ricerche = new LinkedHashMap<>();
+        for (String c : citta) ricerche.computeIfAbsent(c, x -> searchHotel(nomeHotel, x));
+        return unisci(ricerche);
+    }
+
+    private static CompletableFuture<Map<String, Response>> unisci(Map<String, CompletableFuture<Response>> ricerche) {
+        return CompletableFuture.allOf(ricerche.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<String, Response> risposte = new LinkedHashMap<>();
+            for (Map.Entry<String, CompletableFuture<Response>> entry : ricerche.entrySet()) {
+                risposte.put(entry.getKey(), entry.getValue().join());
+            }
+            return risposte;
+        });
+    }
+
+    /**
+     * Unisce gli hotel trovati da una ricerca su più città in un unico array
+     * @param risposte risposte per città, come restituite da {@link #searchAllHotels(Collection)}
+     * @return gli hotel di tutte le ricerche andate a buon fine, nell'ordine delle città
+     * @throws JsonSyntaxException se il body di una risposta non è un json valido
+     */
+    public JsonArray unisciHotel(Map<String, Response> risposte) {
+        JsonArray hotels = new JsonArray();
+        for (Response response : risposte.values()) {
+            if (response.getStatus() != 200) continue;
+            JsonElement body = response.getJson();
+            if (body == null) continue;
+            if (body.isJsonArray()) {
+                hotels.addAll(body.getAsJsonArray());
+            } else {
+                hotels.add(body);
+            }
+        }
+        return hotels;
+    }
+
+    /**
+     * Inserisce una recensione per un hotel. I voti devono essere compresi tra 0 e 5
+     * @return la risposta del server
+     * @throws IllegalArgumentException se uno dei voti è fuori dall'intervallo consentito
+     */
+    public CompletableFuture<Response> insertReview(String nomeHotel, String citta, double globalScore,
+                                                    double pulizia, double posizione, double servizi, double qualita) {
+        String richiesta = creaRichiestaInsertReview(nomeHotel, citta, globalScore, pulizia, posizione, servizi, qualita);
+
+        ReviewJournal journal = this.journal;
+        // senza login la recensione non ha un autore a cui attribuirla: non viene salvata e l'invio fallisce
+        String[] credenziali = this.credenziali;
+        if (journal != null && credenziali != null && !isConnected()) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            try {
+                long id = journal.aggiungi(credenziali[0], richiesta);
+                future.complete(new Response(STATUS_SALVATA_OFFLINE, "Salvata offline",
+                        "Server non raggiungibile: la recensione " + id + " verrà inviata dopo il prossimo login di " + credenziali[0]));
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+
+        return send(richiesta)
+                .thenApply(response -> {
+                    // la recensione può cambiare il ranking della città
+                    if (response.getStatus() == 200) invalidaCitta(citta);
+                    return response;
+                });
+    }
+
+    /**
+     * Inserisce una recensione per un hotel. I voti devono essere compresi tra 0 e 5
+     * @param review recensione da inserire
+     * @return la risposta del server
+     * @throws IllegalArgumentException se uno dei voti è fuori dall'intervallo consentito
+     */
+    public CompletableFuture<Response> insertReview(Review review) {
+        return insertReview(review.getNomeHotel(), review.getCitta(), review.getGlobalScore(),
+                review.getPulizia(), review.getPosizione(), review.getServizi(), review.getQualita());
+    }
+
+    /**
+     * Inserisce un gruppo di recensioni con un'unica scrittura sul socket, in pipelining. Le recensioni vanno
+     * validate prima con {@link #controllaReview}
+     * @param reviews recensioni da inserire
+     * @return le risposte del server, nello stesso ordine delle recensioni; falliscono tutte se il client non è connesso
+     * @throws IllegalArgumentException se una delle recensioni non è valida (in questo caso non viene inviato niente)
+     */
+    public List<CompletableFuture<Response>> insertReviews(List<Review> reviews) {
+        List<String> richieste = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            richieste.add(creaRichiestaInsertReview(review.getNomeHotel(), review.getCitta(), review.getGlobalScore(),
+                    review.getPulizia(), review.getPosizione(), review.getServizi(), review.getQualita()));
+        }
+
+        List<CompletableFuture<Response>> futures = sendAll(richieste);
+        List<CompletableFuture<Response>> risposte = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            String citta = reviews.get(i).getCitta();
+            risposte.add(futures.get(i).thenApply(response -> {
+                if (response.getStatus() == 200) invalidaCitta(citta);
+                return response;
+            }));
+        }
+        return risposte;
+    }
+
+    /**
+     * Controlla che una recensione possa essere inviata: nome dell'hotel e città presenti, voti tra 0 e 5
+     * @param review recensione da controllare
+     * @throws IllegalArgumentException con la descrizione del primo errore trovato
+     */
+    public static void controllaReview(Review review) {
+        if (review.getNomeHotel() == null || review.getNomeHotel().trim().isEmpty()) {
+            throw new IllegalArgumentException("Nome hotel mancante");
+        }
+        if (review.getCitta() == null || review.getCitta().trim().isEmpty()) {
+            throw new IllegalArgumentException("Città mancante");
+        }
+        controllaVoti(review.getGlobalScore(), review.getPulizia(), review.getPosizione(), review.getServizi(), review.getQualita());
+    }
+
+    /**
+     * Costruisce la richiesta di inserimento di una recensione
+     * @return la richiesta da inviare al server
+     * @throws IllegalArgumentException se uno dei voti è fuori dall'intervallo consentito
+     */
+    String creaRichiestaInsertReview(String nomeHotel, String citta, double globalScore,
+                                     double pulizia, double posizione, double servizi, double qualita) {
+        controllaVoti(globalScore, pulizia, posizione, servizi, qualita);
+
+        // serializzata dal ReviewAdapter, con i ratings delle categorie nel sotto-oggetto singleScores
+        Review review = new Review(nomeHotel, citta, globalScore, pulizia, posizione, servizi, qualita);
+        return "insertReview\n" + gson().toJson(review, Review.class) + "\n";
+    }
+
+    /**
+     * Reinvia le recensioni salvate nel journal mentre il server non era raggiungibile, in ordine e a gruppi in
+     * pipelining. Va invocato dopo il login, e invia solo le recensioni dell'utente connesso; ogni recensione a cui il
+     * server risponde viene tolta dal journal, quindi non viene inviata due volte
+     * @return l'esito del replay, o null se il journal è disabilitato
+     */
+    public CompletableFuture<ReviewJournal.Esito> replayJournal() {
+        ReviewJournal journal = this.journal;
+        if (journal == null) return null;
+        String[] credenziali = this.credenziali;
+        if (credenziali == null) {
+            CompletableFuture<ReviewJournal.Esito> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("Login non effettuato"));
+            return future;
+        }
+        // le recensioni reinviate possono cambiare i ranking di qualsiasi città
+        SearchCache cache = this.cache;
+        if (cache != null) cache.svuota();
+        Connection connection = this.connection;
+        if (connection == null) {
+            CompletableFuture<ReviewJournal.Esito> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("Non connesso al server"));
+            return future;
+        }
+        return journal.replay(credenziali[0], connection::sendAll);
+    }
+
+    /**
+     * Richiede i badge dell'utente connesso
+     * @return la risposta del server
+     */
+    public CompletableFuture<Response> showMyBadges() {
+        return send("showMyBadges\n");
+    }
+
+    /**
+     * Controlla che il voto sia compreso tra 0 e 5
+     * @param voto valore da controllare
+     * @return true se il voto è valido, false altrimenti
+     */
+    public static boolean votoValido(double voto) {
+        return voto >= 0 && voto <= 5;
+    }
+
+    private static void controllaVoti(double globalScore, double pulizia, double posizione, double servizi, double qualita) {
+        controllaVoto("global score", globalScore);
+        controllaVoto("pulizia", pulizia);
+        controllaVoto("posizione", posizione);
+        controllaVoto("servizi", servizi);
+        controllaVoto("qualità", qualita);
+    }
+
+    private static void controllaVoto(String nome, double voto) {
+        if (!votoValido(voto)) {
+            throw new IllegalArgumentException("Errore intervallo " + nome + "! Il valore deve essere compreso tra 0 e 5");
+        }
+    }
+
+    /**
+     * Restituisce le nuove prime posizioni ricevute dall'ultima chiamata, eliminandole
+     * @return mappa città -> nome hotel in prima posizione (vuota se non ci sono aggiornamenti)
+     */
+    public Map<String, String> consumaPrimePosizioni() {
+        return notifiche.consuma();
+    }
+
+    /**
+     * Permette di ricevere le nuove prime posizioni appena arrivano, senza attendere consumaPrimePosizioni
+     * @return il canale delle notifiche a cui iscriversi
+     */
+    public NotificationBus getNotifiche() {
+        return notifiche;
+    }
+
+    /**
+     * @return true se il client è in ascolto delle notifiche multicast
+     */
+    public boolean isListening() {
+        return iscrizione != null && iscrizione.isAttiva();
+    }
+
+    /**
+     * @return il listener delle notifiche multicast, condiviso tra i client del processo (con i contatori dei
+     * messaggi ricevuti, troncati e malformati)
+     */
+    public RankingListener getRankingListener() {
+        return RankingListener.getDefault();
+    }
+
+    /**
+     * @return la compressione dei body negoziata con il server (con i contatori dei byte compressi e decompressi), o
+     * null se non in uso
+     */
+    public Compressione getCompressione() {
+        return connection == null ? null : connection.getCompressione();
+    }
+
+    /**
+     * Aggiorna la classifica della città con gli hotel della risposta, che il server invia in ordine di ranking
+     */
+    private void indicizza(RankingIndex ranking, String citta, Response response, long versione) {
+        List<String> nomi = new ArrayList<>();
+        try {
+            // la decodifica resta nella risposta, quindi non viene ripetuta da chi la legge dopo (o dalla cache)
+            for (Hotel hotel : response.getHotels()) {
+                if (hotel.getName() != null) nomi.add(hotel.getName());
+            }
+        } catch (JsonSyntaxException e) {
+            // body non valido: la classifica resta quella precedente
+            return;
+        }
+        ranking.aggiorna(citta, nomi, versione);
+    }
+
+    private static void aggiungiNome(List<String> nomi, JsonObject hotel) {
+        JsonElement nome = hotel.get("name");
+        if (nome != null && nome.isJsonPrimitive()) nomi.add(nome.getAsString());
+    }
+
+    /**
+     * Json compatto su una sola riga: la formattazione serve solo in fase di stampa.<br>
+     * Il Gson viene creato alla prima richiesta e non all'avvio del client
+     */
+    private static Gson gson() {
+        return JsonCodec.gson();
+    }
+
+    private void invalidaCitta(String citta) {
+        SearchCache cache = this.cache;
+        if (cache != null && citta != null) cache.invalidaCitta(citta);
+    }
+
+    private CompletableFuture<Response> send(String request) {
+        return send(request, null);
+    }
+
+    private CompletableFuture<Response> send(String request, BodyHandler handler) {
+        Connection connection = this.connection;
+        if (connection == null) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("Non connesso al server"));
+            return future;
+        }
+        return connection.send(request, handler);
+    }
+
+    /**
+     * Invia un gruppo di richieste sulla connessione principale, con un'unica scrittura sul socket; se il client non
+     * è connesso tutte le risposte falliscono
+     */
+    private List<CompletableFuture<Response>> sendAll(List<String> requests) {
+        Connection connection = this.connection;
+        if (connection != null) return connection.sendAll(requests);
+        List<CompletableFuture<Response>> futures = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("Non connesso al server"));
+            futures.add(future);
+        }
+        return futures;
+    }
+
+    /**
+     * Invia una richiesta che non dipende dalla sessione, sul pool se abilitato
+     */
+    private CompletableFuture<Response> sendLettura(String request, BodyHandler handler) {
+        ConnectionPool pool = this.pool;
+        return pool != null ? pool.send(request, handler) : send(request, handler);
+    }
+
+    /**
+     * Iscrive il client alle notifiche del gruppo senza attendere l'ingresso nel gruppo
+     * @return completato quando l'iscrizione è attiva, o con l'errore se non è possibile unirsi al gruppo
+     */
+    private CompletableFuture<Void> startBackgroundListener(String group, int port) {
+        if (this.iscrizione != null) this.iscrizione.cancella();
+        // dopo un login (anche su un altro server) la numerazione delle notifiche può ricominciare
+        notifiche.ricominciaSequenza();
+        CompletableFuture<RankingListener.Iscrizione> iscrizione;
+        try {
+            iscrizione = RankingListener.getDefault().iscriviAsync(group, port, notifiche::pubblica);
+        } catch (UncheckedIOException e) {
+            iscrizione = new CompletableFuture<>();
+            iscrizione.completeExceptionally(e.getCause());
+        }
+        return iscrizione.thenAccept(nuova -> {
+            // logout o chiusura arrivati prima del completamento dell'iscrizione
+            if (credenziali == null || chiuso) {
+                nuova.cancella();
+            } else {
+                this.iscrizione = nuova;
+            }
+        });
+    }
+
+    /**
+     * Chiude la connessione (e il pool e gli endpoint, se presenti) e cancella l'iscrizione alle notifiche multicast
+     */
+    @Override
+    public void close() {
+        chiuso = true;
+        synchronized (this) {
+            if (riconnessione != null) riconnessione.shutdownNow();
+        }
+        if (iscrizione != null) iscrizione.cancella();
+        if (pool != null) pool.close();
+        if (endpoints != null) endpoints.close();
+        if (connection != null) {
+            connection.close();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ignored) {
+                // le scritture sono già nel file mappato
+            }
+        }
+    }
+}
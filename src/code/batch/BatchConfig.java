@@ -0,0 +1,53 @@
+package code.batch;
+
+import code.utils.AppConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parametri della modalità batch. Ogni parametro viene letto dalla proprietà batch.&lt;nome&gt; di
+ * application.properties, e può essere sovrascritto da riga di comando con un argomento nella forma nome=valore
+ */
+public class BatchConfig {
+    private final Map<String, String> overrides;
+
+    private BatchConfig(Map<String, String> overrides) {
+        this.overrides = overrides;
+    }
+
+    /**
+     * Costruisce la configurazione a partire dagli argomenti passati al programma
+     * @param args argomenti nella forma nome=valore
+     * @return la configurazione
+     * @throws IllegalArgumentException se un argomento non è nella forma corretta
+     */
+    public static BatchConfig fromArgs(String[] args) {
+        Map<String, String> overrides = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Argomento non valido: " + arg + " (atteso nome=valore)");
+            overrides.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+        return new BatchConfig(overrides);
+    }
+
+    private String get(String nome, String defaultValue) {
+        String value = overrides.get(nome);
+        return value != null ? value : AppConfig.getProperty("batch." + nome, defaultValue);
+    }
+
+    /**
+     * @return file da cui leggere i comandi, "-" per lo standard input
+     */
+    public String getFile() {
+        return get("file", "-");
+    }
+
+    /**
+     * @return numero massimo di comandi inviati in pipelining in attesa di risposta
+     */
+    public int getFinestra() {
+        return Math.max(1, Integer.parseInt(get("window", "256")));
+    }
+}
@@ -0,0 +1,222 @@
+package code.batch;
+
+import code.HotelierClient;
+import code.entities.Response;
+import code.entities.Review;
+import code.importer.ReviewParser;
+import code.json.JsonCodec;
+import code.utils.AppConfig;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Modalità batch, non interattiva: legge un comando json per riga da un file o dallo standard input, li invia in
+ * pipelining sulla connessione e scrive un risultato json compatto per riga sullo standard output, nello stesso
+ * ordine dei comandi.<br>
+ * Ogni riga contiene il comando nel campo <code>cmd</code> e gli stessi dati richiesti dai comandi interattivi, ad
+ * esempio <code>{"cmd": "searchHotel", "nomeHotel": "Hotel Roma 1", "citta": "Roma"}</code>; per insertReview i voti
+ * sono globalScore, cleaning, position, services e quality (anche dentro singleScores).<br>
+ * I comandi vengono letti solo quando ci sono meno di <code>window</code> risposte in attesa, quindi la memoria usata
+ * non dipende dalla lunghezza dell'input.
+ */
+public class BatchRunner {
+    private final HotelierClient client;
+
+    private final int finestra;
+
+    private final ReviewParser recensioni;
+
+    // comandi inviati di cui non è ancora stato scritto il risultato, in ordine di lettura
+    private final Deque<Comando> inAttesa;
+
+    private long righe;
+    private long errori;
+
+    public BatchRunner(HotelierClient client, int finestra) {
+        this.client = client;
+        this.finestra = finestra;
+        this.recensioni = ReviewParser.jsonLines();
+        this.inAttesa = new ArrayDeque<>(finestra);
+    }
+
+    /**
+     * Esegue tutti i comandi dell'input
+     * @param input comandi, uno per riga (le righe vuote e quelle che iniziano con # vengono saltate)
+     * @param output destinazione dei risultati, uno per riga
+     * @throws IOException se non è possibile leggere l'input o scrivere i risultati
+     */
+    public void esegui(BufferedReader input, Writer output) throws IOException {
+        String riga;
+        while ((riga = input.readLine()) != null) {
+            righe++;
+            String trimmed = riga.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+            inAttesa.add(invia(righe, trimmed));
+            // i risultati già pronti vengono scritti subito, gli altri quando la finestra è piena
+            while (!inAttesa.isEmpty() && (inAttesa.size() >= finestra || inAttesa.peek().risposta.isDone())) {
+                scrivi(inAttesa.poll(), output);
+            }
+            // scrittura in blocco finché ci sono altre righe già lette, come per le richieste in pipelining
+            if (!input.ready()) output.flush();
+        }
+        while (!inAttesa.isEmpty()) scrivi(inAttesa.poll(), output);
+        output.flush();
+    }
+
+    /**
+     * Interpreta una riga e invia il comando corrispondente
+     */
+    private Comando invia(long numero, String riga) {
+        JsonObject json;
+        String cmd = null;
+        try {
+            JsonElement element = JsonParser.parseString(riga);
+            if (!element.isJsonObject()) throw new IllegalArgumentException("La riga non è un oggetto json");
+            json = element.getAsJsonObject();
+            cmd = testo(json, "cmd");
+            if (cmd == null) throw new IllegalArgumentException("Campo mancante: cmd");
+            return new Comando(numero, cmd, esegui(cmd, json, riga));
+        } catch (JsonParseException e) {
+            return new Comando(numero, null, fallita(new IllegalArgumentException("Json non valido")));
+        } catch (IllegalArgumentException e) {
+            return new Comando(numero, cmd, fallita(e));
+        } catch (RuntimeException e) {
+            // errore del client (ad esempio la connessione caduta durante l'invio): fallisce solo questa riga, le
+            // altre in attesa vengono comunque scritte
+            return new Comando(numero, cmd, fallita(e));
+        }
+    }
+
+    private CompletableFuture<Response> esegui(String cmd, JsonObject json, String riga) {
+        switch (cmd) {
+            case "register":
+                return client.register(richiesto(json, "username"), richiesto(json, "password"));
+            case "login":
+                return client.login(richiesto(json, "username"), richiesto(json, "password"));
+            case "logout":
+                return client.logout();
+            case "searchHotel":
+                return client.searchHotel(richiesto(json, "nomeHotel"), richiesto(json, "citta"));
+            case "searchAllHotels":
+                return client.searchAllHotels(richiesto(json, "citta"));
+            case "insertReview":
+                Review review = recensioni.leggi(riga);
+                return client.insertReview(review.getNomeHotel(), review.getCitta(), review.getGlobalScore(),
+                        review.getPulizia(), review.getPosizione(), review.getServizi(), review.getQualita());
+            case "showMyBadges":
+                return client.showMyBadges();
+            default:
+                throw new IllegalArgumentException("Comando sconosciuto: " + cmd);
+        }
+    }
+
+    /**
+     * Attende la risposta del comando e ne scrive il risultato su una riga:
+     * <code>{"line": n, "cmd": "...", "status": 200, "body": ...}</code>, con il body json compattato (o come stringa
+     * se è un messaggio di testo), oppure <code>{"line": n, "cmd": "...", "error": "..."}</code>
+     */
+    private void scrivi(Comando comando, Writer output) throws IOException {
+        JsonWriter out = new JsonWriter(output);
+        out.setHtmlSafe(false);
+        out.beginObject();
+        out.name("line").value(comando.riga);
+        if (comando.cmd != null) out.name("cmd").value(comando.cmd);
+        try {
+            Response response = comando.risposta.join();
+            out.name("status").value(response.getStatus());
+            String compatto = JsonCodec.compatta(response.getBody());
+            if (compatto != null) {
+                out.name("body").jsonValue(compatto);
+            } else {
+                out.name("body").value(response.getBody() == null ? "" : response.getBody().trim());
+            }
+        } catch (CompletionException | CancellationException e) {
+            errori++;
+            Throwable causa = e.getCause() != null ? e.getCause() : e;
+            out.name("error").value(causa.getMessage() != null ? causa.getMessage() : causa.toString());
+        }
+        out.endObject();
+        out.flush();
+        output.write('\n');
+    }
+
+    /**
+     * @return righe lette dall'input
+     */
+    public long getRighe() {
+        return righe;
+    }
+
+    /**
+     * @return comandi non validi o senza risposta dal server
+     */
+    public long getErrori() {
+        return errori;
+    }
+
+    private static String testo(JsonObject json, String campo) {
+        JsonElement valore = json.get(campo);
+        if (valore == null || valore.isJsonNull()) return null;
+        if (!valore.isJsonPrimitive()) throw new IllegalArgumentException("Valore non valido per " + campo);
+        return valore.getAsString();
+    }
+
+    private static String richiesto(JsonObject json, String campo) {
+        String valore = testo(json, campo);
+        if (valore == null) throw new IllegalArgumentException("Campo mancante: " + campo);
+        return valore;
+    }
+
+    private static CompletableFuture<Response> fallita(Throwable causa) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        future.completeExceptionally(causa);
+        return future;
+    }
+
+    /**
+     * Comando inviato in attesa del risultato
+     */
+    private static class Comando {
+        private final long riga;
+        private final String cmd;
+        private final CompletableFuture<Response> risposta;
+
+        private Comando(long riga, String cmd, CompletableFuture<Response> risposta) {
+            this.riga = riga;
+            this.cmd = cmd;
+            this.risposta = risposta;
+        }
+    }
+
+    /**
+     * Esegue i comandi verso il server configurato in application.properties
+     * @param args parametri nella forma nome=valore (vedi {@link BatchConfig})
+     */
+    public static void main(String[] args) throws IOException {
+        BatchConfig config = BatchConfig.fromArgs(args);
+        String file = config.getFile();
+        InputStream in = file.equals("-") ? System.in : new FileInputStream(file);
+        try (HotelierClient client = new HotelierClient(AppConfig.getServerAddress(), AppConfig.getServerPort());
+             BufferedReader input = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            // le notifiche non servono a un batch
+            client.setNotificheAbilitate(false);
+            client.connect();
+            Writer output = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            BatchRunner runner = new BatchRunner(client, config.getFinestra());
+            runner.esegui(input, output);
+            System.err.println("Batch completato: " + runner.getRighe() + " righe, " + runner.getErrori() + " errori");
+        }
+    }
+}
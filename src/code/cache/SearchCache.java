@@ -0,0 +1,226 @@
+package code.cache;
+
+import code.entities.Response;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache delle ricerche (searchHotel per nome e città, searchAllHotels per città), con scadenza dopo un tempo
+ * massimo ed eliminazione delle voci usate meno di recente quando viene superata la dimensione massima.<br>
+ * Le voci di una città vengono invalidate quando il suo ranking cambia, e ogni invalidazione cambia la versione della
+ * città: una risposta richiesta prima di un'invalidazione della sua città (o di uno svuotamento) non viene salvata,
+ * perché potrebbe essere già vecchia, mentre le invalidazioni delle altre città non la scartano.<br>
+ * I contatori sono esposti via JMX insieme alle metriche del client (vedi {@link code.metrics.ClientMetrics#setCache}).
+ */
+public class SearchCache implements SearchCacheMXBean {
+    private final int maxEntries;
+
+    private final long ttlNanos;
+
+    // ordinata per accesso: la prima voce è quella usata meno di recente
+    private final LinkedHashMap<Chiave, Voce> entries;
+
+    // contatore delle invalidazioni: ogni città ha come versione il valore della sua ultima invalidazione, o
+    // dell'ultimo svuotamento se è più recente
+    private long contatore;
+    private long svuotata;
+    private final Map<String, Long> versioni;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    private final AtomicLong invalidations;
+
+    /**
+     * @param maxEntries numero massimo di ricerche salvate
+     * @param ttlMillis tempo dopo cui una ricerca salvata scade, in millisecondi
+     */
+    public SearchCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.invalidations = new AtomicLong();
+        this.versioni = new HashMap<>();
+        this.entries = new LinkedHashMap<Chiave, Voce>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Chiave, Voce> eldest) {
+                if (size() > SearchCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return la risposta salvata per la ricerca di un hotel, o null se assente o scaduta
+     */
+    public Response getHotel(String nomeHotel, String citta) {
+        return get(new Chiave(citta, nomeHotel));
+    }
+
+    /**
+     * @return la risposta salvata per la ricerca degli hotel di una città, o null se assente o scaduta
+     */
+    public Response getHotels(String citta) {
+        return get(new Chiave(citta, null));
+    }
+
+    /**
+     * Salva la risposta alla ricerca di un hotel, se nel frattempo la città non è stata invalidata
+     * @param versione versione della città letta prima di inviare la richiesta (vedi {@link #getVersione(String)})
+     */
+    public void putHotel(String nomeHotel, String citta, Response response, long versione) {
+        put(new Chiave(citta, nomeHotel), response, versione);
+    }
+
+    /**
+     * Salva la risposta alla ricerca degli hotel di una città, se nel frattempo la città non è stata invalidata
+     * @param versione versione della città letta prima di inviare la richiesta (vedi {@link #getVersione(String)})
+     */
+    public void putHotels(String citta, Response response, long versione) {
+        put(new Chiave(citta, null), response, versione);
+    }
+
+    /**
+     * @param citta città della ricerca
+     * @return la versione corrente della città, da leggere prima di inviare una richiesta il cui risultato verrà salvato
+     */
+    public synchronized long getVersione(String citta) {
+        Long versione = versioni.get(citta);
+        return versione == null ? svuotata : Math.max(versione, svuotata);
+    }
+
+    /**
+     * Elimina tutte le ricerche relative a una città (sia per nome che per città)
+     * @param citta città il cui ranking è cambiato
+     */
+    public synchronized void invalidaCitta(String citta) {
+        versioni.put(citta, ++contatore);
+        Iterator<Chiave> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (Objects.equals(iterator.next().citta, citta)) {
+                iterator.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Svuota la cache
+     */
+    @Override
+    public synchronized void svuota() {
+        svuotata = ++contatore;
+        versioni.clear();
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    private synchronized Response get(Chiave chiave) {
+        Voce voce = entries.get(chiave);
+        if (voce == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (System.nanoTime() - voce.salvata > ttlNanos) {
+            entries.remove(chiave);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return voce.response;
+    }
+
+    private synchronized void put(Chiave chiave, Response response, long versione) {
+        if (versione != getVersione(chiave.citta)) return;
+        entries.put(chiave, new Voce(response, System.nanoTime()));
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = getHits();
+        long totale = hits + getMisses();
+        return totale == 0 ? 0 : (double) hits / totale;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCache{size=" + getSize() + ", hits=" + getHits() + ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() + ", invalidations=" + getInvalidations() + "}";
+    }
+
+    /**
+     * Chiave di una ricerca: nomeHotel è null per le ricerche per città
+     */
+    private static class Chiave {
+        private final String citta;
+        private final String nomeHotel;
+
+        private Chiave(String citta, String nomeHotel) {
+            this.citta = citta;
+            this.nomeHotel = nomeHotel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Chiave)) return false;
+            Chiave chiave = (Chiave) o;
+            return Objects.equals(citta, chiave.citta) && Objects.equals(nomeHotel, chiave.nomeHotel);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(citta) + Objects.hashCode(nomeHotel);
+        }
+    }
+
+    private static class Voce {
+        private final Response response;
+        private final long salvata;
+
+        private Voce(Response response, long salvata) {
+            this.response = response;
+            this.salvata = salvata;
+        }
+    }
+}
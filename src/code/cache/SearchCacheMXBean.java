@@ -0,0 +1,47 @@
+package code.cache;
+
+/**
+ * Contatori della cache delle ricerche, esposti via JMX per dimensionarla (cache.size e cache.ttl)
+ */
+public interface SearchCacheMXBean {
+
+    /**
+     * @return ricerche salvate
+     */
+    int getSize();
+
+    /**
+     * @return numero massimo di ricerche salvate
+     */
+    int getMaxEntries();
+
+    /**
+     * @return ricerche servite dalla cache
+     */
+    long getHits();
+
+    /**
+     * @return ricerche non presenti o scadute, inviate al server
+     */
+    long getMisses();
+
+    /**
+     * @return frazione delle ricerche servite dalla cache (0 se non ce ne sono state)
+     */
+    double getHitRatio();
+
+    /**
+     * @return ricerche eliminate perché la cache era piena
+     */
+    long getEvictions();
+
+    /**
+     * @return ricerche eliminate perché il ranking della città è cambiato
+     */
+    long getInvalidations();
+
+    /**
+     * Elimina tutte le ricerche salvate
+     */
+    void svuota();
+}
@@ -0,0 +1,25 @@
+package code.entities;
+
+public class Badge {
+    private String nome;
+
+    public Badge() {
+    }
+
+    public Badge(String nome) {
+        this.nome = nome;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public void setNome(String nome) {
+        this.nome = nome;
+    }
+
+    @Override
+    public String toString() {
+        return nome;
+    }
+}
@@ -4,6 +4,9 @@ public class FirstPositionHotel {
     private String citta;
     private String nomeHotel;
 
+    // numero di sequenza assegnato dal server al cambio, 0 se il server non lo indica
+    private long seq;
+
     public String getCitta() {
         return citta;
     }
@@ -19,4 +22,12 @@ public class FirstPositionHotel {
     public void setNomeHotel(String nomeHotel) {
         this.nomeHotel = nomeHotel;
     }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
 }
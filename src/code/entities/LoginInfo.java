@@ -0,0 +1,25 @@
+package code.entities;
+
+/**
+ * Informazioni di sessione restituite dal login: gruppo multicast e porta su cui il server invia le notifiche
+ */
+public class LoginInfo {
+    private String group;
+    private int port;
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+}
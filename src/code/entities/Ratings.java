@@ -0,0 +1,50 @@
+package code.entities;
+
+public class Ratings {
+    private double cleaning;
+    private double position;
+    private double services;
+    private double quality;
+
+    public Ratings() {
+    }
+
+    public Ratings(double cleaning, double position, double services, double quality) {
+        this.cleaning = cleaning;
+        this.position = position;
+        this.services = services;
+        this.quality = quality;
+    }
+
+    public double getCleaning() {
+        return cleaning;
+    }
+
+    public void setCleaning(double cleaning) {
+        this.cleaning = cleaning;
+    }
+
+    public double getPosition() {
+        return position;
+    }
+
+    public void setPosition(double position) {
+        this.position = position;
+    }
+
+    public double getServices() {
+        return services;
+    }
+
+    public void setServices(double services) {
+        this.services = services;
+    }
+
+    public double getQuality() {
+        return quality;
+    }
+
+    public void setQuality(double quality) {
+        this.quality = quality;
+    }
+}
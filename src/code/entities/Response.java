@@ -1,10 +1,26 @@
 package code.entities;
 
+import code.json.JsonCodec;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
 public class Response {
     private Integer status;
     private String description;
     private String body;
 
+    // decodifiche del body già calcolate, per tipo: il body viene decodificato solo al primo accesso
+    private Map<Object, Object> decodificato;
+
     public Response(Integer status, String description, String body) {
         this.status = status;
         this.description = description;
@@ -31,11 +47,98 @@ public class Response {
         return body;
     }
 
-    public void setBody(String body) {
+    public synchronized void setBody(String body) {
         this.body = body;
+        this.decodificato = null;
+    }
+
+    /**
+     * @return il body come albero json (decodificato al primo accesso), null se il body è vuoto
+     * @throws com.google.gson.JsonSyntaxException se il body non è json valido
+     */
+    public JsonElement getJson() {
+        return getBodyAs(JsonElement.class);
+    }
+
+    /**
+     * Decodifica il body con gli adapter di {@link JsonCodec}. La decodifica avviene al primo accesso e il risultato
+     * viene riusato dagli accessi successivi con lo stesso tipo, quindi non va modificato
+     * @param tipo classe in cui decodificare il body
+     * @return il body decodificato, null se vuoto
+     * @throws com.google.gson.JsonSyntaxException se il body non è json valido o non è del tipo indicato
+     */
+    public <T> T getBodyAs(Class<T> tipo) {
+        return tipo.cast(decodifica(tipo, () -> JsonCodec.gson().fromJson(body, tipo)));
+    }
+
+    /**
+     * Come {@link #getBodyAs(Class)}, per tipi generici (ad esempio <code>new TypeToken&lt;List&lt;Hotel&gt;&gt;(){}</code>)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getBodyAs(TypeToken<T> tipo) {
+        Type type = tipo.getType();
+        return (T) decodifica(type, () -> JsonCodec.gson().fromJson(body, type));
+    }
+
+    /**
+     * @return gli hotel del body: tutti quelli di searchAllHotels o quello di searchHotel
+     * @throws com.google.gson.JsonSyntaxException se il body non contiene hotel
+     */
+    @SuppressWarnings("unchecked")
+    public List<Hotel> getHotels() {
+        return (List<Hotel>) decodifica(Hotel[].class, () -> JsonCodec.leggiLista(body, Hotel.class));
     }
 
+    /**
+     * @return i badge del body di showMyBadges, che sia un array o un singolo badge
+     * @throws com.google.gson.JsonSyntaxException se il body non contiene badge
+     */
+    @SuppressWarnings("unchecked")
+    public List<Badge> getBadges() {
+        return (List<Badge>) decodifica(Badge[].class, () -> JsonCodec.leggiLista(body, Badge.class));
+    }
+
+    /**
+     * @return gruppo e porta delle notifiche contenuti nella risposta al login
+     * @throws com.google.gson.JsonSyntaxException se il body non è una risposta al login
+     */
+    public LoginInfo getLoginInfo() {
+        return getBodyAs(LoginInfo.class);
+    }
+
+    /**
+     * Restituisce la decodifica del body già calcolata per il tipo, altrimenti la calcola e la memorizza
+     */
+    private synchronized Object decodifica(Object tipo, Supplier<Object> decodifica) {
+        if (decodificato == null) decodificato = new HashMap<>(4);
+        Object valore = decodificato.get(tipo);
+        if (valore == null && !decodificato.containsKey(tipo)) {
+            valore = decodifica.get();
+            decodificato.put(tipo, valore);
+        }
+        return valore;
+    }
+
+    /**
+     * @return la risposta in formato leggibile, con il body json indentato
+     */
     public String printResponseFormat() {
-        return status + " " + description + "\n" + body;
+        return status + " " + description + "\n" + formattaBody();
+    }
+
+    private String formattaBody() {
+        String trimmed = body == null ? "" : body.trim();
+        // solo oggetti e array: i messaggi di testo semplice vengono stampati così come sono
+        if (!trimmed.startsWith("{") && !trimmed.startsWith("[")) return body;
+        try {
+            return StampaHolder.GSON.toJson(getJson());
+        } catch (JsonParseException e) {
+            return body;
+        }
+    }
+
+    // usato solo per la stampa a video (sul canale i json viaggiano compatti), creato alla prima stampa
+    private static final class StampaHolder {
+        private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     }
 }
@@ -0,0 +1,77 @@
+package code.entities;
+
+public class Review {
+    private String nomeHotel;
+    private String citta;
+    private double globalScore;
+    private double pulizia;
+    private double posizione;
+    private double servizi;
+    private double qualita;
+
+    public Review(String nomeHotel, String citta, double globalScore, double pulizia, double posizione, double servizi, double qualita) {
+        this.nomeHotel = nomeHotel;
+        this.citta = citta;
+        this.globalScore = globalScore;
+        this.pulizia = pulizia;
+        this.posizione = posizione;
+        this.servizi = servizi;
+        this.qualita = qualita;
+    }
+
+    public String getNomeHotel() {
+        return nomeHotel;
+    }
+
+    public void setNomeHotel(String nomeHotel) {
+        this.nomeHotel = nomeHotel;
+    }
+
+    public String getCitta() {
+        return citta;
+    }
+
+    public void setCitta(String citta) {
+        this.citta = citta;
+    }
+
+    public double getGlobalScore() {
+        return globalScore;
+    }
+
+    public void setGlobalScore(double globalScore) {
+        this.globalScore = globalScore;
+    }
+
+    public double getPulizia() {
+        return pulizia;
+    }
+
+    public void setPulizia(double pulizia) {
+        this.pulizia = pulizia;
+    }
+
+    public double getPosizione() {
+        return posizione;
+    }
+
+    public void setPosizione(double posizione) {
+        this.posizione = posizione;
+    }
+
+    public double getServizi() {
+        return servizi;
+    }
+
+    public void setServizi(double servizi) {
+        this.servizi = servizi;
+    }
+
+    public double getQualita() {
+        return qualita;
+    }
+
+    public void setQualita(double qualita) {
+        this.qualita = qualita;
+    }
+}
@@ -0,0 +1,217 @@
+package code.fakeserver;
+
+import code.entities.Hotel;
+import code.entities.Ratings;
+import com.google.gson.Gson;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dati del server finto: hotel delle città con la loro classifica, utenti registrati e recensioni inserite.<br>
+ * Gli hotel vengono generati in modo deterministico dal seme. Ogni città ha la propria lock: le ricerche su città
+ * diverse non si contendono niente, e il json della classifica viene serializzato solo dopo una recensione.
+ */
+class Dataset {
+    private static final String[] SERVIZI = {"TV in camera", "Palestra", "Cancellazione gratuita", "Colazione inclusa"};
+
+    // badge in ordine di recensioni necessarie
+    private static final String[] BADGE = {"Recensore", "Recensore esperto", "Contributore", "Contributore esperto", "Contributore super"};
+    private static final int[] SOGLIE_BADGE = {1, 5, 10, 20, 50};
+
+    private final Map<String, Citta> citta;
+
+    private final ConcurrentHashMap<String, String> utenti;
+
+    private final ConcurrentHashMap<String, AtomicInteger> recensioni;
+
+    Dataset(List<String> nomiCitta, int hotelPerCitta, long seme) {
+        Random random = new Random(seme);
+        Map<String, Citta> citta = new HashMap<>();
+        int id = 0;
+        for (String nome : nomiCitta) {
+            List<Voce> hotel = new ArrayList<>(hotelPerCitta);
+            for (int i = 1; i <= hotelPerCitta; i++) hotel.add(new Voce(genera(++id, i, nome, random)));
+            citta.put(nome, new Citta(nome, hotel));
+        }
+        this.citta = Collections.unmodifiableMap(citta);
+        this.utenti = new ConcurrentHashMap<>();
+        this.recensioni = new ConcurrentHashMap<>();
+    }
+
+    private static Hotel genera(int id, int n, String citta, Random random) {
+        Hotel hotel = new Hotel();
+        hotel.setId(id);
+        hotel.setName("Hotel " + citta + " " + n);
+        hotel.setDescription("Un ridente hotel a " + citta + ", in Via della Rinascita, " + n);
+        hotel.setCity(citta);
+        hotel.setPhone("347-" + (1000000 + id));
+        List<String> servizi = new ArrayList<>();
+        for (String servizio : SERVIZI) {
+            if (random.nextBoolean()) servizi.add(servizio);
+        }
+        hotel.setServices(servizi);
+        hotel.setRate(random.nextInt(51) / 10.0);
+        hotel.setRatings(new Ratings(random.nextInt(6), random.nextInt(6), random.nextInt(6), random.nextInt(6)));
+        return hotel;
+    }
+
+    /**
+     * @return la città, o null se non è nel dataset
+     */
+    Citta getCitta(String nome) {
+        return nome == null ? null : citta.get(nome);
+    }
+
+    Collection<Citta> getCitta() {
+        return citta.values();
+    }
+
+    /**
+     * @return true se l'utente è stato registrato, false se lo username è già in uso
+     */
+    boolean registra(String username, String password) {
+        return utenti.putIfAbsent(username, password) == null;
+    }
+
+    /**
+     * @return true se l'utente esiste e la password è corretta
+     */
+    boolean autentica(String username, String password) {
+        return password != null && password.equals(utenti.get(username));
+    }
+
+    void contaRecensione(String username) {
+        recensioni.computeIfAbsent(username, u -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * @return i badge ottenuti dall'utente con le sue recensioni
+     */
+    List<String> badge(String username) {
+        AtomicInteger contatore = recensioni.get(username);
+        int n = contatore == null ? 0 : contatore.get();
+        List<String> badge = new ArrayList<>();
+        for (int i = 0; i < BADGE.length && n >= SOGLIE_BADGE[i]; i++) badge.add(BADGE[i]);
+        return badge;
+    }
+
+    /**
+     * Hotel di una città, in ordine di ranking
+     */
+    static class Citta {
+        // a parità di voto medio sale chi ha più recensioni, poi l'hotel con id minore
+        private static final Comparator<Voce> RANKING = Comparator.<Voce>comparingDouble(v -> -v.hotel.getRate())
+                .thenComparingInt(v -> -v.recensioni)
+                .thenComparingInt(v -> v.hotel.getId());
+
+        private final String nome;
+        private final List<Voce> classifica;
+        private final Map<String, Voce> perNome;
+
+        // json della classifica, ricalcolato al primo accesso dopo una modifica
+        private String json;
+
+        private Citta(String nome, List<Voce> hotel) {
+            this.nome = nome;
+            this.classifica = hotel;
+            this.perNome = new HashMap<>();
+            for (Voce voce : hotel) perNome.put(voce.hotel.getName(), voce);
+            classifica.sort(RANKING);
+        }
+
+        String getNome() {
+            return nome;
+        }
+
+        /**
+         * @return tutti gli hotel della città in ordine di ranking, serializzati con gson
+         */
+        synchronized String tutti(Gson gson) {
+            if (json == null) {
+                List<Hotel> hotel = new ArrayList<>(classifica.size());
+                for (Voce voce : classifica) hotel.add(voce.hotel);
+                json = gson.toJson(hotel);
+            }
+            return json;
+        }
+
+        /**
+         * @return l'hotel serializzato, o null se non è in questa città
+         */
+        synchronized String cerca(String nomeHotel, Gson gson) {
+            Voce voce = nomeHotel == null ? null : perNome.get(nomeHotel);
+            return voce == null ? null : gson.toJson(voce.hotel, Hotel.class);
+        }
+
+        synchronized boolean contiene(String nomeHotel) {
+            return nomeHotel != null && perNome.containsKey(nomeHotel);
+        }
+
+        /**
+         * Aggiorna voti medi e classifica con una recensione
+         * @return il nuovo primo classificato se è cambiato, altrimenti null
+         */
+        synchronized String recensisci(String nomeHotel, double globale, double pulizia, double posizione, double servizi, double qualita) {
+            Voce voce = perNome.get(nomeHotel);
+            String primo = primo();
+            voce.aggiungi(globale, pulizia, posizione, servizi, qualita);
+            return riordina(primo);
+        }
+
+        /**
+         * Porta in testa un hotel qualsiasi tra quelli che non sono primi, come se avesse ricevuto molte recensioni
+         * ottime
+         * @return il nuovo primo classificato, o null se la città ha meno di due hotel
+         */
+        synchronized String simulaSorpasso(Random random) {
+            if (classifica.size() < 2) return null;
+            String primo = primo();
+            Voce voce = classifica.get(1 + random.nextInt(classifica.size() - 1));
+            Voce leader = classifica.get(0);
+            voce.hotel.setRate(leader.hotel.getRate());
+            voce.recensioni = Math.max(voce.recensioni, leader.recensioni + 1);
+            return riordina(primo);
+        }
+
+        private String riordina(String primo) {
+            classifica.sort(RANKING);
+            json = null;
+            String nuovo = primo();
+            return nuovo.equals(primo) ? null : nuovo;
+        }
+
+        private String primo() {
+            return classifica.isEmpty() ? null : classifica.get(0).hotel.getName();
+        }
+    }
+
+    /**
+     * Hotel con le medie dei voti ricevuti (il voto generato conta come prima recensione)
+     */
+    private static class Voce {
+        private final Hotel hotel;
+        private int recensioni;
+
+        private Voce(Hotel hotel) {
+            this.hotel = hotel;
+            this.recensioni = 1;
+        }
+
+        private void aggiungi(double globale, double pulizia, double posizione, double servizi, double qualita) {
+            recensioni++;
+            hotel.setRate(media(hotel.getRate(), globale));
+            Ratings ratings = hotel.getRatings();
+            ratings.setCleaning(media(ratings.getCleaning(), pulizia));
+            ratings.setPosition(media(ratings.getPosition(), posizione));
+            ratings.setServices(media(ratings.getServices(), servizi));
+            ratings.setQuality(media(ratings.getQuality(), qualita));
+        }
+
+        private double media(double attuale, double voto) {
+            // arrotondata a un decimale, come i voti mostrati dal server
+            return Math.round((attuale * (recensioni - 1) + voto) / recensioni * 10) / 10.0;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package code.fakeserver;
+
+import code.entities.FirstPositionHotel;
+import code.entities.LoginInfo;
+import code.json.JsonCodec;
+import code.utils.AppConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Server HOTELIER finto, da incorporare nei test, nei benchmark e nel load test, o da avviare da solo con la modalità
+ * <code>fakeserver</code>.<br>
+ * Parla lo stesso protocollo testuale del server vero: una richiesta è il comando, il body json e una riga vuota; una
+ * risposta è la riga di stato, il body e una riga vuota. Gestisce registrazione, login, logout, ricerche, recensioni
+ * (che aggiornano la classifica della città) e badge, e invia sul gruppo multicast le nuove prime posizioni, numerate
+ * con il campo <code>seq</code>.<br>
+ * Latenza, jitter ed errori iniettati dipendono dal seme della configurazione, quindi due esecuzioni con la stessa
+ * sequenza di richieste ricevono le stesse risposte. Ogni connessione è servita da un proprio thread, in ordine: in
+ * pipelining la latenza si somma, come su un server che elabora le richieste di un client una alla volta.
+ */
+public class FakeServer implements AutoCloseable {
+    private final FakeServerConfig config;
+
+    private final Dataset dataset;
+
+    // risposte compatte per gli oggetti piccoli, indentate per le liste di hotel come fa il server vero
+    private final Gson gson;
+    private final Gson prettyGson;
+
+    private final double latenzaNanos;
+    private final double jitterNanos;
+    private final double errori;
+    private final long seme;
+    private final int portaMulticast;
+
+    private ServerSocket serverSocket;
+    private ExecutorService connessioni;
+    private ScheduledExecutorService sorpassi;
+    private MulticastSocket multicast;
+    private InetAddress gruppo;
+
+    private final Set<Socket> aperte;
+    private final AtomicInteger numeroConnessioni;
+
+    private final AtomicLong richieste;
+    private final AtomicLong erroriIniettati;
+    private final AtomicLong notificheInviate;
+    private final AtomicLong notificheFallite;
+
+    // numero di sequenza dell'ultima notifica inviata, come campo seq di ogni prima posizione
+    private final AtomicLong sequenza;
+
+    private volatile boolean chiuso;
+
+    public FakeServer(FakeServerConfig config) {
+        this.config = config;
+        this.seme = config.getSeme();
+        this.dataset = new Dataset(config.getCitta(), config.getHotelPerCitta(), seme);
+        this.gson = JsonCodec.gson();
+        this.prettyGson = JsonCodec.gson().newBuilder().setPrettyPrinting().create();
+        this.latenzaNanos = config.getLatenza() * 1e6;
+        this.jitterNanos = config.getJitter() * 1e6;
+        this.errori = config.getErrori();
+        this.portaMulticast = config.getPortaMulticast();
+        this.aperte = ConcurrentHashMap.newKeySet();
+        this.numeroConnessioni = new AtomicInteger();
+        this.richieste = new AtomicLong();
+        this.erroriIniettati = new AtomicLong();
+        this.notificheInviate = new AtomicLong();
+        this.notificheFallite = new AtomicLong();
+        this.sequenza = new AtomicLong();
+    }
+
+    /**
+     * Apre il socket e inizia ad accettare connessioni
+     * @return la porta su cui il server è in ascolto
+     * @throws IOException se la porta non è disponibile
+     */
+    public synchronized int start() throws IOException {
+        if (serverSocket != null) return serverSocket.getLocalPort();
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPorta()));
+
+        gruppo = InetAddress.getByName(config.getGruppo());
+        multicast = new MulticastSocket();
+        // le notifiche non escono dalla macchina
+        multicast.setTimeToLive(1);
+
+        connessioni = Executors.newCachedThreadPool(demone("fakeserver-connection"));
+        Thread accettazione = demone("fakeserver-accept").newThread(this::accetta);
+        accettazione.start();
+
+        long intervallo = config.getIntervalloNotifiche();
+        if (intervallo > 0) {
+            sorpassi = Executors.newSingleThreadScheduledExecutor(demone("fakeserver-notify"));
+            Random random = new Random(seme);
+            List<Dataset.Citta> citta = new ArrayList<>(dataset.getCitta());
+            citta.sort(Comparator.comparing(Dataset.Citta::getNome));
+            sorpassi.scheduleAtFixedRate(() -> {
+                Dataset.Citta c = citta.get(random.nextInt(citta.size()));
+                String primo = c.simulaSorpasso(random);
+                if (primo != null) notifica(c.getNome(), primo);
+            }, intervallo, intervallo, TimeUnit.MILLISECONDS);
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return l'indirizzo a cui connettersi: il server accetta connessioni solo dal loopback
+     */
+    public String getHostName() {
+        return InetAddress.getLoopbackAddress().getHostAddress();
+    }
+
+    /**
+     * @return la porta su cui il server è in ascolto, -1 se non è avviato
+     */
+    public synchronized int getPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    public long getRichieste() {
+        return richieste.get();
+    }
+
+    public long getErroriIniettati() {
+        return erroriIniettati.get();
+    }
+
+    public long getNotificheInviate() {
+        return notificheInviate.get();
+    }
+
+    /**
+     * @return notifiche che non è stato possibile inviare (ad esempio su una macchina senza interfacce multicast)
+     */
+    public long getNotificheFallite() {
+        return notificheFallite.get();
+    }
+
+    private void accetta() {
+        while (!chiuso) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                aperte.add(socket);
+                int numero = numeroConnessioni.incrementAndGet();
+                connessioni.execute(() -> servi(socket, numero));
+            } catch (IOException | RejectedExecutionException e) {
+                // socket chiuso da close()
+                if (chiuso) return;
+            }
+        }
+    }
+
+    /**
+     * Serve le richieste di una connessione fino alla sua chiusura
+     * @param numero numero progressivo della connessione, da cui deriva il seme di latenze ed errori
+     */
+    private void servi(Socket socket, int numero) {
+        Sessione sessione = new Sessione(new Random(seme * 31 + numero));
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String comando;
+            while ((comando = in.readLine()) != null) {
+                if (comando.isEmpty()) continue;
+                StringBuilder body = new StringBuilder();
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty()) body.append(line);
+
+                String risposta = rispondi(comando.trim(), body.toString(), sessione);
+                attendi(sessione.random);
+                out.write(risposta);
+                // in pipelining le risposte pronte partono con un'unica scrittura
+                if (!in.ready()) out.flush();
+                if (line == null) break;
+            }
+        } catch (IOException ignored) {
+            // connessione chiusa dal client
+        } finally {
+            aperte.remove(socket);
+        }
+    }
+
+    private void attendi(Random random) {
+        double attesa = latenzaNanos + (jitterNanos > 0 ? random.nextDouble() * jitterNanos : 0);
+        if (attesa <= 0) return;
+        long fine = System.nanoTime() + (long) attesa;
+        long rimanente;
+        while ((rimanente = fine - System.nanoTime()) > 0) LockSupport.parkNanos(rimanente);
+    }
+
+    /**
+     * Esegue un comando
+     * @return la risposta completa, riga vuota finale compresa
+     */
+    String rispondi(String comando, String body, Sessione sessione) {
+        richieste.incrementAndGet();
+        // la negoziazione non viene disturbata dagli errori: il server vero non la conosce e risponde sempre così
+        if (comando.equals("protocol")) return risposta(400, "Bad Request", "Comando sconosciuto");
+        if (errori > 0 && sessione.random.nextDouble() < errori) {
+            erroriIniettati.incrementAndGet();
+            return risposta(500, "Internal Server Error", "Errore simulato");
+        }
+
+        JsonObject json;
+        try {
+            JsonElement element = body.isEmpty() ? new JsonObject() : JsonParser.parseString(body);
+            if (!element.isJsonObject()) return risposta(400, "Bad Request", "Il body deve essere un oggetto json");
+            json = element.getAsJsonObject();
+        } catch (JsonParseException e) {
+            return risposta(400, "Bad Request", "Json non valido");
+        }
+
+        try {
+            switch (comando) {
+                case "register":
+                    return register(testo(json, "username"), testo(json, "password"));
+                case "login":
+                    return login(testo(json, "username"), testo(json, "password"), sessione);
+                case "logout":
+                    if (sessione.username == null) return risposta(401, "Unauthorized", "Utente non loggato");
+                    sessione.username = null;
+                    return risposta(200, "OK", "Logout effettuato");
+                case "searchHotel":
+                    return searchHotel(testo(json, "nomeHotel"), testo(json, "citta"));
+                case "searchAllHotels":
+                    Dataset.Citta citta = dataset.getCitta(testo(json, "citta"));
+                    if (citta == null) return risposta(404, "Not Found", "Città non trovata");
+                    return risposta(200, "OK", citta.tutti(prettyGson));
+                case "insertReview":
+                    return insertReview(json, sessione);
+                case "showMyBadges":
+                    if (sessione.username == null) return risposta(401, "Unauthorized", "Utente non loggato");
+                    return risposta(200, "OK", gson.toJson(dataset.badge(sessione.username)));
+                default:
+                    return risposta(400, "Bad Request", "Comando sconosciuto");
+            }
+        } catch (IllegalArgumentException e) {
+            return risposta(400, "Bad Request", e.getMessage());
+        }
+    }
+
+    private String register(String username, String password) {
+        if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
+            return risposta(400, "Bad Request", "Username e password obbligatori");
+        }
+        if (!dataset.registra(username, password)) return risposta(409, "Conflict", "Username già in uso");
+        return risposta(200, "OK", "Registrazione effettuata");
+    }
+
+    private String login(String username, String password, Sessione sessione) {
+        if (sessione.username != null) return risposta(400, "Bad Request", "Utente già loggato");
+        if (!dataset.autentica(username, password)) return risposta(401, "Unauthorized", "Credenziali errate");
+        sessione.username = username;
+        LoginInfo info = new LoginInfo();
+        info.setGroup(config.getGruppo());
+        info.setPort(portaMulticast);
+        return risposta(200, "OK", gson.toJson(info, LoginInfo.class));
+    }
+
+    private String searchHotel(String nomeHotel, String nomeCitta) {
+        Dataset.Citta citta = dataset.getCitta(nomeCitta);
+        String hotel = citta == null ? null : citta.cerca(nomeHotel, gson);
+        if (hotel == null) return risposta(404, "Not Found", "Hotel non trovato");
+        return risposta(200, "OK", hotel);
+    }
+
+    private String insertReview(JsonObject json, Sessione sessione) {
+        if (sessione.username == null) return risposta(401, "Unauthorized", "Utente non loggato");
+        Dataset.Citta citta = dataset.getCitta(testo(json, "citta"));
+        String nomeHotel = testo(json, "nomeHotel");
+        if (citta == null || !citta.contiene(nomeHotel)) return risposta(404, "Not Found", "Hotel non trovato");
+
+        JsonObject voti = json.has("singleScores") && json.get("singleScores").isJsonObject()
+                ? json.getAsJsonObject("singleScores") : new JsonObject();
+        String primo = citta.recensisci(nomeHotel, voto(json, "globalScore"), voto(voti, "cleaning"),
+                voto(voti, "position"), voto(voti, "services"), voto(voti, "quality"));
+        dataset.contaRecensione(sessione.username);
+        if (primo != null) notifica(citta.getNome(), primo);
+        return risposta(200, "OK", "Recensione inserita");
+    }
+
+    /**
+     * Invia sul gruppo multicast la nuova prima posizione di una città
+     */
+    private void notifica(String citta, String nomeHotel) {
+        FirstPositionHotel primo = new FirstPositionHotel();
+        primo.setCitta(citta);
+        primo.setNomeHotel(nomeHotel);
+        primo.setSeq(sequenza.incrementAndGet());
+        byte[] data = gson.toJson(Collections.singletonList(primo)).getBytes(StandardCharsets.UTF_8);
+        try {
+            multicast.send(new DatagramPacket(data, data.length, gruppo, portaMulticast));
+            notificheInviate.incrementAndGet();
+        } catch (IOException e) {
+            notificheFallite.incrementAndGet();
+        }
+    }
+
+    private static String testo(JsonObject json, String campo) {
+        JsonElement valore = json.get(campo);
+        if (valore == null || valore.isJsonNull()) return null;
+        if (!valore.isJsonPrimitive()) throw new IllegalArgumentException("Valore non valido per " + campo);
+        return valore.getAsString();
+    }
+
+    private static double voto(JsonObject json, String campo) {
+        JsonElement valore = json.get(campo);
+        if (valore == null || !valore.isJsonPrimitive()) throw new IllegalArgumentException("Voto mancante: " + campo);
+        double voto;
+        try {
+            voto = valore.getAsDouble();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Voto non numerico: " + campo);
+        }
+        if (!(voto >= 0 && voto <= 5)) throw new IllegalArgumentException("Voto fuori intervallo: " + campo);
+        return voto;
+    }
+
+    private static String risposta(int status, String descrizione, String body) {
+        return status + " " + descrizione + "\n" + body + "\n\n";
+    }
+
+    private static ThreadFactory demone(String nome) {
+        return r -> {
+            Thread thread = new Thread(r, nome);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Chiude il socket di ascolto e tutte le connessioni aperte
+     */
+    @Override
+    public synchronized void close() {
+        if (chiuso) return;
+        chiuso = true;
+        if (sorpassi != null) sorpassi.shutdownNow();
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Socket socket : aperte) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (connessioni != null) connessioni.shutdownNow();
+        if (multicast != null) multicast.close();
+    }
+
+    @Override
+    public String toString() {
+        return "fake server sulla porta " + getPort() + ": " + richieste.get() + " richieste, " + erroriIniettati.get()
+                + " errori iniettati, " + notificheInviate.get() + " notifiche inviate (" + notificheFallite.get() + " fallite)";
+    }
+
+    /**
+     * Avvia il server finto, in assenza di una porta configurata su quella del client (server.port), e lo tiene attivo
+     * fino alla chiusura del processo
+     * @param args parametri nella forma nome=valore (vedi {@link FakeServerConfig})
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // da solo prende il posto del server vero, sulla porta a cui si connette il client
+        FakeServer server = new FakeServer(FakeServerConfig.fromArgs(args).conPortaDefault(AppConfig.getServerPort()));
+        int porta = server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            System.out.println(server);
+        }));
+        System.out.println("Fake server HOTELIER in ascolto sulla porta " + porta);
+        new CountDownLatch(1).await();
+    }
+
+    /**
+     * Stato di una connessione: utente loggato e numeri casuali per latenza ed errori
+     */
+    static class Sessione {
+        private final Random random;
+        private String username;
+
+        Sessione(Random random) {
+            this.random = random;
+        }
+    }
+}
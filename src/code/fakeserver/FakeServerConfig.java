@@ -0,0 +1,127 @@
+package code.fakeserver;
+
+import code.utils.AppConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parametri del server finto. Ogni parametro viene letto dalla proprietà fakeserver.&lt;nome&gt; di
+ * application.properties, e può essere sovrascritto con un argomento nella forma nome=valore
+ */
+public class FakeServerConfig {
+    private final Map<String, String> overrides;
+
+    private FakeServerConfig(Map<String, String> overrides) {
+        this.overrides = overrides;
+    }
+
+    /**
+     * Costruisce la configurazione a partire dagli argomenti passati al programma (o dal codice che incorpora il
+     * server, ad esempio <code>FakeServerConfig.fromArgs("port=0", "hotels=3000", "latency=2")</code>)
+     * @param args argomenti nella forma nome=valore
+     * @return la configurazione
+     * @throws IllegalArgumentException se un argomento non è nella forma corretta
+     */
+    public static FakeServerConfig fromArgs(String... args) {
+        Map<String, String> overrides = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Argomento non valido: " + arg + " (atteso nome=valore)");
+            overrides.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+        return new FakeServerConfig(overrides);
+    }
+
+    /**
+     * @param porta porta da usare se non è indicata né negli argomenti né in application.properties
+     * @return la configurazione con la porta di default indicata
+     */
+    public FakeServerConfig conPortaDefault(int porta) {
+        Map<String, String> overrides = new HashMap<>(this.overrides);
+        if (!overrides.containsKey("port")) overrides.put("port", get("port", String.valueOf(porta)));
+        return new FakeServerConfig(overrides);
+    }
+
+    private String get(String nome, String defaultValue) {
+        String value = overrides.get(nome);
+        return value != null ? value : AppConfig.getProperty("fakeserver." + nome, defaultValue);
+    }
+
+    /**
+     * @return porta su cui accettare le connessioni, 0 per una porta libera scelta dal sistema
+     */
+    public int getPorta() {
+        return Integer.parseInt(get("port", "0"));
+    }
+
+    /**
+     * @return città del dataset
+     */
+    public List<String> getCitta() {
+        List<String> citta = new ArrayList<>();
+        for (String item : get("cities", "Roma,Milano,Napoli,Torino,Firenze").split(",")) {
+            if (!item.trim().isEmpty()) citta.add(item.trim());
+        }
+        return citta;
+    }
+
+    /**
+     * @return numero di hotel per città, con nome "Hotel &lt;città&gt; &lt;n&gt;" (n da 1), come nel load test
+     */
+    public int getHotelPerCitta() {
+        return Integer.parseInt(get("hotels", "10"));
+    }
+
+    /**
+     * @return seme dei numeri casuali: con lo stesso seme dataset, jitter ed errori si ripetono uguali
+     */
+    public long getSeme() {
+        return Long.parseLong(get("seed", "42"));
+    }
+
+    /**
+     * @return latenza aggiunta prima di ogni risposta, in millisecondi
+     */
+    public double getLatenza() {
+        return Double.parseDouble(get("latency", "0"));
+    }
+
+    /**
+     * @return variazione casuale massima della latenza, in millisecondi (uniforme tra 0 e questo valore)
+     */
+    public double getJitter() {
+        return Double.parseDouble(get("jitter", "0"));
+    }
+
+    /**
+     * @return frazione delle richieste (tra 0 e 1) a cui rispondere con un errore 500
+     */
+    public double getErrori() {
+        return Double.parseDouble(get("errors", "0"));
+    }
+
+    /**
+     * @return gruppo multicast delle notifiche, comunicato ai client nella risposta al login
+     */
+    public String getGruppo() {
+        return get("group", "239.255.32.1");
+    }
+
+    /**
+     * @return porta del gruppo multicast
+     */
+    public int getPortaMulticast() {
+        return Integer.parseInt(get("mcastport", "4446"));
+    }
+
+    /**
+     * @return millisecondi tra un cambio di prima posizione simulato e l'altro, 0 per notificare solo i cambi dovuti
+     * alle recensioni
+     */
+    public long getIntervalloNotifiche() {
+        return Long.parseLong(get("notifyinterval", "0"));
+    }
+}
@@ -0,0 +1,94 @@
+package code.importer;
+
+import code.utils.AppConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parametri dell'import delle recensioni. Ogni parametro viene letto dalla proprietà import.&lt;nome&gt; di
+ * application.properties, e può essere sovrascritto da riga di comando con un argomento nella forma nome=valore
+ */
+public class ImportConfig {
+    private final Map<String, String> overrides;
+
+    private ImportConfig(Map<String, String> overrides) {
+        this.overrides = overrides;
+    }
+
+    /**
+     * Costruisce la configurazione a partire dagli argomenti passati al programma
+     * @param args argomenti nella forma nome=valore
+     * @return la configurazione
+     * @throws IllegalArgumentException se un argomento non è nella forma corretta
+     */
+    public static ImportConfig fromArgs(String[] args) {
+        Map<String, String> overrides = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Argomento non valido: " + arg + " (atteso nome=valore)");
+            overrides.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+        return new ImportConfig(overrides);
+    }
+
+    private String get(String nome, String defaultValue) {
+        String value = overrides.get(nome);
+        return value != null ? value : AppConfig.getProperty("import." + nome, defaultValue);
+    }
+
+    private String richiesto(String nome) {
+        String value = get(nome, "");
+        if (value.isEmpty()) throw new IllegalArgumentException("Parametro obbligatorio mancante: " + nome);
+        return value;
+    }
+
+    /**
+     * @return file da importare
+     */
+    public String getFile() {
+        return richiesto("file");
+    }
+
+    /**
+     * @return formato del file: "csv" o "jsonl"; in assenza viene dedotto dall'estensione
+     */
+    public String getFormato() {
+        String formato = get("format", "");
+        if (!formato.isEmpty()) return formato;
+        return getFile().toLowerCase().endsWith(".csv") ? "csv" : "jsonl";
+    }
+
+    /**
+     * @return utente con cui inserire le recensioni
+     */
+    public String getUsername() {
+        return richiesto("username");
+    }
+
+    public String getPassword() {
+        return richiesto("password");
+    }
+
+    /**
+     * @return numero di recensioni per batch, inviate con un'unica scrittura sul socket
+     */
+    public int getBatch() {
+        return Integer.parseInt(get("batch", "500"));
+    }
+
+    /**
+     * @return numero di thread per la validazione delle righe
+     */
+    public int getThread() {
+        return Integer.parseInt(get("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * @return file su cui scrivere le righe scartate, null per non scriverle
+     */
+    public String getScartate() {
+        String file = get("rejected", "");
+        return file.isEmpty() ? null : file;
+    }
+}
@@ -0,0 +1,248 @@
+package code.importer;
+
+import code.HotelierClient;
+import code.entities.Response;
+import code.entities.Review;
+import code.utils.AppConfig;
+
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Import di recensioni da file CSV o JSON Lines.<br>
+ * Il file viene letto a blocchi di righe (un batch alla volta, quindi con memoria costante): le righe di ogni batch
+ * vengono decodificate e validate in parallelo, e le recensioni valide vengono inviate in pipelining con un'unica
+ * scrittura sul socket. Mentre il server risponde a un batch viene già preparato il successivo.<br>
+ * Al termine viene stampato un report con il throughput e le righe scartate, con il motivo per ognuna.
+ */
+public class ReviewImporter {
+    // righe scartate stampate a video, le altre sono solo nel file degli scarti
+    private static final int SCARTI_STAMPATI = 20;
+
+    private final ImportConfig config;
+    private final String hostName;
+    private final int port;
+
+    private long righe;
+    private long inserite;
+    private long scartate;
+    private long rifiutate;
+    private long errori;
+
+    private final List<String> primiScarti;
+
+    // file su cui scrivere tutte le righe scartate, null se non richiesto
+    private PrintWriter fileScarti;
+
+    public ReviewImporter(ImportConfig config) {
+        this.config = config;
+        this.hostName = AppConfig.getServerAddress();
+        this.port = AppConfig.getServerPort();
+        this.primiScarti = new ArrayList<>();
+    }
+
+    /**
+     * Esegue l'import e stampa il report finale
+     * @throws IOException se non è possibile leggere il file o connettersi al server
+     */
+    public void run() throws IOException, InterruptedException {
+        int dimensioneBatch = config.getBatch();
+        ForkJoinPool validatori = new ForkJoinPool(config.getThread());
+
+        System.out.println("Import di " + config.getFile() + " (" + config.getFormato() + ") verso " + hostName + ":" + port +
+                ", batch da " + dimensioneBatch + ", " + config.getThread() + " thread di validazione");
+
+        long inizio;
+        long fine;
+        try (HotelierClient client = new HotelierClient(hostName, port);
+             BufferedReader reader = Files.newBufferedReader(Paths.get(config.getFile()), StandardCharsets.UTF_8)) {
+            if (config.getScartate() != null) {
+                fileScarti = new PrintWriter(new FileWriter(config.getScartate()));
+                fileScarti.println("riga,motivo");
+            }
+
+            // le notifiche sui ranking non servono durante l'import
+            client.setNotificheAbilitate(false);
+            client.connect();
+            Response login = client.login(config.getUsername(), config.getPassword()).join();
+            if (login.getStatus() != 200) {
+                throw new IllegalStateException("Login fallito: " + login.printResponseFormat());
+            }
+
+            long numeroRiga = 0;
+            ReviewParser parser;
+            if (config.getFormato().equals("csv")) {
+                String intestazione = reader.readLine();
+                if (intestazione == null) throw new IllegalArgumentException("File vuoto");
+                numeroRiga++;
+                parser = ReviewParser.csv(intestazione);
+            } else if (config.getFormato().equals("jsonl")) {
+                parser = ReviewParser.jsonLines();
+            } else {
+                throw new IllegalArgumentException("Formato sconosciuto: " + config.getFormato() + " (csv oppure jsonl)");
+            }
+
+            inizio = System.nanoTime();
+            Batch inVolo = null;
+            while (true) {
+                List<Riga> blocco = new ArrayList<>(dimensioneBatch);
+                String testo;
+                while (blocco.size() < dimensioneBatch && (testo = reader.readLine()) != null) {
+                    numeroRiga++;
+                    if (!testo.trim().isEmpty()) blocco.add(new Riga(numeroRiga, testo));
+                }
+                if (blocco.isEmpty()) break;
+                righe += blocco.size();
+
+                List<Riga> validate = valida(validatori, parser, blocco);
+                Batch inviato = invia(client, validate);
+
+                // il batch precedente viene concluso solo dopo aver inviato il successivo, così il socket non resta
+                // mai fermo durante la validazione
+                if (inVolo != null) concludi(inVolo);
+                inVolo = inviato;
+            }
+            if (inVolo != null) concludi(inVolo);
+            fine = System.nanoTime();
+
+            client.logout().join();
+        } finally {
+            validatori.shutdown();
+            if (fileScarti != null) fileScarti.close();
+        }
+
+        stampaReport((fine - inizio) / 1e9);
+    }
+
+    /**
+     * Decodifica e valida in parallelo le righe di un batch
+     */
+    private List<Riga> valida(ForkJoinPool validatori, ReviewParser parser, List<Riga> blocco) throws InterruptedException {
+        try {
+            return validatori.submit(() -> blocco.parallelStream().map(riga -> {
+                try {
+                    riga.review = parser.leggi(riga.testo);
+                } catch (RuntimeException e) {
+                    riga.errore = e.getMessage();
+                }
+                return riga;
+            }).collect(Collectors.toList())).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Registra le righe non valide e invia le recensioni valide in pipelining
+     */
+    private Batch invia(HotelierClient client, List<Riga> validate) {
+        Batch batch = new Batch();
+        List<Review> reviews = new ArrayList<>(validate.size());
+        for (Riga riga : validate) {
+            if (riga.errore != null) {
+                scartate++;
+                scarta(riga, riga.errore);
+            } else {
+                batch.righe.add(riga);
+                reviews.add(riga.review);
+            }
+        }
+        if (!reviews.isEmpty()) batch.risposte = client.insertReviews(reviews);
+        return batch;
+    }
+
+    /**
+     * Attende le risposte di un batch e registra le recensioni rifiutate dal server
+     */
+    private void concludi(Batch batch) {
+        for (int i = 0; i < batch.righe.size(); i++) {
+            Riga riga = batch.righe.get(i);
+            try {
+                Response response = batch.risposte.get(i).join();
+                if (response.getStatus() == 200) {
+                    inserite++;
+                } else {
+                    rifiutate++;
+                    scarta(riga, response.getStatus() + " " + response.getDescription() + " " + response.getBody().trim());
+                }
+            } catch (CompletionException e) {
+                errori++;
+                scarta(riga, "Errore di connessione: " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    private void scarta(Riga riga, String motivo) {
+        String scarto = "riga " + riga.numero + ": " + motivo;
+        if (primiScarti.size() < SCARTI_STAMPATI) primiScarti.add(scarto);
+        if (fileScarti != null) fileScarti.println(riga.numero + ",\"" + motivo.replace("\"", "\"\"") + "\"");
+    }
+
+    private void stampaReport(double secondi) {
+        StringBuilder builder = new StringBuilder("-------------------------\nRisultati import (")
+                .append(String.format(Locale.ROOT, "%.1f", secondi)).append("s)\n");
+        builder.append("Righe lette: ").append(righe).append("\n");
+        builder.append("Recensioni inserite: ").append(inserite).append("\n");
+        builder.append("Righe non valide: ").append(scartate).append("\n");
+        builder.append("Recensioni rifiutate dal server: ").append(rifiutate).append("\n");
+        builder.append("Errori di connessione: ").append(errori).append("\n");
+        builder.append(String.format(Locale.ROOT, "Throughput: %.1f recensioni/s (%.1f righe/s)%n",
+                secondi > 0 ? inserite / secondi : 0.0, secondi > 0 ? righe / secondi : 0.0));
+
+        long totaleScarti = scartate + rifiutate + errori;
+        if (totaleScarti > 0) {
+            builder.append("Righe scartate");
+            if (totaleScarti > primiScarti.size()) builder.append(" (prime ").append(primiScarti.size()).append(")");
+            builder.append(":\n");
+            for (String scarto : primiScarti) builder.append("\t").append(scarto).append("\n");
+            if (config.getScartate() != null) builder.append("Elenco completo in ").append(config.getScartate()).append("\n");
+        }
+        builder.append("-------------------------");
+
+        System.out.println(builder);
+    }
+
+    /**
+     * Avvia l'import verso il server configurato in application.properties
+     * @param args parametri nella forma nome=valore (vedi {@link ImportConfig})
+     */
+    public static void main(String[] args) throws Exception {
+        new ReviewImporter(ImportConfig.fromArgs(args)).run();
+    }
+
+    /**
+     * Riga del file, con la recensione decodificata o il motivo per cui non è valida
+     */
+    private static class Riga {
+        private final long numero;
+        private final String testo;
+        private Review review;
+        private String errore;
+
+        private Riga(long numero, String testo) {
+            this.numero = numero;
+            this.testo = testo;
+        }
+    }
+
+    /**
+     * Recensioni di un batch inviate al server, con le relative risposte
+     */
+    private static class Batch {
+        private final List<Riga> righe = new ArrayList<>();
+        private List<CompletableFuture<Response>> risposte;
+    }
+}
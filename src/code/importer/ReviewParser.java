@@ -0,0 +1,160 @@
+package code.importer;
+
+import code.HotelierClient;
+import code.entities.Review;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodifica e validazione delle righe di un file di recensioni.<br>
+ * I campi hanno gli stessi nomi usati nella richiesta insertReview: nomeHotel, citta, globalScore, cleaning, position,
+ * services, quality.
+ * <ul>
+ *     <li>CSV: la prima riga è l'intestazione con i nomi dei campi, in qualsiasi ordine; i valori possono essere tra
+ *     virgolette (con "" per le virgolette nel testo)</li>
+ *     <li>JSON Lines: un oggetto per riga, con i voti delle categorie al primo livello o nel sotto-oggetto
+ *     singleScores, come nella richiesta</li>
+ * </ul>
+ * Dopo l'intestazione il parser è senza stato, quindi può essere usato da più thread contemporaneamente.
+ */
+public class ReviewParser {
+    private static final String[] CAMPI = {"nomeHotel", "citta", "globalScore", "cleaning", "position", "services", "quality"};
+
+    private final boolean csv;
+
+    // posizione di ogni campo nelle righe CSV
+    private final int[] colonne;
+
+    private ReviewParser(boolean csv, int[] colonne) {
+        this.csv = csv;
+        this.colonne = colonne;
+    }
+
+    /**
+     * @return parser per file JSON Lines
+     */
+    public static ReviewParser jsonLines() {
+        return new ReviewParser(false, null);
+    }
+
+    /**
+     * @param intestazione prima riga del file CSV
+     * @return parser per le righe successive
+     * @throws IllegalArgumentException se nell'intestazione manca un campo
+     */
+    public static ReviewParser csv(String intestazione) {
+        List<String> nomi = dividiCsv(intestazione);
+        Map<String, Integer> posizioni = new HashMap<>();
+        for (int i = 0; i < nomi.size(); i++) posizioni.put(nomi.get(i).trim(), i);
+
+        int[] colonne = new int[CAMPI.length];
+        for (int i = 0; i < CAMPI.length; i++) {
+            Integer posizione = posizioni.get(CAMPI[i]);
+            if (posizione == null) throw new IllegalArgumentException("Colonna mancante nell'intestazione: " + CAMPI[i]);
+            colonne[i] = posizione;
+        }
+        return new ReviewParser(true, colonne);
+    }
+
+    /**
+     * Decodifica e valida una riga
+     * @param riga riga del file
+     * @return la recensione, pronta per essere inviata
+     * @throws IllegalArgumentException con la descrizione dell'errore se la riga non è valida
+     */
+    public Review leggi(String riga) {
+        Review review = csv ? leggiCsv(riga) : leggiJson(riga);
+        HotelierClient.controllaReview(review);
+        return review;
+    }
+
+    private Review leggiCsv(String riga) {
+        List<String> valori = dividiCsv(riga);
+        String[] campi = new String[CAMPI.length];
+        for (int i = 0; i < CAMPI.length; i++) {
+            if (colonne[i] >= valori.size()) throw new IllegalArgumentException("Campo mancante: " + CAMPI[i]);
+            campi[i] = valori.get(colonne[i]).trim();
+        }
+        return new Review(campi[0], campi[1], numero(CAMPI[2], campi[2]), numero(CAMPI[3], campi[3]),
+                numero(CAMPI[4], campi[4]), numero(CAMPI[5], campi[5]), numero(CAMPI[6], campi[6]));
+    }
+
+    private static Review leggiJson(String riga) {
+        JsonObject json;
+        try {
+            JsonElement element = JsonParser.parseString(riga);
+            if (!element.isJsonObject()) throw new IllegalArgumentException("La riga non è un oggetto json");
+            json = element.getAsJsonObject();
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Json non valido: " + e.getMessage());
+        }
+
+        JsonObject voti = json.has("singleScores") && json.get("singleScores").isJsonObject()
+                ? json.getAsJsonObject("singleScores") : json;
+        return new Review(testo(json, CAMPI[0]), testo(json, CAMPI[1]), numero(json, CAMPI[2]),
+                numero(voti, CAMPI[3]), numero(voti, CAMPI[4]), numero(voti, CAMPI[5]), numero(voti, CAMPI[6]));
+    }
+
+    private static String testo(JsonObject json, String campo) {
+        JsonElement valore = json.get(campo);
+        if (valore == null || valore.isJsonNull()) return null;
+        if (!valore.isJsonPrimitive()) throw new IllegalArgumentException("Valore non valido per " + campo);
+        return valore.getAsString();
+    }
+
+    private static double numero(JsonObject json, String campo) {
+        JsonElement valore = json.get(campo);
+        if (valore == null || valore.isJsonNull()) throw new IllegalArgumentException("Campo mancante: " + campo);
+        if (!valore.isJsonPrimitive()) throw new IllegalArgumentException("Valore non numerico per " + campo);
+        return numero(campo, valore.getAsString());
+    }
+
+    private static double numero(String campo, String valore) {
+        try {
+            double numero = Double.parseDouble(valore);
+            if (Double.isNaN(numero)) throw new NumberFormatException();
+            return numero;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valore non numerico per " + campo + ": " + valore);
+        }
+    }
+
+    /**
+     * Divide una riga CSV nei suoi campi, gestendo i valori tra virgolette
+     */
+    static List<String> dividiCsv(String riga) {
+        List<String> campi = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean virgolette = false;
+        for (int i = 0; i < riga.length(); i++) {
+            char c = riga.charAt(i);
+            if (virgolette) {
+                if (c == '"' && i + 1 < riga.length() && riga.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else if (c == '"') {
+                    virgolette = false;
+                } else {
+                    campo.append(c);
+                }
+            } else if (c == '"') {
+                virgolette = true;
+            } else if (c == ',') {
+                campi.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        if (virgolette) throw new IllegalArgumentException("Virgolette non chiuse");
+        campi.add(campo.toString());
+        return campi;
+    }
+}
@@ -0,0 +1,444 @@
+package code.journal;
+
+import code.entities.Response;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Journal locale delle recensioni inserite mentre il server non è raggiungibile.<br>
+ * Le richieste vengono aggiunte in coda a un file mappato in memoria (una scrittura costa una copia in memoria, più
+ * la sincronizzazione su disco se abilitata), e dopo il login vengono reinviate in ordine, a gruppi in pipelining.<br>
+ * Ogni record porta il nome dell'utente che ha scritto la recensione: dopo un login vengono reinviati solo i record di
+ * quell'utente, gli altri restano nel journal fino al login del loro autore.<br>
+ * Formato del file:
+ * <ul>
+ *     <li>intestazione: magic, versione, offset del primo record non confermato, prossimo id</li>
+ *     <li>record: lunghezza del payload, CRC32 di id e payload, id, flag di conferma (1 byte), poi il payload:
+ *     lunghezza dell'utente (2 byte), utente e richiesta in UTF-8</li>
+ * </ul>
+ * La lunghezza viene scritta per ultima, quindi un record scritto a metà (o con il CRC errato) segna la fine del
+ * journal. Ogni risposta del server segna subito il record come confermato, così un record non viene mai reinviato
+ * dopo aver ricevuto la risposta; l'offset confermato avanza oltre i record confermati in testa, e quando tutti i
+ * record sono confermati il journal riparte dall'inizio.<br>
+ * La deduplicazione è solo lato client: il protocollo non ha un identificativo di richiesta che il server possa
+ * riconoscere. Se durante il replay la connessione cade dopo che il server ha ricevuto una recensione ma prima che
+ * arrivi la risposta, il record resta non confermato e viene reinviato dopo la riconnessione, e il server può
+ * registrare la stessa recensione due volte.
+ */
+public class ReviewJournal implements AutoCloseable {
+    private static final int MAGIC = 0x484A524E; // "HJRN"
+    private static final int VERSIONE = 2;
+
+    // magic, versione, offset confermato, prossimo id
+    private static final int INTESTAZIONE = 4 + 4 + 8 + 8;
+    private static final int POS_CONFERMATO = 8;
+    private static final int POS_PROSSIMO_ID = 16;
+
+    // lunghezza, crc, id, flag di conferma
+    private static final int INTESTAZIONE_RECORD = 4 + 4 + 8 + 1;
+    private static final int POS_FLAG = 16;
+
+    private static final int DIMENSIONE_INIZIALE = 1024 * 1024;
+
+    private final String file;
+
+    private final FileChannel channel;
+
+    // recensioni reinviate per ogni scrittura sul socket
+    private final int batch;
+
+    // se true ogni scrittura viene sincronizzata su disco prima di tornare
+    private final boolean sync;
+
+    private MappedByteBuffer buffer;
+
+    // offset del primo record non ancora confermato dal server: i record successivi possono essere già confermati
+    private long confermato;
+
+    // offset in cui verrà scritto il prossimo record
+    private long fine;
+
+    private long prossimoId;
+
+    private int pendenti;
+
+    // replay in corso, null se non ce ne sono: due login ravvicinati non reinviano due volte gli stessi record
+    private CompletableFuture<Esito> replay;
+
+    /**
+     * Apre il journal, creando il file se non esiste, e recupera i record non ancora confermati
+     * @param file percorso del file
+     * @param batch recensioni reinviate per ogni scrittura sul socket
+     * @param sync true per sincronizzare su disco ogni scrittura
+     * @throws IOException se non è possibile aprire il file o il file non è un journal
+     */
+    public ReviewJournal(String file, int batch, boolean sync) throws IOException {
+        if (batch <= 0) throw new IllegalArgumentException("La dimensione dei batch deve essere positiva");
+        this.file = file;
+        this.batch = batch;
+        this.sync = sync;
+        this.channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), DIMENSIONE_INIZIALE));
+
+        if (buffer.getInt(0) == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSIONE);
+            scriviIntestazione(INTESTAZIONE, 1);
+            buffer.force();
+        } else if (buffer.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Il file " + file + " non è un journal delle recensioni");
+        } else if (buffer.getInt(4) != VERSIONE) {
+            // le versioni precedenti non registrano l'autore: i record non possono essere attribuiti a un utente
+            channel.close();
+            throw new IOException("Il journal " + file + " ha la versione " + buffer.getInt(4) + " (supportata "
+                    + VERSIONE + "): va svuotato o rimosso");
+        }
+        recupera();
+    }
+
+    /**
+     * Scorre i record non confermati fino al primo non valido, che diventa la fine del journal
+     */
+    private void recupera() {
+        confermato = buffer.getLong(POS_CONFERMATO);
+        prossimoId = buffer.getLong(POS_PROSSIMO_ID);
+        if (confermato < INTESTAZIONE || confermato > buffer.capacity()) confermato = INTESTAZIONE;
+
+        long pos = confermato;
+        while (true) {
+            Record record = leggi(pos);
+            if (record == null) break;
+            if (!record.confermato) pendenti++;
+            prossimoId = Math.max(prossimoId, record.id + 1);
+            pos = record.fine;
+        }
+        fine = pos;
+        // un eventuale record incompleto viene sovrascritto dalla prossima scrittura
+        if (fine + 4 <= buffer.capacity()) buffer.putInt((int) fine, 0);
+        avanzaConfermato();
+    }
+
+    /**
+     * @return il record che inizia nella posizione indicata, o null se non c'è un record valido
+     */
+    private Record leggi(long pos) {
+        if (pos + INTESTAZIONE_RECORD > buffer.capacity()) return null;
+        int p = (int) pos;
+        int lunghezza = buffer.getInt(p);
+        if (lunghezza <= 0 || pos + INTESTAZIONE_RECORD + lunghezza > buffer.capacity()) return null;
+
+        int crc = buffer.getInt(p + 4);
+        long id = buffer.getLong(p + 8);
+        byte[] payload = new byte[lunghezza];
+        for (int i = 0; i < lunghezza; i++) payload[i] = buffer.get(p + INTESTAZIONE_RECORD + i);
+        if (crc(id, payload) != crc) return null;
+
+        if (lunghezza < 2) return null;
+        int lunghezzaUtente = ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF);
+        if (2 + lunghezzaUtente > lunghezza) return null;
+        String utente = new String(payload, 2, lunghezzaUtente, StandardCharsets.UTF_8);
+        String richiesta = new String(payload, 2 + lunghezzaUtente, lunghezza - 2 - lunghezzaUtente, StandardCharsets.UTF_8);
+        return new Record(id, pos, pos + INTESTAZIONE_RECORD + lunghezza, utente, richiesta,
+                buffer.get(p + POS_FLAG) != 0);
+    }
+
+    private static int crc(long id, byte[] payload) {
+        CRC32 crc = new CRC32();
+        for (int i = 56; i >= 0; i -= 8) crc.update((int) (id >>> i));
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private void scriviIntestazione(long confermato, long prossimoId) {
+        buffer.putLong(POS_CONFERMATO, confermato);
+        buffer.putLong(POS_PROSSIMO_ID, prossimoId);
+    }
+
+    /**
+     * Aggiunge una richiesta in coda al journal
+     * @param utente utente che ha scritto la recensione, l'unico per cui verrà reinviata
+     * @param richiesta richiesta insertReview già costruita, da reinviare così com'è
+     * @return l'id assegnato al record
+     * @throws IOException se non è possibile ingrandire il file
+     * @throws IllegalArgumentException se il nome utente è troppo lungo
+     */
+    public synchronized long aggiungi(String utente, String richiesta) throws IOException {
+        byte[] nome = utente.getBytes(StandardCharsets.UTF_8);
+        if (nome.length > 0xFFFF) throw new IllegalArgumentException("Nome utente troppo lungo");
+        byte[] testo = richiesta.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[2 + nome.length + testo.length];
+        payload[0] = (byte) (nome.length >>> 8);
+        payload[1] = (byte) nome.length;
+        System.arraycopy(nome, 0, payload, 2, nome.length);
+        System.arraycopy(testo, 0, payload, 2 + nome.length, testo.length);
+        long id = prossimoId;
+
+        // spazio per il record più la lunghezza 0 che segna la fine
+        long necessario = fine + INTESTAZIONE_RECORD + payload.length + 4;
+        if (necessario > buffer.capacity()) {
+            long capacita = buffer.capacity();
+            while (capacita < necessario) capacita *= 2;
+            if (capacita > Integer.MAX_VALUE) throw new IOException("Journal pieno: " + file);
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacita);
+        }
+
+        int p = (int) fine;
+        buffer.putInt(p + 4, crc(id, payload));
+        buffer.putLong(p + 8, id);
+        buffer.put(p + POS_FLAG, (byte) 0);
+        for (int i = 0; i < payload.length; i++) buffer.put(p + INTESTAZIONE_RECORD + i, payload[i]);
+        buffer.putInt(p + INTESTAZIONE_RECORD + payload.length, 0);
+        // la lunghezza per ultima: rende valido il record
+        buffer.putInt(p, payload.length);
+
+        fine = p + INTESTAZIONE_RECORD + payload.length;
+        prossimoId = id + 1;
+        pendenti++;
+        scriviIntestazione(confermato, prossimoId);
+        if (sync) buffer.force();
+        return id;
+    }
+
+    /**
+     * @param utente utente di cui cercare i record
+     * @param da offset da cui iniziare la ricerca, 0 per l'inizio del journal
+     * @param max numero massimo di record
+     * @return i primi record dell'utente non ancora confermati, in ordine di inserimento
+     */
+    public synchronized List<Record> pendenti(String utente, long da, int max) {
+        List<Record> records = new ArrayList<>();
+        long pos = Math.max(da, confermato);
+        while (records.size() < max && pos < fine) {
+            Record record = leggi(pos);
+            if (record == null) break;
+            if (!record.confermato && record.utente.equals(utente)) records.add(record);
+            pos = record.fine;
+        }
+        return records;
+    }
+
+    /**
+     * Segna un record come ricevuto dal server; un record già confermato viene ignorato
+     * @param record record a cui il server ha risposto
+     * @return true se il record è stato confermato
+     */
+    public synchronized boolean conferma(Record record) {
+        if (record.inizio < confermato || record.inizio >= fine) return false;
+        int p = (int) record.inizio;
+        if (buffer.getLong(p + 8) != record.id || buffer.get(p + POS_FLAG) != 0) return false;
+        buffer.put(p + POS_FLAG, (byte) 1);
+        pendenti--;
+        avanzaConfermato();
+        scriviIntestazione(confermato, prossimoId);
+        if (sync) buffer.force();
+        return true;
+    }
+
+    /**
+     * Porta l'offset confermato oltre i record già confermati in testa al journal
+     */
+    private void avanzaConfermato() {
+        while (confermato < fine && buffer.get((int) confermato + POS_FLAG) != 0) {
+            confermato += INTESTAZIONE_RECORD + buffer.getInt((int) confermato);
+        }
+        if (confermato >= fine && fine > INTESTAZIONE) {
+            // journal vuoto: si riparte dall'inizio del file
+            confermato = fine = INTESTAZIONE;
+            buffer.putInt(INTESTAZIONE, 0);
+        }
+    }
+
+    /**
+     * @return numero di recensioni in attesa di essere inviate, di tutti gli utenti
+     */
+    public synchronized int getPendenti() {
+        return pendenti;
+    }
+
+    /**
+     * @param utente utente di cui contare le recensioni
+     * @return numero di recensioni dell'utente in attesa di essere inviate
+     */
+    public synchronized int getPendenti(String utente) {
+        if (pendenti == 0) return 0;
+        int conteggio = 0;
+        long pos = confermato;
+        while (pos < fine) {
+            Record record = leggi(pos);
+            if (record == null) break;
+            if (!record.confermato && record.utente.equals(utente)) conteggio++;
+            pos = record.fine;
+        }
+        return conteggio;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Reinvia in ordine le recensioni non confermate dell'utente, un batch alla volta; si ferma al primo errore di
+     * connessione, lasciando nel journal le recensioni rimanenti. Se un replay è già in corso restituisce quello
+     * @param utente utente che ha effettuato il login: le recensioni degli altri utenti non vengono inviate
+     * @param invio funzione che invia un gruppo di richieste in pipelining e restituisce le risposte in ordine
+     * @return l'esito del replay, completato dopo l'ultima risposta
+     */
+    public synchronized CompletableFuture<Esito> replay(String utente,
+                                                       Function<List<String>, List<CompletableFuture<Response>>> invio) {
+        if (replay != null) return replay;
+        CompletableFuture<Esito> risultato = new CompletableFuture<>();
+        replay = risultato;
+        risultato.whenComplete((esito, e) -> {
+            synchronized (this) {
+                replay = null;
+            }
+        });
+        replayBatch(utente, 0, invio, new Esito(), risultato);
+        return risultato;
+    }
+
+    private void replayBatch(String utente, long da, Function<List<String>, List<CompletableFuture<Response>>> invio,
+                             Esito esito, CompletableFuture<Esito> risultato) {
+        List<Record> records = pendenti(utente, da, batch);
+        if (records.isEmpty()) {
+            esito.rimanenti = getPendenti(utente);
+            risultato.complete(esito);
+            return;
+        }
+
+        List<String> richieste = new ArrayList<>(records.size());
+        for (Record record : records) richieste.add(record.richiesta);
+        List<CompletableFuture<Response>> risposte = invio.apply(richieste);
+
+        CompletableFuture.allOf(risposte.toArray(new CompletableFuture<?>[0])).handle((v, ignored) -> {
+            try {
+                for (int i = 0; i < records.size(); i++) {
+                    Response response;
+                    try {
+                        response = risposte.get(i).join();
+                    } catch (CompletionException e) {
+                        esito.errore = e.getCause();
+                        break;
+                    }
+                    // il server ha risposto: anche se l'ha rifiutata, la recensione non va reinviata
+                    if (conferma(records.get(i))) esito.registra(records.get(i), response);
+                }
+                if (esito.errore == null) {
+                    replayBatch(utente, records.get(records.size() - 1).fine, invio, esito, risultato);
+                } else {
+                    esito.rimanenti = getPendenti(utente);
+                    risultato.complete(esito);
+                }
+            } catch (RuntimeException e) {
+                risultato.completeExceptionally(e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Sincronizza su disco e chiude il file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Richiesta salvata nel journal, con la sua posizione nel file
+     */
+    public static class Record {
+        private final long id;
+        private final long inizio;
+        private final long fine;
+        private final String utente;
+        private final String richiesta;
+        private final boolean confermato;
+
+        private Record(long id, long inizio, long fine, String utente, String richiesta, boolean confermato) {
+            this.id = id;
+            this.inizio = inizio;
+            this.fine = fine;
+            this.utente = utente;
+            this.richiesta = richiesta;
+            this.confermato = confermato;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getUtente() {
+            return utente;
+        }
+
+        public String getRichiesta() {
+            return richiesta;
+        }
+    }
+
+    /**
+     * Esito di un replay: recensioni accettate e rifiutate dal server, e l'eventuale errore che lo ha interrotto
+     */
+    public static class Esito {
+        private int accettate;
+        private final List<String> rifiutate = new ArrayList<>();
+        private int rimanenti;
+        private Throwable errore;
+
+        private void registra(Record record, Response response) {
+            if (response.getStatus() == 200) {
+                accettate++;
+            } else {
+                rifiutate.add("recensione " + record.id + ": " + response.getStatus() + " " + response.getDescription());
+            }
+        }
+
+        public int getAccettate() {
+            return accettate;
+        }
+
+        /**
+         * @return le recensioni rifiutate dal server, con status code e descrizione
+         */
+        public List<String> getRifiutate() {
+            return rifiutate;
+        }
+
+        /**
+         * @return recensioni ancora nel journal al termine del replay
+         */
+        public int getRimanenti() {
+            return rimanenti;
+        }
+
+        /**
+         * @return l'errore di connessione che ha interrotto il replay, null se è stato completato
+         */
+        public Throwable getErrore() {
+            return errore;
+        }
+
+        @Override
+        public String toString() {
+            String testo = "recensioni offline inviate: " + accettate + " accettate, " + rifiutate.size() + " rifiutate";
+            if (errore != null) testo += ", " + rimanenti + " ancora in attesa (" + errore.getMessage() + ")";
+            return testo;
+        }
+    }
+}
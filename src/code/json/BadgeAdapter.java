@@ -0,0 +1,44 @@
+package code.json;
+
+import code.entities.Badge;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * TypeAdapter dei badge: accetta sia il solo nome (<code>"Recensore"</code>) sia un oggetto con il nome nel campo
+ * badge, nome o name
+ */
+public class BadgeAdapter extends TypeAdapter<Badge> {
+
+    @Override
+    public void write(JsonWriter out, Badge badge) throws IOException {
+        out.beginObject();
+        out.name("badge").value(badge.getNome());
+        out.endObject();
+    }
+
+    @Override
+    public Badge read(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) return new Badge(Campi.testo(in));
+
+        Badge badge = new Badge();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "badge":
+                case "nome":
+                case "name":
+                    badge.setNome(Campi.testo(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return badge;
+    }
+}
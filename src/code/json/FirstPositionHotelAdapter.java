@@ -0,0 +1,49 @@
+package code.json;
+
+import code.entities.FirstPositionHotel;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * TypeAdapter delle prime posizioni notificate dal server: <code>{"citta": "...", "nomeHotel": "..."}</code>, con il
+ * numero di sequenza <code>"seq"</code> se il server lo indica.<br>
+ * Il listener multicast usa il {@link code.multicast.FirstPositionDecoder}, che lavora sui byte del datagramma; questo
+ * adapter serve quando le prime posizioni arrivano come testo
+ */
+public class FirstPositionHotelAdapter extends TypeAdapter<FirstPositionHotel> {
+
+    @Override
+    public void write(JsonWriter out, FirstPositionHotel primo) throws IOException {
+        out.beginObject();
+        out.name("citta").value(primo.getCitta());
+        out.name("nomeHotel").value(primo.getNomeHotel());
+        if (primo.getSeq() > 0) out.name("seq").value(primo.getSeq());
+        out.endObject();
+    }
+
+    @Override
+    public FirstPositionHotel read(JsonReader in) throws IOException {
+        FirstPositionHotel primo = new FirstPositionHotel();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "citta":
+                    primo.setCitta(Campi.testo(in));
+                    break;
+                case "nomeHotel":
+                    primo.setNomeHotel(Campi.testo(in));
+                    break;
+                case "seq":
+                    primo.setSeq(Campi.lungo(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return primo;
+    }
+}
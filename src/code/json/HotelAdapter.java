@@ -0,0 +1,105 @@
+package code.json;
+
+import code.entities.Hotel;
+import code.entities.Ratings;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TypeAdapter degli hotel restituiti da searchHotel e searchAllHotels. I campi sconosciuti vengono saltati
+ */
+public class HotelAdapter extends TypeAdapter<Hotel> {
+    private final RatingsAdapter ratingsAdapter;
+
+    public HotelAdapter() {
+        this.ratingsAdapter = new RatingsAdapter();
+    }
+
+    @Override
+    public void write(JsonWriter out, Hotel hotel) throws IOException {
+        out.beginObject();
+        out.name("id").value(hotel.getId());
+        out.name("name").value(hotel.getName());
+        out.name("description").value(hotel.getDescription());
+        out.name("city").value(hotel.getCity());
+        out.name("phone").value(hotel.getPhone());
+        out.name("services").beginArray();
+        if (hotel.getServices() != null) {
+            for (String servizio : hotel.getServices()) out.value(servizio);
+        }
+        out.endArray();
+        out.name("rate").value(hotel.getRate());
+        if (hotel.getRatings() != null) {
+            out.name("ratings");
+            ratingsAdapter.write(out, hotel.getRatings());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public Hotel read(JsonReader in) throws IOException {
+        Hotel hotel = new Hotel();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    hotel.setId(Campi.intero(in));
+                    break;
+                case "name":
+                    hotel.setName(Campi.testo(in));
+                    break;
+                case "description":
+                    hotel.setDescription(Campi.testo(in));
+                    break;
+                case "city":
+                    hotel.setCity(Campi.testo(in));
+                    break;
+                case "phone":
+                    hotel.setPhone(Campi.testo(in));
+                    break;
+                case "services":
+                    hotel.setServices(leggiServizi(in));
+                    break;
+                case "rate":
+                    hotel.setRate(Campi.numero(in));
+                    break;
+                case "ratings":
+                    hotel.setRatings(leggiRatings(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return hotel;
+    }
+
+    private Ratings leggiRatings(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return ratingsAdapter.read(in);
+    }
+
+    private static List<String> leggiServizi(JsonReader in) throws IOException {
+        List<String> servizi = new ArrayList<>();
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return servizi;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            String servizio = Campi.testo(in);
+            if (servizio != null) servizi.add(servizio);
+        }
+        in.endArray();
+        return servizi;
+    }
+}
@@ -0,0 +1,118 @@
+package code.json;
+
+import code.entities.Badge;
+import code.entities.FirstPositionHotel;
+import code.entities.Hotel;
+import code.entities.LoginInfo;
+import code.entities.Ratings;
+import code.entities.Review;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Gson condiviso dal client, con i TypeAdapter delle entità registrati una sola volta.<br>
+ * Gli adapter sono scritti a mano: leggono e scrivono i campi direttamente dallo stream json, senza la reflection
+ * e senza l'albero di JsonElement intermedio che Gson userebbe altrimenti per ogni oggetto decodificato.
+ */
+public final class JsonCodec {
+    private JsonCodec() {}
+
+    // creato al primo uso (e non al caricamento di JsonCodec): l'avvio del client non paga la costruzione di Gson
+    private static final class Holder {
+        private static final Gson GSON = new GsonBuilder()
+                .registerTypeAdapter(Hotel.class, new HotelAdapter().nullSafe())
+                .registerTypeAdapter(Ratings.class, new RatingsAdapter().nullSafe())
+                .registerTypeAdapter(LoginInfo.class, new LoginInfoAdapter().nullSafe())
+                .registerTypeAdapter(Badge.class, new BadgeAdapter().nullSafe())
+                .registerTypeAdapter(FirstPositionHotel.class, new FirstPositionHotelAdapter().nullSafe())
+                .registerTypeAdapter(Review.class, new ReviewAdapter().nullSafe())
+                .disableHtmlEscaping()
+                .create();
+    }
+
+    /**
+     * @return il Gson con gli adapter delle entità registrati
+     */
+    public static Gson gson() {
+        return Holder.GSON;
+    }
+
+    /**
+     * Decodifica un body che può contenere un array di elementi o un singolo elemento (ad esempio searchAllHotels e
+     * searchHotel restituiscono rispettivamente un array di hotel e un solo hotel)
+     * @param json body da decodificare
+     * @param tipo classe degli elementi
+     * @return gli elementi, vuota se il body è vuoto o null
+     * @throws JsonSyntaxException se il body non è json valido o non contiene elementi del tipo indicato
+     */
+    public static <T> List<T> leggiLista(String json, Class<T> tipo) {
+        if (json == null || json.trim().isEmpty()) return Collections.emptyList();
+        TypeAdapter<T> adapter = Holder.GSON.getAdapter(tipo);
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            List<T> lista = new ArrayList<>();
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) lista.add(adapter.read(reader));
+                reader.endArray();
+            } else {
+                lista.add(adapter.read(reader));
+            }
+            if (reader.peek() != JsonToken.END_DOCUMENT) throw new JsonSyntaxException("Contenuto dopo la fine del json");
+            return lista;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // su una StringReader le IOException segnalano solo json malformato o troncato
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Riscrive un json su una sola riga, copiando i token senza costruire l'albero di JsonElement
+     * @param json json da compattare (ad esempio un body indentato dal server)
+     * @return il json compatto, o null se il testo non è un oggetto o un array json valido
+     */
+    public static String compatta(String json) {
+        String trimmed = json == null ? "" : json.trim();
+        if (!trimmed.startsWith("{") && !trimmed.startsWith("[")) return null;
+        StringWriter compatto = new StringWriter(trimmed.length());
+        try {
+            JsonReader in = new JsonReader(new StringReader(trimmed));
+            JsonWriter out = new JsonWriter(compatto);
+            out.setHtmlSafe(false);
+            int profondita = 0;
+            do {
+                switch (in.peek()) {
+                    case BEGIN_ARRAY: in.beginArray(); out.beginArray(); profondita++; break;
+                    case END_ARRAY: in.endArray(); out.endArray(); profondita--; break;
+                    case BEGIN_OBJECT: in.beginObject(); out.beginObject(); profondita++; break;
+                    case END_OBJECT: in.endObject(); out.endObject(); profondita--; break;
+                    case NAME: out.name(in.nextName()); break;
+                    case STRING: out.value(in.nextString()); break;
+                    // i numeri vengono copiati così come sono, senza passare da double
+                    case NUMBER: out.jsonValue(in.nextString()); break;
+                    case BOOLEAN: out.value(in.nextBoolean()); break;
+                    case NULL: in.nextNull(); out.nullValue(); break;
+                    default: throw new MalformedJsonException("Token inatteso");
+                }
+            } while (profondita > 0);
+            if (in.peek() != JsonToken.END_DOCUMENT) return null;
+            out.flush();
+        } catch (IOException | IllegalStateException e) {
+            return null;
+        }
+        return compatto.toString();
+    }
+}
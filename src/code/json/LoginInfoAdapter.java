@@ -0,0 +1,42 @@
+package code.json;
+
+import code.entities.LoginInfo;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * TypeAdapter della risposta al login: <code>{"group": "...", "port": ...}</code>
+ */
+public class LoginInfoAdapter extends TypeAdapter<LoginInfo> {
+
+    @Override
+    public void write(JsonWriter out, LoginInfo info) throws IOException {
+        out.beginObject();
+        out.name("group").value(info.getGroup());
+        out.name("port").value(info.getPort());
+        out.endObject();
+    }
+
+    @Override
+    public LoginInfo read(JsonReader in) throws IOException {
+        LoginInfo info = new LoginInfo();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "group":
+                    info.setGroup(Campi.testo(in));
+                    break;
+                case "port":
+                    info.setPort(Campi.intero(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return info;
+    }
+}
@@ -0,0 +1,50 @@
+package code.json;
+
+import code.entities.Ratings;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * TypeAdapter dei voti per categoria: <code>{"cleaning": .., "position": .., "services": .., "quality": ..}</code>
+ */
+public class RatingsAdapter extends TypeAdapter<Ratings> {
+
+    @Override
+    public void write(JsonWriter out, Ratings ratings) throws IOException {
+        out.beginObject();
+        out.name("cleaning").value(ratings.getCleaning());
+        out.name("position").value(ratings.getPosition());
+        out.name("services").value(ratings.getServices());
+        out.name("quality").value(ratings.getQuality());
+        out.endObject();
+    }
+
+    @Override
+    public Ratings read(JsonReader in) throws IOException {
+        Ratings ratings = new Ratings();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "cleaning":
+                    ratings.setCleaning(Campi.numero(in));
+                    break;
+                case "position":
+                    ratings.setPosition(Campi.numero(in));
+                    break;
+                case "services":
+                    ratings.setServices(Campi.numero(in));
+                    break;
+                case "quality":
+                    ratings.setQuality(Campi.numero(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return ratings;
+    }
+}
@@ -0,0 +1,75 @@
+package code.json;
+
+import code.entities.Review;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * TypeAdapter delle recensioni nel formato della richiesta insertReview, con i voti delle categorie nel sotto-oggetto
+ * singleScores
+ */
+public class ReviewAdapter extends TypeAdapter<Review> {
+
+    @Override
+    public void write(JsonWriter out, Review review) throws IOException {
+        out.beginObject();
+        out.name("nomeHotel").value(review.getNomeHotel());
+        out.name("citta").value(review.getCitta());
+        out.name("globalScore").value(review.getGlobalScore());
+        out.name("singleScores").beginObject();
+        out.name("cleaning").value(review.getPulizia());
+        out.name("position").value(review.getPosizione());
+        out.name("services").value(review.getServizi());
+        out.name("quality").value(review.getQualita());
+        out.endObject();
+        out.endObject();
+    }
+
+    @Override
+    public Review read(JsonReader in) throws IOException {
+        Review review = new Review(null, null, 0, 0, 0, 0, 0);
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "nomeHotel":
+                    review.setNomeHotel(Campi.testo(in));
+                    break;
+                case "citta":
+                    review.setCitta(Campi.testo(in));
+                    break;
+                case "globalScore":
+                    review.setGlobalScore(Campi.numero(in));
+                    break;
+                case "singleScores":
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "cleaning":
+                                review.setPulizia(Campi.numero(in));
+                                break;
+                            case "position":
+                                review.setPosizione(Campi.numero(in));
+                                break;
+                            case "services":
+                                review.setServizi(Campi.numero(in));
+                                break;
+                            case "quality":
+                                review.setQualita(Campi.numero(in));
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return review;
+    }
+}
@@ -0,0 +1,295 @@
+package code.loadtest;
+
+import code.HotelierClient;
+import code.entities.Response;
+import code.fakeserver.FakeServer;
+import code.fakeserver.FakeServerConfig;
+import code.metrics.LatencyHistogram;
+import code.utils.AppConfig;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generatore di carico: simula migliaia di utenti HOTELIER, ognuno con la propria connessione, che eseguono un mix
+ * configurabile di comandi.<br>
+ * In modalità open-loop (rate &gt; 0) ogni sessione ha un calendario di invio fisso e la latenza viene misurata a
+ * partire dall'istante in cui la richiesta avrebbe dovuto partire, così che i ritardi accumulati dal server
+ * (coordinated omission) compaiano nelle code della distribuzione.
+ */
+public class LoadGenerator {
+    private final LoadTestConfig config;
+
+    private final String hostName;
+
+    private final int port;
+
+    // istogramma delle latenze (in nanosecondi) per ogni comando
+    private final Map<String, LatencyHistogram> latenze;
+
+    // risposte con status diverso da 200 o richieste fallite, per ogni comando
+    private final Map<String, AtomicLong> errori;
+
+    // false durante la rampa: le misure raccolte prima dell'inizio della fase di misura vengono scartate
+    private volatile boolean misura;
+
+    private volatile boolean stop;
+
+    private final AtomicLong sessioniFallite;
+
+    // parametri letti una volta sola, usati ad ogni richiesta
+    private final Map<String, Integer> mix;
+    private final int pesoTotale;
+    private final List<String> citta;
+    private final int hotelPerCitta;
+
+    public LoadGenerator(LoadTestConfig config, String hostName, int port) {
+        this.config = config;
+        this.hostName = hostName;
+        this.port = port;
+        this.latenze = new LinkedHashMap<>();
+        this.errori = new LinkedHashMap<>();
+        for (String comando : LoadTestConfig.COMANDI) {
+            latenze.put(comando, new LatencyHistogram());
+            errori.put(comando, new AtomicLong());
+        }
+        this.sessioniFallite = new AtomicLong();
+        this.mix = config.getMix();
+        int totale = 0;
+        for (int peso : mix.values()) totale += peso;
+        this.pesoTotale = totale;
+        this.citta = config.getCitta();
+        this.hotelPerCitta = config.getHotelPerCitta();
+    }
+
+    /**
+     * Esegue il load test e stampa il report finale
+     */
+    public void run() throws InterruptedException {
+        int sessioni = config.getSessioni();
+        long rampaNanos = TimeUnit.SECONDS.toNanos(config.getRampa());
+        double rate = config.getRate();
+        // intervallo tra due richieste della stessa sessione, in modalità open-loop
+        long intervallo = rate > 0 ? (long) (1e9 * sessioni / rate) : 0;
+
+        System.out.println("Load test verso " + hostName + ":" + port + ": " + sessioni + " sessioni, rampa " +
+                config.getRampa() + "s, durata " + config.getDurata() + "s, " +
+                (rate > 0 ? "open-loop a " + rate + " richieste/s" : "closed-loop"));
+
+        ExecutorService executor = creaExecutor();
+        long inizio = System.nanoTime();
+        for (int i = 0; i < sessioni; i++) {
+            long avvio = inizio + (sessioni > 1 ? rampaNanos * i / (sessioni - 1) : 0);
+            int id = i;
+            executor.execute(() -> sessione(id, avvio, intervallo));
+        }
+
+        // attende la fine della rampa, poi misura per la durata richiesta
+        aspettaFino(inizio + rampaNanos);
+        resetMisure();
+        misura = true;
+        long inizioMisura = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.getDurata()));
+        misura = false;
+        long fineMisura = System.nanoTime();
+
+        stop = true;
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+
+        stampaReport((fineMisura - inizioMisura) / 1e9);
+    }
+
+    /**
+     * Crea l'executor delle sessioni: un virtual thread per sessione se la JVM li supporta (Java 21+), altrimenti
+     * un thread di piattaforma per sessione
+     */
+    private static ExecutorService creaExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "loadtest-session");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Corpo di una sessione: si connette, registra un utente, effettua il login e poi esegue comandi fino allo stop
+     * @param id identificativo della sessione
+     * @param avvio istante (System.nanoTime) in cui la sessione deve partire
+     * @param intervallo intervallo tra due richieste in modalità open-loop, 0 in closed-loop
+     */
+    private void sessione(int id, long avvio, long intervallo) {
+        aspettaFino(avvio);
+        if (stop) return;
+
+        Random random = new Random(id);
+        String username = config.getPrefissoUtenti() + "-" + id + "-" + System.currentTimeMillis();
+        String password = "pwd-" + id;
+
+        try (HotelierClient client = new HotelierClient(hostName, port)) {
+            // le notifiche di tutte le sessioni sono gestite dall'unico thread del listener condiviso
+            client.connect();
+
+            esegui("register", client.register(username, password), System.nanoTime());
+            boolean loggato = esegui("login", client.login(username, password), System.nanoTime());
+
+            int registrazioni = 0;
+            long prossimo = System.nanoTime();
+            while (!stop) {
+                long inizio;
+                if (intervallo > 0) {
+                    // open-loop: la latenza parte dall'istante previsto, anche se siamo in ritardo
+                    prossimo += intervallo;
+                    aspettaFino(prossimo);
+                    if (stop) break;
+                    inizio = prossimo;
+                } else {
+                    inizio = System.nanoTime();
+                }
+
+                String comando = scegliComando(random);
+                // i comandi che richiedono la sessione eseguono prima il login, il login ripetuto diventa un logout
+                if (!loggato && (comando.equals("insertReview") || comando.equals("showMyBadges") || comando.equals("logout"))) {
+                    comando = "login";
+                } else if (loggato && comando.equals("login")) {
+                    comando = "logout";
+                }
+
+                switch (comando) {
+                    case "register":
+                        esegui(comando, client.register(username + "-" + (++registrazioni), password), inizio);
+                        break;
+                    case "login":
+                        loggato = esegui(comando, client.login(username, password), inizio);
+                        break;
+                    case "logout":
+                        loggato = !esegui(comando, client.logout(), inizio);
+                        break;
+                    case "searchHotel":
+                        String citta = scegliCitta(random);
+                        esegui(comando, client.searchHotel(scegliHotel(random, citta), citta), inizio);
+                        break;
+                    case "searchAllHotels":
+                        esegui(comando, client.searchAllHotels(scegliCitta(random)), inizio);
+                        break;
+                    case "insertReview":
+                        String cittaRecensione = scegliCitta(random);
+                        esegui(comando, client.insertReview(scegliHotel(random, cittaRecensione), cittaRecensione,
+                                voto(random), voto(random), voto(random), voto(random), voto(random)), inizio);
+                        break;
+                    case "showMyBadges":
+                        esegui(comando, client.showMyBadges(), inizio);
+                        break;
+                }
+            }
+        } catch (Exception e) {
+            sessioniFallite.incrementAndGet();
+        }
+    }
+
+    /**
+     * Attende la risposta e registra latenza ed eventuale errore
+     * @return true se il server ha risposto con status 200
+     */
+    private boolean esegui(String comando, CompletableFuture<Response> future, long inizio) {
+        boolean ok;
+        try {
+            ok = future.join().getStatus() == 200;
+        } catch (CompletionException e) {
+            ok = false;
+        }
+        if (misura) {
+            latenze.get(comando).record(System.nanoTime() - inizio);
+            if (!ok) errori.get(comando).incrementAndGet();
+        }
+        if (!ok && future.isCompletedExceptionally()) {
+            // la connessione non è più utilizzabile
+            throw new IllegalStateException("Sessione interrotta durante " + comando);
+        }
+        return ok;
+    }
+
+    private String scegliComando(Random random) {
+        int estratto = random.nextInt(pesoTotale);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            estratto -= entry.getValue();
+            if (estratto < 0) return entry.getKey();
+        }
+        return mix.keySet().iterator().next();
+    }
+
+    private String scegliCitta(Random random) {
+        return citta.get(random.nextInt(citta.size()));
+    }
+
+    private String scegliHotel(Random random, String citta) {
+        return "Hotel " + citta + " " + (1 + random.nextInt(hotelPerCitta));
+    }
+
+    private static double voto(Random random) {
+        return random.nextInt(11) / 2.0;
+    }
+
+    private static void aspettaFino(long deadline) {
+        long attesa;
+        while ((attesa = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(attesa);
+        }
+    }
+
+    private void resetMisure() {
+        for (LatencyHistogram histogram : latenze.values()) histogram.reset();
+        for (AtomicLong contatore : errori.values()) contatore.set(0);
+    }
+
+    private void stampaReport(double secondi) {
+        StringBuilder builder = new StringBuilder("-------------------------\nRisultati load test (")
+                .append(String.format(Locale.ROOT, "%.1f", secondi)).append("s, ")
+                .append(sessioniFallite.get()).append(" sessioni interrotte)\n");
+        builder.append(String.format(Locale.ROOT, "%-16s %10s %8s %10s %10s %10s %10s %10s%n",
+                "comando", "richieste", "errori", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+        long totale = 0;
+        for (Map.Entry<String, LatencyHistogram> entry : latenze.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) continue;
+            totale += histogram.getCount();
+            builder.append(String.format(Locale.ROOT, "%-16s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f%n",
+                    entry.getKey(), histogram.getCount(), errori.get(entry.getKey()).get(),
+                    histogram.getCount() / secondi,
+                    histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                    histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMax() / 1e6));
+        }
+        builder.append(String.format(Locale.ROOT, "Totale: %d richieste, %.1f req/s%n", totale, totale / secondi));
+        builder.append("-------------------------");
+
+        System.out.println(builder);
+    }
+
+    /**
+     * Avvia il load test verso il server configurato in application.properties
+     * @param args parametri nella forma nome=valore (vedi {@link LoadTestConfig})
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        LoadTestConfig config = LoadTestConfig.fromArgs(args);
+        if (!config.isFakeServer()) {
+            new LoadGenerator(config, AppConfig.getServerAddress(), AppConfig.getServerPort()).run();
+            return;
+        }
+
+        FakeServerConfig fakeConfig = FakeServerConfig.fromArgs("port=0", "cities=" + String.join(",", config.getCitta()),
+                "hotels=" + config.getHotelPerCitta());
+        try (FakeServer server = new FakeServer(fakeConfig)) {
+            int porta = server.start();
+            new LoadGenerator(config, server.getHostName(), porta).run();
+            System.out.println(server);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package code.loadtest;
+
+import code.utils.AppConfig;
+
+import java.util.*;
+
+/**
+ * Parametri del load test. Ogni parametro viene letto dalla proprietà loadtest.&lt;nome&gt; di application.properties,
+ * e può essere sovrascritto da riga di comando con un argomento nella forma nome=valore
+ */
+public class LoadTestConfig {
+    // comandi che il generatore sa eseguire
+    static final List<String> COMANDI = Arrays.asList(
+            "register", "login", "logout", "searchHotel", "searchAllHotels", "insertReview", "showMyBadges");
+
+    private final Map<String, String> overrides;
+
+    private LoadTestConfig(Map<String, String> overrides) {
+        this.overrides = overrides;
+    }
+
+    /**
+     * Costruisce la configurazione a partire dagli argomenti passati al programma
+     * @param args argomenti nella forma nome=valore
+     * @return la configurazione
+     * @throws IllegalArgumentException se un argomento non è nella forma corretta
+     */
+    public static LoadTestConfig fromArgs(String[] args) {
+        Map<String, String> overrides = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Argomento non valido: " + arg + " (atteso nome=valore)");
+            overrides.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+        return new LoadTestConfig(overrides);
+    }
+
+    private String get(String nome, String defaultValue) {
+        String value = overrides.get(nome);
+        return value != null ? value : AppConfig.getProperty("loadtest." + nome, defaultValue);
+    }
+
+    /**
+     * @return numero di sessioni simulate, ognuna con il proprio socket
+     */
+    public int getSessioni() {
+        return Integer.parseInt(get("sessions", "1000"));
+    }
+
+    /**
+     * @return durata della fase di misura, in secondi
+     */
+    public int getDurata() {
+        return Integer.parseInt(get("duration", "60"));
+    }
+
+    /**
+     * @return tempo in secondi in cui le sessioni vengono avviate gradualmente
+     */
+    public int getRampa() {
+        return Integer.parseInt(get("rampup", "10"));
+    }
+
+    /**
+     * @return richieste al secondo complessive in modalità open-loop; 0 per la modalità closed-loop, in cui ogni
+     * sessione invia la richiesta successiva appena riceve la risposta
+     */
+    public double getRate() {
+        return Double.parseDouble(get("rate", "0"));
+    }
+
+    /**
+     * @return peso di ogni comando nel mix, letto nella forma comando:peso,comando:peso
+     * @throws IllegalArgumentException se il mix contiene comandi sconosciuti o nessun peso positivo
+     */
+    public Map<String, Integer> getMix() {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        String value = get("mix", "searchHotel:40,searchAllHotels:30,insertReview:20,showMyBadges:5,logout:5");
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2 || !COMANDI.contains(parts[0].trim())) {
+                throw new IllegalArgumentException("Voce del mix non valida: " + entry);
+            }
+            int peso = Integer.parseInt(parts[1].trim());
+            if (peso > 0) mix.put(parts[0].trim(), peso);
+        }
+        if (mix.isEmpty()) throw new IllegalArgumentException("Il mix deve contenere almeno un comando");
+        return mix;
+    }
+
+    /**
+     * @return città usate nelle ricerche e nelle recensioni
+     */
+    public List<String> getCitta() {
+        return split(get("cities", "Roma,Milano,Napoli,Torino,Firenze"));
+    }
+
+    /**
+     * @return numero di hotel per città: gli hotel cercati hanno nome "Hotel &lt;città&gt; &lt;n&gt;", con n da 1 a
+     * questo valore, come nel dataset del server
+     */
+    public int getHotelPerCitta() {
+        return Integer.parseInt(get("hotels", "10"));
+    }
+
+    /**
+     * @return prefisso degli username registrati dalle sessioni
+     */
+    public String getPrefissoUtenti() {
+        return get("userprefix", "loadtest");
+    }
+
+    /**
+     * @return true per eseguire il load test contro un server finto avviato nel processo, con le città e gli hotel
+     * del load test (gli altri parametri sono le proprietà fakeserver.&lt;nome&gt;)
+     */
+    public boolean isFakeServer() {
+        return Boolean.parseBoolean(get("fakeserver", "false"));
+    }
+
+    private static List<String> split(String value) {
+        List<String> list = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) list.add(item.trim());
+        }
+        return list;
+    }
+}
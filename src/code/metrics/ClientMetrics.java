@@ -0,0 +1,190 @@
+package code.metrics;
+
+import code.cache.SearchCacheMXBean;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metriche del client, condivise da tutte le connessioni del processo: per ogni comando latenze, byte scambiati e
+ * status code delle risposte, più le metriche delle notifiche multicast e i contatori della cache delle ricerche.<br>
+ * La registrazione è sempre attiva (non alloca e non usa lock); le metriche possono essere esposte come MBean JMX nel
+ * dominio <code>code.metrics</code> e scritte periodicamente su file.
+ */
+public class ClientMetrics {
+    // comandi del protocollo, riconosciuti senza allocare dalla prima riga della richiesta
+    private static final String[] COMANDI = {"register", "login", "logout", "searchHotel", "searchAllHotels", "insertReview", "showMyBadges"};
+
+    // richieste con un comando non tra quelli noti
+    private static final String ALTRO = "altro";
+
+    private static final String DOMINIO = "code.metrics";
+
+    private static final ClientMetrics condiviso = new ClientMetrics();
+
+    private final Map<String, CommandMetrics> comandi;
+
+    private final MulticastMetrics multicast;
+
+    // cache delle ricerche del client interattivo, null se disabilitata
+    private SearchCacheMXBean cache;
+
+    private volatile boolean jmx;
+
+    private ScheduledExecutorService dump;
+
+    public ClientMetrics() {
+        this.comandi = new ConcurrentHashMap<>();
+        for (String comando : COMANDI) comandi.put(comando, new CommandMetrics(comando));
+        comandi.put(ALTRO, new CommandMetrics(ALTRO));
+        this.multicast = new MulticastMetrics();
+    }
+
+    /**
+     * @return le metriche condivise da tutti i client del processo
+     */
+    public static ClientMetrics getDefault() {
+        return condiviso;
+    }
+
+    /**
+     * @param request richiesta nel formato del protocollo (comando sulla prima riga)
+     * @return il nome del comando, o "altro" se non è tra quelli del protocollo
+     */
+    public static String comando(String request) {
+        for (String comando : COMANDI) {
+            if (request.startsWith(comando)
+                    && (request.length() == comando.length() || request.charAt(comando.length()) == '\n')) {
+                return comando;
+            }
+        }
+        return ALTRO;
+    }
+
+    /**
+     * @param comando nome del comando, come restituito da {@link #comando(String)}
+     * @return le metriche del comando
+     */
+    public CommandMetrics getComando(String comando) {
+        CommandMetrics metriche = comandi.get(comando);
+        return metriche != null ? metriche : comandi.get(ALTRO);
+    }
+
+    public MulticastMetrics getMulticast() {
+        return multicast;
+    }
+
+    /**
+     * Aggiunge alle metriche i contatori della cache delle ricerche, esposti via JMX con tipo SearchCache (anche se
+     * le metriche sono già registrate) e riportati nel report testuale
+     * @param cache cache di cui esporre i contatori, null per toglierli
+     * @throws JMException se le metriche sono esposte via JMX e la registrazione fallisce
+     */
+    public synchronized void setCache(SearchCacheMXBean cache) throws JMException {
+        this.cache = cache;
+        if (jmx) registraCache(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    private void registraCache(MBeanServer server) throws JMException {
+        ObjectName nome = new ObjectName(DOMINIO + ":type=SearchCache");
+        if (server.isRegistered(nome)) server.unregisterMBean(nome);
+        if (cache != null) server.registerMBean(cache, nome);
+    }
+
+    /**
+     * Registra le metriche come MBean sul server JMX della piattaforma (una sola volta)
+     * @throws JMException se la registrazione fallisce
+     */
+    public synchronized void registraJmx() throws JMException {
+        if (jmx) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (CommandMetrics metriche : comandi.values()) {
+            ObjectName nome = new ObjectName(DOMINIO + ":type=Command,name=" + metriche.getComando());
+            if (!server.isRegistered(nome)) server.registerMBean(metriche, nome);
+        }
+        ObjectName nome = new ObjectName(DOMINIO + ":type=Multicast");
+        if (!server.isRegistered(nome)) server.registerMBean(multicast, nome);
+        registraCache(server);
+        jmx = true;
+    }
+
+    /**
+     * Avvia la scrittura periodica del report delle metriche in coda al file indicato
+     * @param file file su cui scrivere
+     * @param periodo secondi tra una scrittura e l'altra
+     */
+    public synchronized void avviaDump(String file, long periodo) {
+        fermaDump();
+        dump = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hotelier-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dump.scheduleAtFixedRate(() -> {
+            try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+                out.println("=== " + LocalDateTime.now());
+                out.println(this);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, periodo, periodo, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ferma la scrittura periodica del report, se attiva
+     */
+    public synchronized void fermaDump() {
+        if (dump != null) {
+            dump.shutdown();
+            dump = null;
+        }
+    }
+
+    /**
+     * @return report testuale di tutte le metriche (solo i comandi usati)
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-16s %9s %7s %8s %9s %9s %9s %9s %12s %13s  %s%n",
+                "comando", "risposte", "errori", "req/s", "media ms", "p50 ms", "p99 ms", "max ms", "byte inviati", "byte ricevuti", "status"));
+        for (String comando : COMANDI) appendComando(builder, comandi.get(comando));
+        appendComando(builder, comandi.get(ALTRO));
+
+        builder.append(String.format(Locale.ROOT,
+                "multicast: %d ricevuti (%.2f/s), %d troncati, %d malformati, %d consegnate (%.2f/s), ritardo medio %.3f ms, p99 %.3f ms, max %.3f ms",
+                multicast.getRicevuti(), multicast.getRicevutiAlSecondo(), multicast.getTroncati(), multicast.getMalformati(),
+                multicast.getConsegnate(), multicast.getConsegnateAlSecondo(),
+                multicast.getRitardoMedioMs(), multicast.getRitardoP99Ms(), multicast.getRitardoMaxMs()));
+        SearchCacheMXBean cache;
+        synchronized (this) {
+            cache = this.cache;
+        }
+        if (cache != null) {
+            builder.append(String.format(Locale.ROOT,
+                    "%ncache: %d/%d ricerche, %d hit, %d miss (%.1f%% hit), %d eliminate, %d invalidate",
+                    cache.getSize(), cache.getMaxEntries(), cache.getHits(), cache.getMisses(), cache.getHitRatio() * 100,
+                    cache.getEvictions(), cache.getInvalidations()));
+        }
+        return builder.toString();
+    }
+
+    private static void appendComando(StringBuilder builder, CommandMetrics m) {
+        if (m.getRisposte() == 0 && m.getErrori() == 0) return;
+        builder.append(String.format(Locale.ROOT, "%-16s %9d %7d %8.1f %9.3f %9.3f %9.3f %9.3f %12d %13d  %s%n",
+                m.getComando(), m.getRisposte(), m.getErrori(), m.getRichiesteAlSecondo(),
+                m.getLatenzaMediaMs(), m.getLatenzaP50Ms(), m.getLatenzaP99Ms(), m.getLatenzaMaxMs(),
+                m.getByteInviati(), m.getByteRicevuti(), m.getStatusCode()));
+    }
+}
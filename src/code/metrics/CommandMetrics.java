@@ -0,0 +1,154 @@
+package code.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metriche di un comando del protocollo: latenze, byte scambiati e distribuzione degli status code.<br>
+ * La registrazione non alloca memoria e non usa lock, per poter restare sempre attiva.
+ */
+public class CommandMetrics implements CommandMetricsMXBean {
+    // status code registrati singolarmente, gli altri finiscono in altriStatus
+    private static final int MAX_STATUS = 600;
+
+    private final String comando;
+
+    // latenza in nanosecondi tra l'invio della richiesta e la ricezione della risposta
+    private final LatencyHistogram latenze;
+
+    private final RateMeter frequenza;
+
+    private final LongAdder errori;
+    private final LongAdder byteInviati;
+    private final LongAdder byteRicevuti;
+
+    private final AtomicLongArray status;
+    private final AtomicLong altriStatus;
+
+    public CommandMetrics(String comando) {
+        this.comando = comando;
+        this.latenze = new LatencyHistogram();
+        this.frequenza = new RateMeter();
+        this.errori = new LongAdder();
+        this.byteInviati = new LongAdder();
+        this.byteRicevuti = new LongAdder();
+        this.status = new AtomicLongArray(MAX_STATUS);
+        this.altriStatus = new AtomicLong();
+    }
+
+    /**
+     * Registra una risposta ricevuta
+     * @param latenza nanosecondi tra l'invio della richiesta e la ricezione della risposta
+     * @param statusCode status code della risposta
+     * @param inviati byte della richiesta
+     * @param ricevuti byte del body della risposta
+     */
+    public void registra(long latenza, int statusCode, long inviati, long ricevuti) {
+        latenze.record(latenza);
+        frequenza.record();
+        byteInviati.add(inviati);
+        byteRicevuti.add(ricevuti);
+        if (statusCode >= 0 && statusCode < MAX_STATUS) {
+            status.incrementAndGet(statusCode);
+        } else {
+            altriStatus.incrementAndGet();
+        }
+    }
+
+    /**
+     * Registra una richiesta fallita senza risposta
+     * @param inviati byte della richiesta
+     */
+    public void registraErrore(long inviati) {
+        errori.increment();
+        frequenza.record();
+        byteInviati.add(inviati);
+    }
+
+    /**
+     * @return istogramma delle latenze in nanosecondi
+     */
+    public LatencyHistogram getLatenze() {
+        return latenze;
+    }
+
+    @Override
+    public String getComando() {
+        return comando;
+    }
+
+    @Override
+    public long getRisposte() {
+        return latenze.getCount();
+    }
+
+    @Override
+    public long getErrori() {
+        return errori.sum();
+    }
+
+    @Override
+    public double getRichiesteAlSecondo() {
+        return frequenza.getRatePerSecond();
+    }
+
+    @Override
+    public double getLatenzaMediaMs() {
+        return latenze.getMean() / 1e6;
+    }
+
+    @Override
+    public double getLatenzaP50Ms() {
+        return latenze.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getLatenzaP99Ms() {
+        return latenze.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getLatenzaP999Ms() {
+        return latenze.getValueAtPercentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getLatenzaMaxMs() {
+        return latenze.getMax() / 1e6;
+    }
+
+    @Override
+    public long getByteInviati() {
+        return byteInviati.sum();
+    }
+
+    @Override
+    public long getByteRicevuti() {
+        return byteRicevuti.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStatusCode() {
+        Map<String, Long> conteggi = new LinkedHashMap<>();
+        for (int i = 0; i < MAX_STATUS; i++) {
+            long n = status.get(i);
+            if (n > 0) conteggi.put(String.valueOf(i), n);
+        }
+        if (altriStatus.get() > 0) conteggi.put("altri", altriStatus.get());
+        return conteggi;
+    }
+
+    @Override
+    public void reset() {
+        latenze.reset();
+        frequenza.reset();
+        errori.reset();
+        byteInviati.reset();
+        byteRicevuti.reset();
+        for (int i = 0; i < MAX_STATUS; i++) status.set(i, 0);
+        altriStatus.set(0);
+    }
+}
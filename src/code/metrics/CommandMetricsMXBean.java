@@ -0,0 +1,59 @@
+package code.metrics;
+
+import java.util.Map;
+
+/**
+ * Metriche di un comando del protocollo, esposte via JMX
+ */
+public interface CommandMetricsMXBean {
+
+    /**
+     * @return nome del comando
+     */
+    String getComando();
+
+    /**
+     * @return numero di risposte ricevute
+     */
+    long getRisposte();
+
+    /**
+     * @return numero di richieste fallite senza risposta (connessione chiusa, risposta malformata)
+     */
+    long getErrori();
+
+    /**
+     * @return richieste al secondo nell'ultimo minuto
+     */
+    double getRichiesteAlSecondo();
+
+    double getLatenzaMediaMs();
+
+    double getLatenzaP50Ms();
+
+    double getLatenzaP99Ms();
+
+    double getLatenzaP999Ms();
+
+    double getLatenzaMaxMs();
+
+    /**
+     * @return byte delle richieste inviate
+     */
+    long getByteInviati();
+
+    /**
+     * @return byte dei body ricevuti, così come arrivano dal server (eventualmente compressi)
+     */
+    long getByteRicevuti();
+
+    /**
+     * @return numero di risposte per status code
+     */
+    Map<String, Long> getStatusCode();
+
+    /**
+     * Azzera le metriche del comando
+     */
+    void reset();
+}
@@ -0,0 +1,98 @@
+package code.metrics;
+
+import code.multicast.RankingListener;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metriche delle notifiche multicast: frequenza dei datagrammi ricevuti e delle prime posizioni consegnate, e ritardo
+ * tra la ricezione del datagramma e la consegna agli iscritti. I contatori totali vengono letti dal listener condiviso.
+ */
+public class MulticastMetrics implements MulticastMetricsMXBean {
+    private final RateMeter ricevuti;
+    private final RateMeter consegnate;
+    private final LongAdder totaleConsegnate;
+
+    // ritardo in nanosecondi tra la ricezione del datagramma e la consegna agli iscritti
+    private final LatencyHistogram ritardi;
+
+    public MulticastMetrics() {
+        this.ricevuti = new RateMeter();
+        this.consegnate = new RateMeter();
+        this.totaleConsegnate = new LongAdder();
+        this.ritardi = new LatencyHistogram();
+    }
+
+    /**
+     * Registra la ricezione di un datagramma
+     */
+    public void registraRicevuto() {
+        ricevuti.record();
+    }
+
+    /**
+     * Registra la consegna di una prima posizione agli iscritti
+     * @param ritardo nanosecondi tra la ricezione del datagramma e la consegna
+     */
+    public void registraConsegna(long ritardo) {
+        consegnate.record();
+        totaleConsegnate.increment();
+        ritardi.record(ritardo);
+    }
+
+    @Override
+    public long getRicevuti() {
+        RankingListener listener = RankingListener.getAttivo();
+        return listener == null ? 0 : listener.getRicevuti();
+    }
+
+    @Override
+    public long getTroncati() {
+        RankingListener listener = RankingListener.getAttivo();
+        return listener == null ? 0 : listener.getTroncati();
+    }
+
+    @Override
+    public long getMalformati() {
+        RankingListener listener = RankingListener.getAttivo();
+        return listener == null ? 0 : listener.getMalformati();
+    }
+
+    @Override
+    public double getRicevutiAlSecondo() {
+        return ricevuti.getRatePerSecond();
+    }
+
+    @Override
+    public long getConsegnate() {
+        return totaleConsegnate.sum();
+    }
+
+    @Override
+    public double getConsegnateAlSecondo() {
+        return consegnate.getRatePerSecond();
+    }
+
+    @Override
+    public double getRitardoMedioMs() {
+        return ritardi.getMean() / 1e6;
+    }
+
+    @Override
+    public double getRitardoP99Ms() {
+        return ritardi.getValueAtPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getRitardoMaxMs() {
+        return ritardi.getMax() / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        ricevuti.reset();
+        consegnate.reset();
+        totaleConsegnate.reset();
+        ritardi.reset();
+    }
+}
@@ -0,0 +1,48 @@
+package code.metrics;
+
+/**
+ * Metriche delle notifiche multicast sulle prime posizioni, esposte via JMX
+ */
+public interface MulticastMetricsMXBean {
+
+    /**
+     * @return datagrammi ricevuti dal listener
+     */
+    long getRicevuti();
+
+    /**
+     * @return datagrammi scartati perché più grandi del buffer
+     */
+    long getTroncati();
+
+    /**
+     * @return datagrammi scartati perché non validi
+     */
+    long getMalformati();
+
+    /**
+     * @return datagrammi ricevuti al secondo nell'ultimo minuto
+     */
+    double getRicevutiAlSecondo();
+
+    /**
+     * @return prime posizioni consegnate agli iscritti
+     */
+    long getConsegnate();
+
+    /**
+     * @return prime posizioni consegnate al secondo nell'ultimo minuto
+     */
+    double getConsegnateAlSecondo();
+
+    double getRitardoMedioMs();
+
+    double getRitardoP99Ms();
+
+    double getRitardoMaxMs();
+
+    /**
+     * Azzera le metriche delle notifiche (i contatori del listener restano invariati)
+     */
+    void reset();
+}
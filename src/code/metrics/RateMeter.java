@@ -0,0 +1,58 @@
+package code.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Frequenza di un evento sull'ultimo minuto, calcolata su 60 intervalli da un secondo.<br>
+ * La registrazione non alloca memoria e non usa lock: un evento registrato mentre un intervallo viene riciclato può
+ * andare perso, imprecisione accettabile per una metrica.
+ */
+public class RateMeter {
+    private static final int FINESTRA = 60;
+
+    // eventi per ogni secondo della finestra, e secondo a cui si riferisce ogni intervallo
+    private final AtomicLongArray eventi;
+    private final AtomicLongArray secondi;
+
+    public RateMeter() {
+        this.eventi = new AtomicLongArray(FINESTRA);
+        this.secondi = new AtomicLongArray(FINESTRA);
+    }
+
+    /**
+     * Registra un evento
+     */
+    public void record() {
+        long secondo = System.nanoTime() / 1_000_000_000L;
+        int i = (int) Math.floorMod(secondo, (long) FINESTRA);
+        long precedente = secondi.get(i);
+        if (precedente != secondo && secondi.compareAndSet(i, precedente, secondo)) {
+            // intervallo di un minuto fa: lo riciclo per il secondo corrente
+            eventi.set(i, 0);
+        }
+        eventi.incrementAndGet(i);
+    }
+
+    /**
+     * @return eventi al secondo nell'ultimo minuto (secondo corrente escluso, perché ancora parziale)
+     */
+    public double getRatePerSecond() {
+        long corrente = System.nanoTime() / 1_000_000_000L;
+        long totale = 0;
+        for (int i = 0; i < FINESTRA; i++) {
+            long secondo = secondi.get(i);
+            if (secondo < corrente && secondo >= corrente - FINESTRA) totale += eventi.get(i);
+        }
+        return (double) totale / FINESTRA;
+    }
+
+    /**
+     * Azzera la finestra
+     */
+    public void reset() {
+        for (int i = 0; i < FINESTRA; i++) {
+            eventi.set(i, 0);
+            secondi.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package code.multicast;
+
+import code.entities.FirstPositionHotel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodifica dei messaggi multicast con le nuove prime posizioni, ovvero array JSON nella forma
+ * <code>[{"citta": "...", "nomeHotel": "...", "seq": 42}, ...]</code> (il numero di sequenza è facoltativo).<br>
+ * Il parsing avviene direttamente sui byte del datagramma e il risultato viene scritto in oggetti riutilizzati tra un
+ * messaggio e l'altro: se città e nome dell'hotel non cambiano rispetto al messaggio precedente nella stessa posizione,
+ * vengono riusate anche le stringhe, quindi a regime la decodifica non alloca memoria.<br>
+ * Non è thread-safe: va usato da un solo thread (quello del listener).
+ */
+public class FirstPositionDecoder {
+    // oggetti riutilizzati, ne vengono creati di nuovi solo se un messaggio contiene più elementi dei precedenti
+    private final ArrayList<FirstPositionHotel> pool;
+
+    // elementi validi nel pool per l'ultimo messaggio decodificato
+    private int size;
+
+    private final List<FirstPositionHotel> risultato;
+
+    // appoggio per le stringhe che contengono sequenze di escape
+    private byte[] scratch;
+
+    private byte[] data;
+    private int pos;
+    private int end;
+
+    public FirstPositionDecoder() {
+        this.pool = new ArrayList<>();
+        this.scratch = new byte[256];
+        this.risultato = new AbstractList<FirstPositionHotel>() {
+            @Override
+            public FirstPositionHotel get(int index) {
+                if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                return pool.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Decodifica un messaggio
+     * @param data byte del messaggio
+     * @param offset inizio del messaggio
+     * @param length lunghezza del messaggio
+     * @return true se il messaggio è valido; in questo caso le prime posizioni sono disponibili con
+     * {@link #getPrimePosizioni()} fino alla decodifica successiva
+     */
+    public boolean decodifica(byte[] data, int offset, int length) {
+        this.data = data;
+        this.pos = offset;
+        this.end = offset + length;
+        this.size = 0;
+        try {
+            skipWhitespace();
+            expect('[');
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+            } else {
+                while (true) {
+                    leggiElemento();
+                    skipWhitespace();
+                    byte c = next();
+                    if (c == ']') break;
+                    if (c != ',') throw new IllegalArgumentException();
+                }
+            }
+            skipWhitespace();
+            if (pos != end) throw new IllegalArgumentException();
+            return true;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            size = 0;
+            return false;
+        } finally {
+            this.data = null;
+        }
+    }
+
+    /**
+     * @return le prime posizioni dell'ultimo messaggio decodificato. La lista e i suoi elementi vengono riutilizzati
+     * dalla decodifica successiva: se servono oltre vanno copiati
+     */
+    public List<FirstPositionHotel> getPrimePosizioni() {
+        return risultato;
+    }
+
+    private void leggiElemento() {
+        if (size == pool.size()) pool.add(new FirstPositionHotel());
+        FirstPositionHotel elemento = pool.get(size);
+        String citta = null;
+        String nomeHotel = null;
+        long seq = 0;
+
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                expect('"');
+                int chiaveStart = pos;
+                skipString();
+                int chiaveEnd = pos - 1;
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+
+                if (ugualeAscii(chiaveStart, chiaveEnd, "citta")) {
+                    expect('"');
+                    citta = leggiStringa(elemento.getCitta());
+                } else if (ugualeAscii(chiaveStart, chiaveEnd, "nomeHotel")) {
+                    expect('"');
+                    nomeHotel = leggiStringa(elemento.getNomeHotel());
+                } else if (ugualeAscii(chiaveStart, chiaveEnd, "seq") && peek() != 'n') {
+                    seq = leggiIntero();
+                } else {
+                    skipValue();
+                }
+
+                skipWhitespace();
+                byte c = next();
+                if (c == '}') break;
+                if (c != ',') throw new IllegalArgumentException();
+            }
+        }
+
+        elemento.setCitta(citta);
+        elemento.setNomeHotel(nomeHotel);
+        elemento.setSeq(seq);
+        size++;
+    }
+
+    /**
+     * Legge un intero non negativo (il numero di sequenza), senza allocare
+     */
+    private long leggiIntero() {
+        long valore = 0;
+        int cifre = 0;
+        while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+            // oltre 18 cifre il valore non sta in un long
+            if (++cifre > 18) throw new IllegalArgumentException();
+            valore = valore * 10 + (data[pos++] - '0');
+        }
+        if (cifre == 0) throw new IllegalArgumentException();
+        return valore;
+    }
+
+    /**
+     * Legge una stringa (dopo le virgolette di apertura), riusando quella precedente se coincide
+     */
+    private String leggiStringa(String precedente) {
+        int start = pos;
+        boolean ascii = true;
+        boolean escape = false;
+        while (true) {
+            byte c = next();
+            if (c == '"') break;
+            if (c == '\\') {
+                escape = true;
+                next();
+            } else if (c < 0) {
+                ascii = false;
+            }
+        }
+        int stringEnd = pos - 1;
+
+        if (escape) return decodificaEscape(start, stringEnd);
+        if (ascii && precedente != null && ugualeAscii(start, stringEnd, precedente)) return precedente;
+        return new String(data, start, stringEnd - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodifica una stringa che contiene sequenze di escape
+     */
+    private String decodificaEscape(int start, int stringEnd) {
+        int n = 0;
+        for (int i = start; i < stringEnd; i++) {
+            if (n + 4 > scratch.length) {
+                byte[] bigger = new byte[scratch.length * 2];
+                System.arraycopy(scratch, 0, bigger, 0, n);
+                scratch = bigger;
+            }
+            byte c = data[i];
+            if (c != '\\') {
+                scratch[n++] = c;
+                continue;
+            }
+            byte e = data[++i];
+            switch (e) {
+                case 'b': scratch[n++] = '\b'; break;
+                case 'f': scratch[n++] = '\f'; break;
+                case 'n': scratch[n++] = '\n'; break;
+                case 'r': scratch[n++] = '\r'; break;
+                case 't': scratch[n++] = '\t'; break;
+                case 'u':
+                    int codePoint = esadecimale(i + 1);
+                    i += 4;
+                    // coppia di surrogati (caratteri fuori dal Basic Multilingual Plane)
+                    if (Character.isHighSurrogate((char) codePoint) && i + 6 < stringEnd
+                            && data[i + 1] == '\\' && data[i + 2] == 'u') {
+                        int low = esadecimale(i + 3);
+                        if (Character.isLowSurrogate((char) low)) {
+                            codePoint = Character.toCodePoint((char) codePoint, (char) low);
+                            i += 6;
+                        }
+                    }
+                    n = scriviUtf8(codePoint, n);
+                    break;
+                default:
+                    // \" \\ \/
+                    scratch[n++] = e;
+            }
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private int esadecimale(int from) {
+        if (from + 4 > end) throw new IllegalArgumentException();
+        int value = 0;
+        for (int i = from; i < from + 4; i++) {
+            int digit = Character.digit(data[i], 16);
+            if (digit < 0) throw new IllegalArgumentException();
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private int scriviUtf8(int codePoint, int n) {
+        if (codePoint < 0x80) {
+            scratch[n++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            scratch[n++] = (byte) (0xC0 | (codePoint >> 6));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            scratch[n++] = (byte) (0xE0 | (codePoint >> 12));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            scratch[n++] = (byte) (0xF0 | (codePoint >> 18));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            scratch[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            scratch[n++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return n;
+    }
+
+    private boolean ugualeAscii(int start, int stringEnd, String s) {
+        if (stringEnd - start != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (data[start + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Salta un valore JSON di qualsiasi tipo (campi sconosciuti)
+     */
+    private void skipValue() {
+        byte c = next();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            // oggetti e array annidati: conto le parentesi, saltando il contenuto delle stringhe
+            int depth = 1;
+            while (depth > 0) {
+                byte b = next();
+                if (b == '"') skipString();
+                else if (b == '{' || b == '[') depth++;
+                else if (b == '}' || b == ']') depth--;
+            }
+        } else {
+            // numeri, true, false, null
+            while (pos < end) {
+                byte b = data[pos];
+                if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') break;
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Salta una stringa, a partire dal carattere dopo le virgolette di apertura
+     */
+    private void skipString() {
+        while (true) {
+            byte c = next();
+            if (c == '"') return;
+            if (c == '\\') next();
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte c = data[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+            pos++;
+        }
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) throw new IllegalArgumentException();
+    }
+
+    private byte peek() {
+        if (pos >= end) throw new IllegalArgumentException();
+        return data[pos];
+    }
+
+    private byte next() {
+        if (pos >= end) throw new IllegalArgumentException();
+        return data[pos++];
+    }
+}
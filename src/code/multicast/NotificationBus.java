@@ -0,0 +1,145 @@
+package code.multicast;
+
+import code.entities.FirstPositionHotel;
+import code.metrics.ClientMetrics;
+import code.metrics.LatencyHistogram;
+import code.metrics.MulticastMetrics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Consegna delle notifiche sui cambi di prima posizione, senza lock.<br>
+ * Le notifiche vengono consegnate in push, direttamente dal thread del listener, a tutti gli iscritti (interfaccia
+ * a terminale, cache, utilizzatori del client programmatico). Vengono inoltre conservate, accorpate per città
+ * (vale l'ultimo hotel notificato), per chi preferisce leggerle in pull con {@link #consuma()}.<br>
+ * Con lo storico abilitato ({@link #setStorico(NotificationHistory)}) ogni cambio viene registrato, e quelli duplicati
+ * o arrivati in ritardo non vengono consegnati.<br>
+ * Viene misurata la latenza tra l'arrivo del datagramma e la consegna agli iscritti.
+ */
+public class NotificationBus {
+    // ultima prima posizione non ancora consumata, per città
+    private final ConcurrentHashMap<String, String> pendenti;
+
+    private final CopyOnWriteArrayList<Consumer<FirstPositionHotel>> iscritti;
+
+    // latenza in nanosecondi tra la ricezione del datagramma e la consegna agli iscritti
+    private final LatencyHistogram latenzaConsegna;
+
+    // metriche condivise da tutti i client del processo
+    private final MulticastMetrics metriche;
+
+    // storico dei cambi, con il riconoscimento dei duplicati; null se disabilitato
+    private volatile NotificationHistory storico;
+
+    public NotificationBus() {
+        this.pendenti = new ConcurrentHashMap<>();
+        this.iscritti = new CopyOnWriteArrayList<>();
+        this.latenzaConsegna = new LatencyHistogram();
+        this.metriche = ClientMetrics.getDefault().getMulticast();
+    }
+
+    /**
+     * Iscrive un gestore alle notifiche. Il gestore viene invocato dal thread del listener: non deve bloccarsi
+     * @param iscritto gestore invocato per ogni nuova prima posizione
+     * @return azione che cancella l'iscrizione
+     */
+    public Runnable iscrivi(Consumer<FirstPositionHotel> iscritto) {
+        iscritti.add(iscritto);
+        return () -> iscritti.remove(iscritto);
+    }
+
+    /**
+     * Pubblica le prime posizioni ricevute in un messaggio
+     * @param primePosizioni prime posizioni decodificate (riutilizzate dal listener, quindi vengono copiate)
+     * @param ricevuto istante di ricezione del datagramma (System.nanoTime)
+     */
+    public void pubblica(List<FirstPositionHotel> primePosizioni, long ricevuto) {
+        NotificationHistory storico = this.storico;
+        long istante = storico != null ? System.currentTimeMillis() : 0;
+        for (FirstPositionHotel primaPosizione : primePosizioni) {
+            String citta = primaPosizione.getCitta();
+            String nomeHotel = primaPosizione.getNomeHotel();
+            if (citta == null || nomeHotel == null) continue;
+            if (storico != null) {
+                // i duplicati e i cambi arrivati in ritardo non vengono consegnati
+                NotificationHistory.Esito esito = storico.registra(citta, nomeHotel, primaPosizione.getSeq(), istante);
+                if (esito != NotificationHistory.Esito.NUOVO) continue;
+            }
+            pendenti.put(citta, nomeHotel);
+
+            if (iscritti.isEmpty()) continue;
+            FirstPositionHotel copia = new FirstPositionHotel();
+            copia.setCitta(citta);
+            copia.setNomeHotel(nomeHotel);
+            copia.setSeq(primaPosizione.getSeq());
+            long ritardo = System.nanoTime() - ricevuto;
+            latenzaConsegna.record(ritardo);
+            metriche.registraConsegna(ritardo);
+            for (Consumer<FirstPositionHotel> iscritto : iscritti) {
+                try {
+                    iscritto.accept(copia);
+                } catch (RuntimeException e) {
+                    // un iscritto con errori non deve impedire la consegna agli altri
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Restituisce le prime posizioni non ancora consumate, eliminandole
+     * @return mappa città -> nome hotel in prima posizione (vuota se non ci sono aggiornamenti)
+     */
+    public Map<String, String> consuma() {
+        Map<String, String> primePosizioni = new LinkedHashMap<>();
+        for (String citta : pendenti.keySet()) {
+            // remove atomica: ogni aggiornamento viene consumato una volta sola anche con più consumatori
+            String nomeHotel = pendenti.remove(citta);
+            if (nomeHotel != null) primePosizioni.put(citta, nomeHotel);
+        }
+        return primePosizioni;
+    }
+
+    /**
+     * Elimina le prime posizioni non ancora consumate
+     */
+    public void svuota() {
+        pendenti.clear();
+    }
+
+    /**
+     * Abilita lo storico dei cambi di prima posizione
+     * @param storico storico da usare, null per disabilitarlo
+     */
+    public void setStorico(NotificationHistory storico) {
+        this.storico = storico;
+    }
+
+    /**
+     * @return lo storico dei cambi di prima posizione, null se disabilitato
+     */
+    public NotificationHistory getStorico() {
+        return storico;
+    }
+
+    /**
+     * Azzera i numeri di sequenza attesi dallo storico, da chiamare quando cambia la sorgente delle notifiche
+     * (nuovo login o riconnessione)
+     */
+    public void ricominciaSequenza() {
+        NotificationHistory storico = this.storico;
+        if (storico != null) storico.ricominciaSequenza();
+    }
+
+    /**
+     * @return istogramma della latenza (in nanosecondi) tra la ricezione del datagramma e la consegna agli iscritti
+     */
+    public LatencyHistogram getLatenzaConsegna() {
+        return latenzaConsegna;
+    }
+}
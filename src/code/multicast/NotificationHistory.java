@@ -0,0 +1,462 @@
+package code.multicast;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Storico dei cambi di prima posizione ricevuti in multicast, di dimensione fissa.<br>
+ * I cambi vengono conservati in un buffer circolare: istante di arrivo, numero di sequenza, posizione e lunghezza dei
+ * nomi stanno in array di primitivi, i nomi di città e hotel in UTF-8 in un buffer fuori dallo heap, riempito in
+ * modo circolare. Non viene creato alcun oggetto per cambio: la memoria occupata dipende solo dalla capacità, e quando
+ * lo storico è pieno (o i nomi non entrano più nel buffer) i cambi più vecchi vengono sovrascritti.<br>
+ * Lo storico riconosce anche i duplicati: se il server numera i cambi (campo <code>seq</code>) quelli con un numero
+ * già ricevuto, e conta i numeri mancanti come cambi persi; i cambi arrivati in ritardo, dopo uno con numero più
+ * alto, riempiono il buco e vengono conservati ma non sono più l'ultimo stato della città. Un numero molto più basso
+ * dell'ultimo ricevuto indica che il server ha ricominciato la numerazione. Senza numeri di sequenza è un duplicato il
+ * cambio che ripete l'hotel già in prima posizione nella stessa città: l'ultimo cambio di ogni città si trova in una
+ * tabella hash a indirizzamento aperto (città → numero del cambio), senza scorrere lo storico.<br>
+ * Le registrazioni arrivano dal thread del listener multicast e tengono il monitor per un solo cambio. Le letture
+ * dall'interfaccia o da JMX non lo tengono per tutta la copia: {@link #cambi} copia lo storico a blocchi di
+ * {@value #BLOCCO} cambi, rilasciando il monitor tra un blocco e l'altro, e i contatori si leggono senza lock.
+ */
+public class NotificationHistory {
+    // byte riservati in media ai nomi di città e hotel di un cambio
+    public static final int BYTE_PER_CAMBIO = 64;
+
+    // numeri di sequenza precedenti al massimo di cui si ricorda la ricezione
+    private static final int FINESTRA = 64;
+
+    // cambi copiati da cambi() per ogni acquisizione del monitor
+    static final int BLOCCO = 64;
+
+    /**
+     * Esito della registrazione di un cambio
+     */
+    public enum Esito {
+        // cambio nuovo, da consegnare
+        NUOVO,
+        // già ricevuto: scartato
+        DUPLICATO,
+        // numero di sequenza più basso dell'ultimo ricevuto: conservato ma superato da un cambio successivo
+        IN_RITARDO
+    }
+
+    private final int capacita;
+
+    // per ogni cambio, all'indice (numero del cambio % capacita)
+    private final long[] istanti;
+    private final long[] sequenze;
+    // posizione assoluta dei nomi nel buffer (non ridotta alla sua capacità)
+    private final long[] posizioni;
+    private final int[] lunghezzeCitta;
+    private final int[] lunghezzeHotel;
+    private final int[] hashCitta;
+
+    // nomi di città e hotel, uno dopo l'altro per ogni cambio
+    private final ByteBuffer nomi;
+
+    // per ogni città, il numero del suo ultimo cambio conservato + 1 (0 = posto libero); dimensione potenza di 2.
+    // I posti che puntano a cambi già scartati restano occupati finché non vengono riusati o la tabella ricostruita
+    private final long[] ultimi;
+    private int occupati;
+
+    // numero del cambio più vecchio ancora presente e del prossimo da registrare
+    private long primo;
+    private long prossimo;
+
+    // posizione assoluta della prossima scrittura nel buffer dei nomi
+    private long scrittura;
+
+    // appoggio per la codifica UTF-8 dei nomi ricevuti, riusato tra un cambio e l'altro
+    private byte[] scratch;
+
+    // numero di sequenza più alto ricevuto (0 se nessuno) e ricezione dei FINESTRA precedenti (bit i = seqMassima - 1 - i)
+    private long seqMassima;
+    private long finestra;
+
+    // primo numero di sequenza ricevuto dopo l'ultimo azzeramento: i precedenti non sono mai stati contati come persi
+    private long seqInizio;
+
+    // scritti solo sotto il monitor, letti senza
+    private volatile long ricevuti;
+    private volatile long duplicati;
+    private volatile long inRitardo;
+    private volatile long persi;
+
+    /**
+     * @param capacita numero massimo di cambi conservati
+     */
+    public NotificationHistory(int capacita) {
+        if (capacita <= 0) throw new IllegalArgumentException("Capacità dello storico non valida: " + capacita);
+        this.capacita = capacita;
+        this.istanti = new long[capacita];
+        this.sequenze = new long[capacita];
+        this.posizioni = new long[capacita];
+        this.lunghezzeCitta = new int[capacita];
+        this.lunghezzeHotel = new int[capacita];
+        this.hashCitta = new int[capacita];
+        this.nomi = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, (long) capacita * BYTE_PER_CAMBIO));
+        this.scratch = new byte[BYTE_PER_CAMBIO * 2];
+        // almeno il doppio delle città possibili: dopo una ricostruzione la tabella è piena al massimo a metà
+        this.ultimi = new long[Integer.highestOneBit(Math.max(8, capacita)) * 4];
+    }
+
+    /**
+     * Registra un cambio di prima posizione
+     * @param citta città il cui primo posto è cambiato
+     * @param nomeHotel nuovo primo classificato
+     * @param seq numero di sequenza indicato dal server, 0 se assente
+     * @param istante istante di arrivo (System.currentTimeMillis)
+     * @return l'esito: solo i cambi {@link Esito#NUOVO} vanno consegnati
+     */
+    public synchronized Esito registra(String citta, String nomeHotel, long seq, long istante) {
+        ricevuti++;
+        int lunghezzaCitta = codifica(citta, 0);
+        int lunghezzaHotel = codifica(nomeHotel, lunghezzaCitta) - lunghezzaCitta;
+        int hash = hash(scratch, lunghezzaCitta);
+
+        Esito esito;
+        if (seq > 0) {
+            esito = sequenza(seq);
+        } else {
+            long ultimo = ultimo(hash, lunghezzaCitta);
+            esito = ultimo >= 0 && stessoHotel(ultimo, lunghezzaCitta, lunghezzaHotel) ? Esito.DUPLICATO : Esito.NUOVO;
+        }
+        if (esito == Esito.DUPLICATO) {
+            duplicati++;
+            return esito;
+        }
+        if (esito == Esito.IN_RITARDO) inRitardo++;
+        aggiungi(lunghezzaCitta, lunghezzaHotel, hash, seq, istante);
+        return esito;
+    }
+
+    /**
+     * Dimentica i numeri di sequenza ricevuti, ad esempio dopo una riconnessione (un server riavviato ricomincia la
+     * numerazione). I cambi registrati restano nello storico
+     */
+    public synchronized void ricominciaSequenza() {
+        seqMassima = 0;
+        finestra = 0;
+    }
+
+    /**
+     * Controlla un numero di sequenza, aggiornando la finestra dei numeri ricevuti e il conteggio dei cambi persi
+     */
+    private Esito sequenza(long seq) {
+        if (seqMassima == 0 || seq > seqMassima) {
+            if (seqMassima == 0) seqInizio = seq;
+            long distanza = seqMassima == 0 ? 0 : seq - seqMassima;
+            if (distanza > 1) persi += distanza - 1;
+            if (distanza == 0 || distanza > FINESTRA) finestra = 0;
+            else if (distanza == FINESTRA) finestra = 1L << (FINESTRA - 1);
+            else finestra = (finestra << distanza) | (1L << (distanza - 1));
+            seqMassima = seq;
+            return Esito.NUOVO;
+        }
+        long indietro = seqMassima - 1 - seq;
+        if (indietro < 0) return Esito.DUPLICATO;
+        if (indietro >= FINESTRA) {
+            // nessun datagramma arriva con tanto ritardo: il server ha ricominciato la numerazione
+            ricominciaSequenza();
+            return sequenza(seq);
+        }
+        long bit = 1L << indietro;
+        if ((finestra & bit) != 0) return Esito.DUPLICATO;
+        finestra |= bit;
+        // era stato contato come perso
+        if (seq > seqInizio) persi--;
+        return Esito.IN_RITARDO;
+    }
+
+    private void aggiungi(int lunghezzaCitta, int lunghezzaHotel, int hash, long seq, long istante) {
+        int lunghezza = lunghezzaCitta + lunghezzaHotel;
+        int dimensione = nomi.capacity();
+        // nomi più grandi dell'intero buffer: il cambio viene consegnato ma non conservato
+        if (lunghezza > dimensione) return;
+
+        // i nomi di un cambio sono contigui: se non entrano prima della fine del buffer si riparte dall'inizio
+        long inizio = scrittura;
+        int offset = (int) (inizio % dimensione);
+        if (offset + lunghezza > dimensione) {
+            inizio += dimensione - offset;
+            offset = 0;
+        }
+        long fine = inizio + lunghezza;
+        // scarto i cambi più vecchi se lo storico è pieno o se i loro nomi stanno per essere sovrascritti
+        while (primo < prossimo && (prossimo - primo >= capacita || posizioni[indice(primo)] < fine - dimensione)) {
+            primo++;
+        }
+
+        nomi.position(offset);
+        nomi.put(scratch, 0, lunghezza);
+
+        int i = indice(prossimo);
+        istanti[i] = istante;
+        sequenze[i] = seq;
+        posizioni[i] = inizio;
+        lunghezzeCitta[i] = lunghezzaCitta;
+        lunghezzeHotel[i] = lunghezzaHotel;
+        hashCitta[i] = hash;
+        prossimo++;
+        scrittura = fine;
+
+        if (impostaUltimo(prossimo - 1, hash, lunghezzaCitta) && ++occupati > ultimi.length / 4 * 3) ricostruisci();
+    }
+
+    /**
+     * @return il numero dell'ultimo cambio conservato per la città codificata all'inizio di scratch, -1 se non ce ne sono
+     */
+    private long ultimo(int hash, int lunghezzaCitta) {
+        int maschera = ultimi.length - 1;
+        // la tabella ha sempre dei posti liberi, che terminano la ricerca
+        for (int k = hash & maschera; ultimi[k] != 0; k = (k + 1) & maschera) {
+            long n = ultimi[k] - 1;
+            if (n >= primo && stessaCitta(n, hash, lunghezzaCitta)) return n;
+        }
+        return -1;
+    }
+
+    /**
+     * Segna il cambio come ultimo della sua città, codificata all'inizio di scratch: sostituisce il precedente della
+     * stessa città, altrimenti riusa il primo posto che punta a un cambio scartato, altrimenti occupa un posto libero
+     * @return true se è stato occupato un posto libero
+     */
+    private boolean impostaUltimo(long n, int hash, int lunghezzaCitta) {
+        int maschera = ultimi.length - 1;
+        int scartato = -1;
+        int k = hash & maschera;
+        for (; ultimi[k] != 0; k = (k + 1) & maschera) {
+            long m = ultimi[k] - 1;
+            if (m < primo) {
+                if (scartato < 0) scartato = k;
+            } else if (stessaCitta(m, hash, lunghezzaCitta)) {
+                ultimi[k] = n + 1;
+                return false;
+            }
+        }
+        ultimi[scartato >= 0 ? scartato : k] = n + 1;
+        return scartato < 0;
+    }
+
+    /**
+     * Ricostruisce la tabella degli ultimi cambi dai soli cambi conservati, liberando i posti scartati
+     */
+    private void ricostruisci() {
+        Arrays.fill(ultimi, 0);
+        occupati = 0;
+        for (long n = primo; n < prossimo; n++) {
+            int i = indice(n);
+            // scratch non serve più al cambio appena registrato, ed è già grande abbastanza per ogni città conservata
+            int offset = (int) (posizioni[i] % nomi.capacity());
+            for (int k = 0; k < lunghezzeCitta[i]; k++) scratch[k] = nomi.get(offset + k);
+            if (impostaUltimo(n, hashCitta[i], lunghezzeCitta[i])) occupati++;
+        }
+    }
+
+    private boolean stessaCitta(long n, int hash, int lunghezzaCitta) {
+        int i = indice(n);
+        return hashCitta[i] == hash && lunghezzeCitta[i] == lunghezzaCitta
+                && uguali(posizioni[i], scratch, 0, lunghezzaCitta);
+    }
+
+    private boolean stessoHotel(long n, int lunghezzaCitta, int lunghezzaHotel) {
+        int i = indice(n);
+        return lunghezzeHotel[i] == lunghezzaHotel
+                && uguali(posizioni[i] + lunghezzeCitta[i], scratch, lunghezzaCitta, lunghezzaHotel);
+    }
+
+    private boolean uguali(long posizione, byte[] byteNome, int da, int lunghezza) {
+        int offset = (int) (posizione % nomi.capacity());
+        for (int k = 0; k < lunghezza; k++) {
+            if (nomi.get(offset + k) != byteNome[da + k]) return false;
+        }
+        return true;
+    }
+
+    private int indice(long n) {
+        return (int) (n % capacita);
+    }
+
+    /**
+     * Restituisce i cambi conservati arrivati a partire da un istante, nell'ordine di arrivo. La copia avviene a
+     * blocchi: i cambi scartati mentre è in corso non vengono restituiti, quelli arrivati dopo l'inizio neanche
+     * @param citta città di cui cercare i cambi, null per tutte
+     * @param da istante minimo di arrivo (System.currentTimeMillis), 0 per tutto lo storico
+     * @return i cambi trovati
+     */
+    public List<Cambio> cambi(String citta, long da) {
+        byte[] cercata = citta == null ? null : citta.getBytes(StandardCharsets.UTF_8);
+        int hash = cercata == null ? 0 : hash(cercata, cercata.length);
+        List<Cambio> cambi = new ArrayList<>();
+        long n;
+        long fine;
+        synchronized (this) {
+            n = primo;
+            fine = prossimo;
+        }
+        while (n < fine) {
+            synchronized (this) {
+                if (n < primo) n = primo;
+                for (long limite = Math.min(fine, n + BLOCCO); n < limite; n++) {
+                    int i = indice(n);
+                    if (istanti[i] < da) continue;
+                    if (cercata != null && (hashCitta[i] != hash || lunghezzeCitta[i] != cercata.length
+                            || !uguali(posizioni[i], cercata, 0, cercata.length))) {
+                        continue;
+                    }
+                    int offset = (int) (posizioni[i] % nomi.capacity());
+                    cambi.add(new Cambio(leggi(offset, lunghezzeCitta[i]),
+                            leggi(offset + lunghezzeCitta[i], lunghezzeHotel[i]), istanti[i], sequenze[i]));
+                }
+            }
+        }
+        return cambi;
+    }
+
+    private String leggi(int offset, int lunghezza) {
+        byte[] nome = new byte[lunghezza];
+        nomi.position(offset);
+        nomi.get(nome);
+        return new String(nome, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Scrive il nome in UTF-8 in scratch a partire da offset, senza allocare (salvo ingrandire scratch)
+     * @return la posizione in scratch dopo il nome
+     */
+    private int codifica(String nome, int offset) {
+        int n = offset;
+        // al massimo 3 byte per carattere (4 per una coppia di surrogati, cioè 2 caratteri)
+        if (n + nome.length() * 3 > scratch.length) {
+            byte[] bigger = new byte[Math.max(scratch.length * 2, n + nome.length() * 3)];
+            System.arraycopy(scratch, 0, bigger, 0, n);
+            scratch = bigger;
+        }
+        for (int k = 0; k < nome.length(); k++) {
+            char c = nome.charAt(k);
+            if (c < 0x80) {
+                scratch[n++] = (byte) c;
+            } else if (c < 0x800) {
+                scratch[n++] = (byte) (0xC0 | (c >> 6));
+                scratch[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && k + 1 < nome.length() && Character.isLowSurrogate(nome.charAt(k + 1))) {
+                int codePoint = Character.toCodePoint(c, nome.charAt(++k));
+                scratch[n++] = (byte) (0xF0 | (codePoint >> 18));
+                scratch[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                scratch[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                scratch[n++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // surrogato isolato: come String.getBytes, diventa '?'
+                scratch[n++] = '?';
+            } else {
+                scratch[n++] = (byte) (0xE0 | (c >> 12));
+                scratch[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                scratch[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    /**
+     * FNV-1a sui primi lunghezza byte
+     */
+    private static int hash(byte[] data, int lunghezza) {
+        int hash = 0x811C9DC5;
+        for (int k = 0; k < lunghezza; k++) {
+            hash ^= data[k] & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * @return capacità dello storico, in cambi
+     */
+    public int getCapacita() {
+        return capacita;
+    }
+
+    /**
+     * @return numero di cambi conservati
+     */
+    public synchronized int getSize() {
+        return (int) (prossimo - primo);
+    }
+
+    /**
+     * @return numero di cambi ricevuti, duplicati compresi
+     */
+    public long getRicevuti() {
+        return ricevuti;
+    }
+
+    /**
+     * @return numero di cambi scartati perché duplicati
+     */
+    public long getDuplicati() {
+        return duplicati;
+    }
+
+    /**
+     * @return numero di cambi arrivati dopo uno con numero di sequenza più alto
+     */
+    public long getInRitardo() {
+        return inRitardo;
+    }
+
+    /**
+     * @return numero di cambi persi, ovvero numeri di sequenza mancanti e non ancora arrivati
+     */
+    public long getPersi() {
+        return persi;
+    }
+
+    @Override
+    public String toString() {
+        return "storico notifiche: " + getSize() + "/" + capacita + " cambi, " + ricevuti + " ricevuti, " +
+                duplicati + " duplicati, " + inRitardo + " in ritardo, " + persi + " persi";
+    }
+
+    /**
+     * Cambio di prima posizione conservato nello storico
+     */
+    public static class Cambio {
+        private final String citta;
+        private final String nomeHotel;
+        private final long istante;
+        private final long seq;
+
+        private Cambio(String citta, String nomeHotel, long istante, long seq) {
+            this.citta = citta;
+            this.nomeHotel = nomeHotel;
+            this.istante = istante;
+            this.seq = seq;
+        }
+
+        public String getCitta() {
+            return citta;
+        }
+
+        public String getNomeHotel() {
+            return nomeHotel;
+        }
+
+        /**
+         * @return istante di arrivo, in millisecondi
+         */
+        public long getIstante() {
+            return istante;
+        }
+
+        /**
+         * @return numero di sequenza indicato dal server, 0 se assente
+         */
+        public long getSeq() {
+            return seq;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package code.multicast;
+
+import code.entities.FirstPositionHotel;
+import code.metrics.ClientMetrics;
+import code.metrics.MulticastMetrics;
+import code.trace.TraceRecorder;
+import code.utils.AppConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listener dei messaggi multicast con cui il server notifica i cambi di prima posizione nei ranking locali.<br>
+ * Un solo thread, basato su {@link Selector} e {@link DatagramChannel}, ascolta tutti i gruppi a cui sono iscritti i
+ * client del processo: più iscrizioni allo stesso gruppo condividono lo stesso canale, e il thread resta attivo tra un
+ * login e l'altro. Il thread si blocca sulla select senza timeout: iscrizioni, cancellazioni e chiusura lo risvegliano
+ * esplicitamente.<br>
+ * Il buffer di ricezione è grande quanto il massimo datagramma UDP, il messaggio viene decodificato direttamente dai
+ * byte in oggetti riutilizzati, e i messaggi troncati o malformati vengono contati invece di essere ignorati.
+ */
+public class RankingListener implements Closeable {
+    // massima dimensione del payload di un datagramma UDP su IPv4 (65535 - 8 header UDP - 20 header IP)
+    public static final int MAX_DATAGRAM = 65507;
+
+    private static RankingListener condiviso;
+
+    private final Selector selector;
+
+    // operazioni da eseguire sul thread del selector (iscrizioni e cancellazioni)
+    private final Queue<Runnable> operazioni;
+
+    // gruppi a cui il listener è iscritto, acceduta solo dal thread del selector
+    private final Map<String, Gruppo> gruppi;
+
+    private final FirstPositionDecoder decoder;
+
+    // un byte in più del massimo: se viene riempito, il datagramma è stato troncato
+    private final ByteBuffer buffer;
+
+    private Thread thread;
+
+    private volatile boolean closed;
+
+    private final AtomicLong ricevuti;
+    private final AtomicLong troncati;
+    private final AtomicLong malformati;
+
+    private final MulticastMetrics metriche;
+
+    public RankingListener() throws IOException {
+        this.selector = Selector.open();
+        this.operazioni = new ConcurrentLinkedQueue<>();
+        this.gruppi = new HashMap<>();
+        this.decoder = new FirstPositionDecoder();
+        this.buffer = ByteBuffer.allocate(MAX_DATAGRAM + 1);
+        this.ricevuti = new AtomicLong();
+        this.troncati = new AtomicLong();
+        this.malformati = new AtomicLong();
+        this.metriche = ClientMetrics.getDefault().getMulticast();
+    }
+
+    /**
+     * @return il listener condiviso da tutti i client del processo, creato al primo utilizzo
+     * @throws UncheckedIOException se non è possibile aprire il selector
+     */
+    public static synchronized RankingListener getDefault() {
+        if (condiviso == null || condiviso.closed) {
+            try {
+                condiviso = new RankingListener();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return condiviso;
+    }
+
+    /**
+     * @return il listener condiviso se è già stato creato e non è chiuso, altrimenti null (senza crearlo)
+     */
+    public static synchronized RankingListener getAttivo() {
+        return condiviso == null || condiviso.closed ? null : condiviso;
+    }
+
+    /**
+     * Iscrive un gestore alle notifiche di un gruppo multicast, unendosi al gruppo se è la prima iscrizione, e attende
+     * che l'iscrizione sia completata
+     * @param group indirizzo del gruppo multicast
+     * @param port porta del gruppo multicast
+     * @param handler invocato dal thread del listener per ogni messaggio valido
+     * @return l'iscrizione, da cancellare quando le notifiche non servono più
+     * @throws IOException se non è possibile unirsi al gruppo
+     */
+    public Iscrizione iscrivi(String group, int port, Handler handler) throws IOException {
+        try {
+            return iscriviAsync(group, port, handler).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Iscrive un gestore alle notifiche di un gruppo multicast senza attendere: l'ingresso nel gruppo (con la scelta
+     * dell'interfaccia) avviene sul thread del listener, che completa il future. Le azioni dipendenti dal future
+     * vengono quindi eseguite dal thread del listener, se non sono asincrone, e non devono bloccarlo
+     * @param group indirizzo del gruppo multicast
+     * @param port porta del gruppo multicast
+     * @param handler invocato dal thread del listener per ogni messaggio valido
+     * @return l'iscrizione, completata con una IOException se non è possibile unirsi al gruppo
+     */
+    public CompletableFuture<Iscrizione> iscriviAsync(String group, int port, Handler handler) {
+        Iscrizione iscrizione = new Iscrizione(group + ":" + port, handler);
+        CompletableFuture<Iscrizione> fatto = new CompletableFuture<>();
+        try {
+            esegui(() -> {
+                if (closed) {
+                    fatto.completeExceptionally(new IOException("Listener chiuso"));
+                    return;
+                }
+                try {
+                    Gruppo gruppo = gruppi.get(iscrizione.chiave);
+                    if (gruppo == null) {
+                        gruppo = apriGruppo(iscrizione.chiave, group, port);
+                        gruppi.put(iscrizione.chiave, gruppo);
+                    }
+                    gruppo.iscritti.add(iscrizione);
+                    fatto.complete(iscrizione);
+                } catch (IOException | RuntimeException e) {
+                    fatto.completeExceptionally(e);
+                }
+            });
+        } catch (IOException e) {
+            fatto.completeExceptionally(e);
+        }
+        return fatto;
+    }
+
+    private Gruppo apriGruppo(String chiave, String group, int port) throws IOException {
+        InetAddress address = InetAddress.getByName(group);
+        DatagramChannel channel = DatagramChannel.open(address instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            MembershipKey membership = channel.join(address, interfaccia(address));
+            channel.configureBlocking(false);
+
+            Gruppo gruppo = new Gruppo(chiave, channel, membership);
+            channel.register(selector, SelectionKey.OP_READ, gruppo);
+            return gruppo;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sceglie l'interfaccia su cui unirsi al gruppo: quella indicata dalla proprietà multicast.interface (nome o
+     * indirizzo), altrimenti quella predefinita del sistema per il gruppo, come fa MulticastSocket.joinGroup. Solo se
+     * il sistema non ne indica una si usa la prima interfaccia attiva con supporto al multicast, preferendo quelle
+     * diverse dal loopback
+     */
+    private static NetworkInterface interfaccia(InetAddress group) throws IOException {
+        String configurata = AppConfig.getMulticastInterface();
+        if (!configurata.isEmpty()) {
+            NetworkInterface ni = NetworkInterface.getByName(configurata);
+            if (ni == null) ni = NetworkInterface.getByInetAddress(InetAddress.getByName(configurata));
+            if (ni == null) throw new SocketException("Interfaccia multicast non trovata: " + configurata);
+            return ni;
+        }
+
+        NetworkInterface predefinita = predefinita(group);
+        if (predefinita != null) return predefinita;
+
+        NetworkInterface loopback = null;
+        for (NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!ni.isUp() || !ni.supportsMulticast()) continue;
+            boolean famiglia = false;
+            for (InetAddress a : Collections.list(ni.getInetAddresses())) {
+                if ((a instanceof Inet6Address) == (group instanceof Inet6Address)) famiglia = true;
+            }
+            if (!famiglia) continue;
+            if (!ni.isLoopback()) return ni;
+            if (loopback == null) loopback = ni;
+        }
+        if (loopback == null) throw new SocketException("Nessuna interfaccia di rete con supporto al multicast");
+        return loopback;
+    }
+
+    /**
+     * Interfaccia che il sistema userebbe per il gruppo: quella dell'indirizzo locale scelto dalla tabella di routing
+     * per raggiungerlo, la stessa che il kernel sceglie per un join senza interfaccia
+     * @return l'interfaccia, o null se il sistema non ha una route per il gruppo
+     */
+    private static NetworkInterface predefinita(InetAddress group) {
+        // connect su un socket UDP non invia niente: serve solo a far scegliere la route al sistema
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.connect(group, 9);
+            InetAddress locale = socket.getLocalAddress();
+            if (locale == null || locale.isAnyLocalAddress()) return null;
+            NetworkInterface ni = NetworkInterface.getByInetAddress(locale);
+            return ni != null && ni.isUp() && ni.supportsMulticast() ? ni : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Esegue l'operazione sul thread del selector, avviandolo se necessario
+     */
+    private synchronized void esegui(Runnable operazione) throws IOException {
+        if (closed) throw new IOException("Listener chiuso");
+        if (Thread.currentThread() == thread) {
+            operazione.run();
+            return;
+        }
+        operazioni.add(operazione);
+        if (thread == null) {
+            thread = new Thread(this::ascolta, "hotelier-ranking-listener");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        selector.wakeup();
+    }
+
+    private void ascolta() {
+        try {
+            while (!closed) {
+                // nessun timeout: il thread viene risvegliato da wakeup per nuove operazioni o per la chiusura
+                selector.select();
+
+                Runnable operazione;
+                while ((operazione = operazioni.poll()) != null) {
+                    operazione.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        Gruppo gruppo = (Gruppo) key.attachment();
+                        try {
+                            ricevi(gruppo);
+                        } catch (IOException e) {
+                            // un errore sul canale chiude solo il suo gruppo: gli altri continuano a ricevere
+                            e.printStackTrace();
+                            chiudiGruppo(gruppo);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closed = true;
+            // le operazioni rimaste in coda vengono completate (le iscrizioni falliscono) prima di chiudere i gruppi
+            Runnable operazione;
+            while ((operazione = operazioni.poll()) != null) {
+                operazione.run();
+            }
+            for (Gruppo gruppo : gruppi.values()) gruppo.chiudi();
+            gruppi.clear();
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Esce da un gruppo il cui canale è in errore; le sue iscrizioni non sono più attive
+     */
+    private void chiudiGruppo(Gruppo gruppo) {
+        if (gruppi.get(gruppo.chiave) == gruppo) gruppi.remove(gruppo.chiave);
+        for (Iscrizione iscrizione : gruppo.iscritti) iscrizione.attiva = false;
+        gruppo.chiudi();
+    }
+
+    /**
+     * Legge tutti i datagrammi disponibili sul canale del gruppo
+     */
+    private void ricevi(Gruppo gruppo) throws IOException {
+        while (true) {
+            buffer.clear();
+            if (gruppo.channel.receive(buffer) == null) return;
+            long ricevuto = System.nanoTime();
+            ricevuti.incrementAndGet();
+            metriche.registraRicevuto();
+            TraceRecorder trace = TraceRecorder.getAttivo();
+            if (trace != null) trace.registraNotifica(ricevuto, buffer.array(), buffer.position());
+
+            if (buffer.position() == buffer.capacity()) {
+                troncati.incrementAndGet();
+                continue;
+            }
+
+            // la decodifica avviene una volta sola, qualunque sia il numero di iscritti
+            if (!decoder.decodifica(buffer.array(), 0, buffer.position())) {
+                malformati.incrementAndGet();
+                continue;
+            }
+            List<FirstPositionHotel> primePosizioni = decoder.getPrimePosizioni();
+            if (primePosizioni.isEmpty()) continue;
+
+            for (Iscrizione iscrizione : gruppo.iscritti) {
+                if (!iscrizione.attiva) continue;
+                try {
+                    iscrizione.handler.ricevute(primePosizioni, ricevuto);
+                } catch (RuntimeException e) {
+                    // un gestore con errori non deve fermare il listener degli altri client
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Chiude il listener, uscendo da tutti i gruppi. Il thread termina immediatamente
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (thread != null) {
+            selector.wakeup();
+        } else {
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * @return numero di messaggi ricevuti
+     */
+    public long getRicevuti() {
+        return ricevuti.get();
+    }
+
+    /**
+     * @return numero di messaggi scartati perché più grandi del buffer
+     */
+    public long getTroncati() {
+        return troncati.get();
+    }
+
+    /**
+     * @return numero di messaggi scartati perché non validi
+     */
+    public long getMalformati() {
+        return malformati.get();
+    }
+
+    /**
+     * Gestore dei messaggi ricevuti su un gruppo
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * @param primePosizioni prime posizioni decodificate; la lista e i suoi elementi vengono riutilizzati al
+         *                       messaggio successivo, quindi vanno copiati se servono dopo il ritorno
+         * @param ricevuto istante di ricezione del datagramma (System.nanoTime)
+         */
+        void ricevute(List<FirstPositionHotel> primePosizioni, long ricevuto);
+    }
+
+    /**
+     * Iscrizione di un gestore a un gruppo multicast
+     */
+    public class Iscrizione {
+        private final String chiave;
+        private final Handler handler;
+        private volatile boolean attiva;
+
+        private Iscrizione(String chiave, Handler handler) {
+            this.chiave = chiave;
+            this.handler = handler;
+            this.attiva = true;
+        }
+
+        public boolean isAttiva() {
+            return attiva && !closed;
+        }
+
+        /**
+         * Cancella l'iscrizione; se era l'ultima sul gruppo, il listener esce dal gruppo
+         */
+        public void cancella() {
+            if (!attiva) return;
+            attiva = false;
+            try {
+                esegui(() -> {
+                    Gruppo gruppo = gruppi.get(chiave);
+                    if (gruppo == null) return;
+                    gruppo.iscritti.remove(this);
+                    if (gruppo.iscritti.isEmpty()) {
+                        gruppi.remove(chiave);
+                        gruppo.chiudi();
+                    }
+                });
+            } catch (IOException ignored) {
+                // listener già chiuso: non c'è più niente da cancellare
+            }
+        }
+    }
+
+    /**
+     * Gruppo multicast con il suo canale e gli iscritti
+     */
+    private static class Gruppo {
+        private final String chiave;
+        private final DatagramChannel channel;
+        private final MembershipKey membership;
+        private final List<Iscrizione> iscritti;
+
+        private Gruppo(String chiave, DatagramChannel channel, MembershipKey membership) {
+            this.chiave = chiave;
+            this.channel = channel;
+            this.membership = membership;
+            this.iscritti = new ArrayList<>();
+        }
+
+        private void chiudi() {
+            // esco dal gruppo multicast
+            membership.drop();
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
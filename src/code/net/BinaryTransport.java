@@ -0,0 +1,169 @@
+package code.net;
+
+import code.entities.Response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Trasporto binario, utilizzabile solo se negoziato con il server tramite il comando <code>protocol</code>.<br>
+ * Ogni messaggio è preceduto dalla sua lunghezza (intero a 32 bit big endian), quindi non serve cercare la riga vuota
+ * di terminazione e il body può contenere qualsiasi carattere:
+ * <ul>
+ *     <li>richiesta: lunghezza, poi comando e json compatto in UTF-8 separati da un a capo</li>
+ *     <li>risposta: lunghezza, status code (intero a 16 bit), poi descrizione e body in UTF-8 separati da un a capo</li>
+ * </ul>
+ */
+public class BinaryTransport implements Transport {
+    // nome del formato nella negoziazione
+    public static final String FORMATO = "binary";
+
+    // limite di sicurezza: una lunghezza più grande indica un flusso corrotto
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Closeable socket;
+
+    private final DataInputStream in;
+
+    private final DataOutputStream out;
+
+    // appoggio per la decodifica dei messaggi, riutilizzato tra le risposte
+    private byte[] scratch;
+
+    public BinaryTransport(Socket socket) throws IOException {
+        this(socket.getInputStream(), socket.getOutputStream(), socket);
+    }
+
+    BinaryTransport(InputStream input, OutputStream output, Closeable socket) {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+        this.out = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        this.scratch = new byte[1024];
+    }
+
+    @Override
+    public void write(String request) throws IOException {
+        // nel protocollo testuale le richieste terminano con degli a capo, qui non servono
+        int end = request.length();
+        while (end > 0 && request.charAt(end - 1) == '\n') end--;
+        byte[] payload = request.substring(0, end).getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public Response read() throws IOException {
+        int length = leggiLunghezza();
+        if (length < 0) return null;
+        int status = in.readUnsignedShort();
+
+        int n = length - 2;
+        if (scratch.length < n) scratch = new byte[Math.max(n, scratch.length * 2)];
+        in.readFully(scratch, 0, n);
+
+        int separatore = 0;
+        while (separatore < n && scratch[separatore] != '\n') separatore++;
+        String descrizione = new String(scratch, 0, separatore, StandardCharsets.UTF_8);
+        String body = separatore < n ? new String(scratch, separatore + 1, n - separatore - 1, StandardCharsets.UTF_8) : "";
+        return new Response(status, descrizione, body);
+    }
+
+    @Override
+    public Response read(BodyHandler handler) throws IOException {
+        int length = leggiLunghezza();
+        if (length < 0) return null;
+        int status = in.readUnsignedShort();
+
+        // la descrizione arriva fino al primo a capo, il resto del messaggio è il body
+        int rimanenti = length - 2;
+        int n = 0;
+        while (rimanenti > 0) {
+            byte c = in.readByte();
+            rimanenti--;
+            if (c == '\n') break;
+            if (n == scratch.length) {
+                byte[] bigger = new byte[scratch.length * 2];
+                System.arraycopy(scratch, 0, bigger, 0, n);
+                scratch = bigger;
+            }
+            scratch[n++] = c;
+        }
+        String descrizione = new String(scratch, 0, n, StandardCharsets.UTF_8);
+
+        Reader body = new InputStreamReader(new FrameInputStream(rimanenti), StandardCharsets.UTF_8);
+        return StreamingBody.leggi(status, descrizione, body, handler);
+    }
+
+    @Override
+    public boolean attendi() throws IOException {
+        in.mark(1);
+        if (in.read() < 0) return false;
+        in.reset();
+        return true;
+    }
+
+    /**
+     * @return la lunghezza del prossimo messaggio, o -1 se il server ha chiuso la connessione
+     */
+    private int leggiLunghezza() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return -1;
+        }
+        if (length < 2 || length > MAX_FRAME) throw new IOException("Lunghezza del messaggio non valida: " + length);
+        return length;
+    }
+
+    /**
+     * Body della risposta corrente, letto direttamente dal flusso fino alla fine del messaggio
+     */
+    private class FrameInputStream extends InputStream {
+        private int rimanenti;
+
+        private FrameInputStream(int rimanenti) {
+            this.rimanenti = rimanenti;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (rimanenti == 0) return -1;
+            rimanenti--;
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (rimanenti == 0) return -1;
+            int n = in.read(b, off, Math.min(len, rimanenti));
+            if (n < 0) throw new EOFException("Connessione chiusa durante la risposta");
+            rimanenti -= n;
+            return n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
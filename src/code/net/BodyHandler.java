@@ -0,0 +1,38 @@
+package code.net;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Gestore del body di una risposta letto in streaming, man mano che arriva dal socket, invece di essere prima
+ * accumulato in memoria.<br>
+ * Viene invocato dal thread lettore della connessione: non deve bloccarsi su altre richieste della stessa connessione.
+ */
+@FunctionalInterface
+public interface BodyHandler {
+
+    /**
+     * Consuma il body della risposta. La parte di body non letta viene scartata dopo il ritorno
+     * @param status status code della risposta
+     * @param body body della risposta, che termina (fine stream) in corrispondenza della riga vuota
+     * @return il testo da salvare come body della {@link code.entities.Response}, anche vuoto
+     * @throws IOException in caso di errore di lettura o di body non valido
+     */
+    String handle(int status, Reader body) throws IOException;
+
+    /**
+     * Legge tutto il body come testo, ad esempio per i messaggi d'errore
+     * @param body body della risposta
+     * @return il body completo
+     * @throws IOException in caso di errore di lettura
+     */
+    static String testo(Reader body) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[1024];
+        int n;
+        while ((n = body.read(buffer)) >= 0) {
+            builder.append(buffer, 0, n);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package code.net;
+
+import code.entities.Response;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Trasporto basato su {@link SocketChannel} (in modalità bloccante) e {@link ByteBuffer} diretti riutilizzati.<br>
+ * Il framing della risposta avviene direttamente sui byte: vengono cercate la riga di stato e la riga vuota di
+ * terminazione, e solo a quel punto il body viene decodificato, una sola volta.
+ */
+public class ChannelTransport implements Transport {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteChannel channel;
+
+    // byte ricevuti e non ancora consumati, sempre in modalità lettura: i dati validi sono tra position e limit
+    private ByteBuffer readBuffer;
+
+    // richieste accodate e non ancora scritte sul canale
+    private final ByteBuffer writeBuffer;
+
+    private final CharsetEncoder encoder;
+
+    // appoggio per la decodifica del body, riutilizzato tra le risposte
+    private byte[] scratch;
+
+    public ChannelTransport(SocketChannel channel) throws IOException {
+        this((ByteChannel) channel.configureBlocking(true));
+    }
+
+    /**
+     * @param channel canale bloccante su cui leggere e scrivere
+     */
+    ChannelTransport(ByteChannel channel) {
+        this.channel = channel;
+        this.readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.readBuffer.flip();
+        this.writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+        this.scratch = new byte[1024];
+    }
+
+    @Override
+    public void write(String request) throws IOException {
+        encoder.reset();
+        // equivalente di println: la richiesta seguita da un a capo
+        CharBuffer chars = CharBuffer.wrap(request + "\n");
+        while (true) {
+            CoderResult result = encoder.encode(chars, writeBuffer, true);
+            if (result.isOverflow()) {
+                flush();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(writeBuffer).isOverflow()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    @Override
+    public Response read() throws IOException {
+        // tutti gli offset sono relativi a readBuffer.position(), che resta fermo finché la risposta non è completa
+        int scan = 0;
+        int lineStart = 0;
+        int statusEnd = -1;
+        int statusLength = 0;
+
+        while (true) {
+            int pos = readBuffer.position();
+            int lim = readBuffer.limit();
+            for (int i = pos + scan; i < lim; i++) {
+                if (readBuffer.get(i) != '\n') continue;
+
+                int length = i - (pos + lineStart);
+                if (length > 0 && readBuffer.get(i - 1) == '\r') length--;
+                int next = i + 1 - pos;
+
+                if (statusEnd < 0) {
+                    // eventuali righe vuote prima della riga di stato vengono ignorate
+                    if (length > 0) {
+                        statusEnd = next;
+                        statusLength = length;
+                    }
+                } else if (length == 0) {
+                    // riga vuota: la risposta è completa, e viene consumata anche se la riga di stato non è valida,
+                    // così una risposta malformata fa fallire solo la sua richiesta
+                    try {
+                        return decodifica(pos, statusLength, statusEnd, lineStart);
+                    } finally {
+                        readBuffer.position(pos + next);
+                    }
+                }
+                lineStart = next;
+            }
+            scan = lim - pos;
+
+            if (!riempi()) return null;
+        }
+    }
+
+    @Override
+    public Response read(BodyHandler handler) throws IOException {
+        // cerco la riga di stato, ignorando eventuali righe vuote che la precedono
+        int scan = 0;
+        int lineStart = 0;
+        while (true) {
+            int pos = readBuffer.position();
+            int lim = readBuffer.limit();
+            int statusEnd = -1;
+            int statusLength = 0;
+            for (int i = pos + scan; i < lim && statusEnd < 0; i++) {
+                if (readBuffer.get(i) != '\n') continue;
+
+                int length = i - (pos + lineStart);
+                if (length > 0 && readBuffer.get(i - 1) == '\r') length--;
+                if (length > 0) {
+                    statusEnd = i + 1 - pos;
+                    statusLength = length;
+                } else {
+                    lineStart = i + 1 - pos;
+                }
+            }
+
+            if (statusEnd >= 0) {
+                int statusStart = pos + lineStart;
+                readBuffer.position(pos + statusEnd);
+                Reader body = new InputStreamReader(new BodyInputStream(), StandardCharsets.UTF_8);
+
+                Response status;
+                try {
+                    // il body vuoto serve solo a riusare il parsing della riga di stato
+                    status = decodifica(statusStart, statusLength, 0, 0);
+                } catch (RuntimeException e) {
+                    // riga di stato non valida: scarto la risposta e faccio fallire solo questa richiesta
+                    BodyHandler.testo(body);
+                    throw e;
+                }
+                return StreamingBody.leggi(status.getStatus(), status.getDescription(), body, handler);
+            }
+
+            scan = lim - pos;
+            if (!riempi()) return null;
+        }
+    }
+
+    /**
+     * Body della risposta corrente, letto direttamente dal buffer fino alla riga vuota di terminazione
+     */
+    private class BodyInputStream extends InputStream {
+        // true se il prossimo byte è il primo di una riga (un eventuale '\r' iniziale non conta)
+        private boolean lineStart = true;
+        private boolean finito;
+
+        // '\r' letto e non ancora restituito: viene scartato se seguito da '\n', come fa lo Scanner del trasporto legacy
+        private boolean cr;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finito) return -1;
+            if (len == 0) return 0;
+
+            int n = 0;
+            // un '\r' in attesa non produce byte: continuo a leggere finché non ne ho almeno uno o il body è finito
+            while (n == 0 && !finito) {
+                if (!readBuffer.hasRemaining() && !riempi()) {
+                    throw new EOFException("Connessione chiusa durante la risposta");
+                }
+                while (n < len && readBuffer.hasRemaining()) {
+                    byte c = readBuffer.get(readBuffer.position());
+                    if (cr && c != '\n') {
+                        // '\r' isolato: fa parte del body
+                        b[off + n++] = '\r';
+                        cr = false;
+                        lineStart = false;
+                        continue;
+                    }
+                    readBuffer.get();
+                    if (c == '\r') {
+                        cr = true;
+                        continue;
+                    }
+                    cr = false;
+                    if (c == '\n' && lineStart) {
+                        finito = true;
+                        break;
+                    }
+                    lineStart = c == '\n';
+                    b[off + n++] = c;
+                }
+            }
+            return n == 0 ? -1 : n;
+        }
+    }
+
+    /**
+     * Costruisce la risposta a partire dai byte già delimitati
+     * @param pos posizione di inizio della risposta nel buffer
+     * @param statusLength lunghezza della riga di stato (senza terminatore)
+     * @param bodyStart offset di inizio del body
+     * @param bodyEnd offset di fine del body (inizio della riga vuota)
+     */
+    private Response decodifica(int pos, int statusLength, int bodyStart, int bodyEnd) {
+        // status code: le cifre iniziali della riga di stato
+        int i = pos;
+        int end = pos + statusLength;
+        while (i < end && readBuffer.get(i) == ' ') i++;
+        int status = 0;
+        int digits = 0;
+        while (i < end && readBuffer.get(i) >= '0' && readBuffer.get(i) <= '9') {
+            status = status * 10 + (readBuffer.get(i) - '0');
+            digits++;
+            i++;
+        }
+        if (digits == 0) throw new NumberFormatException("Riga di stato non valida");
+
+        String descrizione = decodifica(i, end - i).trim();
+        String body = decodifica(pos + bodyStart, bodyEnd - bodyStart);
+
+        return new Response(status, descrizione, body);
+    }
+
+    private String decodifica(int from, int length) {
+        if (length <= 0) return "";
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+
+        ByteBuffer view = readBuffer.duplicate();
+        view.limit(from + length).position(from);
+        view.get(scratch, 0, length);
+        // i '\r' dei terminatori di riga vengono tolti, come fa lo Scanner del trasporto legacy
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            if (scratch[i] == '\r' && i + 1 < length && scratch[i + 1] == '\n') continue;
+            scratch[n++] = scratch[i];
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean attendi() throws IOException {
+        return readBuffer.hasRemaining() || riempi();
+    }
+
+    /**
+     * Legge altri byte dal canale, compattando il buffer ed eventualmente ingrandendolo se è pieno
+     * @return false se il server ha chiuso la connessione
+     */
+    private boolean riempi() throws IOException {
+        if (readBuffer.position() == 0 && readBuffer.limit() == readBuffer.capacity()) {
+            // la risposta non entra nel buffer: ne alloco uno più grande
+            ByteBuffer bigger = ByteBuffer.allocateDirect(readBuffer.capacity() * 2);
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        } else {
+            readBuffer.compact();
+        }
+
+        int n = channel.read(readBuffer);
+        readBuffer.flip();
+        return n >= 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
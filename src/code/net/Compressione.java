@@ -0,0 +1,230 @@
+package code.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompressione dei body delle risposte, se negoziata con il server.<br>
+ * Il server comprime solo i body più grandi della soglia concordata; un body compresso viene inviato su una sola riga
+ * come prefisso dell'algoritmo seguito dai byte compressi in Base64 (ad esempio <code>deflate:eJzT0yMAAGTvBe8=</code>),
+ * così da restare compatibile con il framing a righe del protocollo testuale. I body senza prefisso sono in chiaro.<br>
+ * Vengono contati i byte ricevuti compressi e i byte ottenuti dalla decompressione.
+ */
+public class Compressione {
+    public static final String DEFLATE = "deflate";
+    public static final String GZIP = "gzip";
+
+    private static final String PREFISSO_DEFLATE = DEFLATE + ":";
+    private static final String PREFISSO_GZIP = GZIP + ":";
+
+    // algoritmo negoziato con il server
+    private final String algoritmo;
+
+    private final AtomicLong risposteCompresse;
+    private final AtomicLong byteCompressi;
+    private final AtomicLong byteDecompressi;
+
+    /**
+     * @param algoritmo algoritmo negoziato, {@link #DEFLATE} oppure {@link #GZIP}
+     */
+    public Compressione(String algoritmo) {
+        if (!DEFLATE.equals(algoritmo) && !GZIP.equals(algoritmo)) {
+            throw new IllegalArgumentException("Algoritmo di compressione sconosciuto: " + algoritmo);
+        }
+        this.algoritmo = algoritmo;
+        this.risposteCompresse = new AtomicLong();
+        this.byteCompressi = new AtomicLong();
+        this.byteDecompressi = new AtomicLong();
+    }
+
+    /**
+     * Decomprime un body già accumulato
+     * @param body body della risposta, compresso o in chiaro
+     * @return il body in chiaro
+     * @throws UncheckedIOException se il body compresso non è valido
+     */
+    public String decomprimi(String body) {
+        String dati = body.trim();
+        boolean gzip = dati.startsWith(PREFISSO_GZIP);
+        if (!gzip && !dati.startsWith(PREFISSO_DEFLATE)) return body;
+
+        byte[] compressi = Base64.getMimeDecoder().decode(dati.substring(gzip ? PREFISSO_GZIP.length() : PREFISSO_DEFLATE.length()));
+        try (InputStream input = apri(new ByteArrayInputStream(compressi), gzip)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(compressi.length * 4);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) >= 0) output.write(buffer, 0, n);
+
+            conta(compressi.length, output.size());
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Body compresso non valido", e);
+        }
+    }
+
+    /**
+     * Decomprime i body letti in streaming, senza accumularli
+     * @param handler gestore a cui passare il body in chiaro
+     * @return gestore che riceve il body così come arriva dal server
+     */
+    public BodyHandler decomprimi(BodyHandler handler) {
+        return (status, body) -> {
+            PushbackReader reader = new PushbackReader(body, PREFISSO_DEFLATE.length());
+            char[] prefisso = new char[PREFISSO_DEFLATE.length()];
+            int n = 0;
+            int letti;
+            while (n < prefisso.length && (letti = reader.read(prefisso, n, prefisso.length - n)) >= 0) n += letti;
+
+            String inizio = new String(prefisso, 0, n);
+            boolean gzip = inizio.startsWith(PREFISSO_GZIP);
+            if (gzip) {
+                // il prefisso gzip è più corto: i caratteri in più appartengono già ai dati
+                reader.unread(prefisso, PREFISSO_GZIP.length(), n - PREFISSO_GZIP.length());
+            } else if (!inizio.equals(PREFISSO_DEFLATE)) {
+                reader.unread(prefisso, 0, n);
+                return handler.handle(status, reader);
+            }
+
+            Decompressi decompressi = new Decompressi(reader, gzip);
+            try {
+                return handler.handle(status, new InputStreamReader(decompressi, StandardCharsets.UTF_8));
+            } finally {
+                decompressi.concludi();
+            }
+        };
+    }
+
+    private static InputStream apri(InputStream compressi, boolean gzip) throws IOException {
+        return gzip ? new GZIPInputStream(compressi) : new InflaterInputStream(compressi, new Inflater());
+    }
+
+    private void conta(long compressi, long decompressi) {
+        risposteCompresse.incrementAndGet();
+        byteCompressi.addAndGet(compressi);
+        byteDecompressi.addAndGet(decompressi);
+    }
+
+    /**
+     * @return algoritmo negoziato con il server
+     */
+    public String getAlgoritmo() {
+        return algoritmo;
+    }
+
+    /**
+     * @return numero di risposte ricevute compresse
+     */
+    public long getRisposteCompresse() {
+        return risposteCompresse.get();
+    }
+
+    /**
+     * @return byte ricevuti compressi (prima della codifica Base64)
+     */
+    public long getByteCompressi() {
+        return byteCompressi.get();
+    }
+
+    /**
+     * @return byte ottenuti dalla decompressione
+     */
+    public long getByteDecompressi() {
+        return byteDecompressi.get();
+    }
+
+    @Override
+    public String toString() {
+        long compressi = getByteCompressi();
+        long decompressi = getByteDecompressi();
+        return String.format("compressione %s: %d risposte, %d byte compressi, %d byte decompressi (rapporto %.1f)",
+                algoritmo, getRisposteCompresse(), compressi, decompressi, compressi == 0 ? 0.0 : (double) decompressi / compressi);
+    }
+
+    /**
+     * Body decompresso man mano che viene letto
+     */
+    private class Decompressi extends InputStream {
+        private final ContaByte compressi;
+        private final InputStream input;
+        private long letti;
+
+        private Decompressi(Reader reader, boolean gzip) throws IOException {
+            // i caratteri Base64 sono ASCII: li passo direttamente come byte al decoder, che ignora gli a capo
+            InputStream ascii = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return reader.read();
+                }
+            };
+            this.compressi = new ContaByte(Base64.getMimeDecoder().wrap(ascii));
+            this.input = apri(compressi, gzip);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = input.read();
+            if (b >= 0) letti++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = input.read(b, off, len);
+            if (n > 0) letti += n;
+            return n;
+        }
+
+        /**
+         * Decomprime l'eventuale parte non letta dal gestore e aggiorna i contatori
+         */
+        private void concludi() {
+            byte[] scarto = new byte[8192];
+            try {
+                while (read(scarto, 0, scarto.length) >= 0) {
+                    // scarto il resto del body
+                }
+            } catch (IOException ignored) {
+                // body non valido o connessione chiusa: l'errore arriva comunque al chiamante
+            }
+            conta(compressi.letti, letti);
+        }
+    }
+
+    /**
+     * Conta i byte compressi letti
+     */
+    private static class ContaByte extends InputStream {
+        private final InputStream input;
+        private long letti;
+
+        private ContaByte(InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = input.read();
+            if (b >= 0) letti++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = input.read(b, off, len);
+            if (n > 0) letti += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package code.net;
+
+import code.entities.Response;
+import code.metrics.ClientMetrics;
+import code.metrics.CommandMetrics;
+import code.trace.TraceRecorder;
+import code.utils.AppConfig;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connessione TCP verso il server HOTELIER con supporto al pipelining.<br>
+ * Le richieste vengono scritte sul socket appena inviate, senza attendere la risposta della precedente. Dato che
+ * il server risponde in ordine, un thread lettore dedicato associa ogni risposta alla richiesta in attesa più vecchia
+ * (ordine FIFO).
+ */
+public class Connection implements AutoCloseable {
+    private static final AtomicInteger contatore = new AtomicInteger();
+
+    public static final String PROTOCOLLO_TESTO = "text";
+
+    public static final String NESSUNA_COMPRESSIONE = "none";
+
+    // attesa massima della risposta alla negoziazione del protocollo, in millisecondi
+    private static final int NEGOZIAZIONE_TIMEOUT = 2000;
+
+    // trasporto su cui viaggiano richieste e risposte
+    private final Transport transport;
+
+    // protocollo in uso sulla connessione ("text" o "binary")
+    private final String protocollo;
+
+    // decompressione dei body negoziata con il server, null se non in uso
+    private final Compressione compressione;
+
+    // richieste inviate in attesa di risposta, nell'ordine di invio
+    private final BlockingQueue<InAttesa> pending;
+
+    // richieste inviate e non ancora completate, compresa quella di cui si sta leggendo la risposta
+    private final AtomicInteger inCorso;
+
+    // garantisce che l'ordine di scrittura sul socket coincida con l'ordine nella coda
+    private final Object writeLock;
+
+    private final Thread reader;
+
+    // identificativo della connessione nel processo, usato anche nei trace
+    private final int id;
+
+    private volatile boolean closed;
+
+    // completato con la causa quando la connessione viene chiusa
+    private final CompletableFuture<IOException> chiusura;
+
+    private Connection(Transport transport, String protocollo, Compressione compressione) {
+        this.transport = transport;
+        this.protocollo = protocollo;
+        this.compressione = compressione;
+        this.pending = new LinkedBlockingQueue<>();
+        this.inCorso = new AtomicInteger();
+        this.writeLock = new Object();
+        this.chiusura = new CompletableFuture<>();
+        this.id = contatore.incrementAndGet();
+        this.reader = new Thread(this::leggiRisposte, "hotelier-reader-" + id);
+        this.reader.setDaemon(true);
+    }
+
+    /**
+     * Apre una nuova connessione, con trasporto, protocollo e compressione specificati dalle proprietà
+     * client.transport, client.protocol e client.compression, e avvia il thread lettore
+     * @param hostName indirizzo del server
+     * @param port porta del server
+     * @return la connessione aperta
+     * @throws IOException se non è possibile connettersi
+     */
+    public static Connection open(String hostName, int port) throws IOException {
+        return open(hostName, port, AppConfig.getTransport(), AppConfig.getProtocol(), AppConfig.getCompression());
+    }
+
+    /**
+     * Apre una nuova connessione con il trasporto indicato e il protocollo testuale, e avvia il thread lettore
+     * @param hostName indirizzo del server
+     * @param port porta del server
+     * @param transport "legacy" (Scanner/PrintWriter) oppure "nio" (SocketChannel)
+     * @return la connessione aperta
+     * @throws IOException se non è possibile connettersi
+     * @throws IllegalArgumentException se il trasporto non esiste
+     */
+    public static Connection open(String hostName, int port, String transport) throws IOException {
+        return open(hostName, port, transport, PROTOCOLLO_TESTO, NESSUNA_COMPRESSIONE);
+    }
+
+    /**
+     * Apre una nuova connessione e avvia il thread lettore.<br>
+     * Se sono richiesti il protocollo binario o la compressione, questi vengono prima negoziati con il server: se il
+     * server non li supporta la connessione prosegue con il protocollo testuale e il trasporto indicato, senza
+     * compressione (se non risponde alla negoziazione, la connessione viene riaperta)
+     * @param hostName indirizzo del server
+     * @param port porta del server
+     * @param transport "legacy" (Scanner/PrintWriter) oppure "nio" (SocketChannel), usato dal protocollo testuale
+     * @param protocol "text" (righe terminate da una riga vuota) oppure "binary" (messaggi preceduti dalla lunghezza)
+     * @param compression "none", "deflate" oppure "gzip": compressione dei body più grandi della soglia
+     *                    (proprietà client.compression.threshold)
+     * @return la connessione aperta
+     * @throws IOException se non è possibile connettersi
+     * @throws IllegalArgumentException se il trasporto, il protocollo o la compressione non esistono
+     */
+    public static Connection open(String hostName, int port, String transport, String protocol, String compression) throws IOException {
+        if (!transport.equals("legacy") && !transport.equals("nio")) {
+            throw new IllegalArgumentException("Trasporto sconosciuto: " + transport);
+        }
+        if (!protocol.equals(PROTOCOLLO_TESTO) && !protocol.equals(BinaryTransport.FORMATO)) {
+            throw new IllegalArgumentException("Protocollo sconosciuto: " + protocol);
+        }
+        if (!compression.equals(NESSUNA_COMPRESSIONE)) {
+            // verifica l'algoritmo
+            new Compressione(compression);
+        }
+
+        Connection connection = null;
+        if (!protocol.equals(PROTOCOLLO_TESTO) || !compression.equals(NESSUNA_COMPRESSIONE)) {
+            connection = apriNegoziando(hostName, port, transport, protocol, compression);
+        }
+        if (connection == null) {
+            Socket socket = apriSocket(hostName, port, transport);
+            connection = new Connection(creaTransport(socket, transport, PROTOCOLLO_TESTO), PROTOCOLLO_TESTO, null);
+        }
+        connection.reader.start();
+        return connection;
+    }
+
+    private static Socket apriSocket(String hostName, int port, String transport) throws IOException {
+        if (transport.equals("legacy")) return new Socket(hostName, port);
+        // il socket di un canale bloccante permette di negoziare con gli stream prima di usare il canale
+        return SocketChannel.open(new InetSocketAddress(hostName, port)).socket();
+    }
+
+    private static Transport creaTransport(Socket socket, String transport, String protocollo) throws IOException {
+        if (protocollo.equals(BinaryTransport.FORMATO)) return new BinaryTransport(socket);
+        if (transport.equals("legacy")) return new LineTransport(socket);
+        return new ChannelTransport(socket.getChannel());
+    }
+
+    /**
+     * Apre una connessione e negozia protocollo e compressione con il comando <code>protocol</code>, ancora in formato
+     * testuale
+     * @return la connessione con quanto accettato dal server, o null se il server non ha risposto alla negoziazione
+     */
+    private static Connection apriNegoziando(String hostName, int port, String transport, String protocol, String compression) throws IOException {
+        Socket socket = apriSocket(hostName, port, transport);
+        try {
+            JsonObject richiesta = new JsonObject();
+            JsonArray formati = new JsonArray();
+            formati.add(protocol);
+            richiesta.add("formats", formati);
+            if (!compression.equals(NESSUNA_COMPRESSIONE)) {
+                richiesta.addProperty("compression", compression);
+                richiesta.addProperty("threshold", AppConfig.getCompressionThreshold());
+            }
+
+            socket.setSoTimeout(NEGOZIAZIONE_TIMEOUT);
+            OutputStream output = socket.getOutputStream();
+            output.write(("protocol\n" + richiesta + "\n\n").getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            // la risposta viene letta un byte alla volta, per non consumare niente oltre la riga vuota
+            InputStream input = socket.getInputStream();
+            String status = leggiRiga(input);
+            StringBuilder body = new StringBuilder();
+            String line;
+            while ((line = leggiRiga(input)) != null && !line.isEmpty()) body.append(line);
+            if (line == null) throw new EOFException("Connessione chiusa durante la negoziazione");
+            socket.setSoTimeout(0);
+
+            String protocollo = PROTOCOLLO_TESTO;
+            Compressione compressione = null;
+            if (status != null && status.startsWith("200")) {
+                // il server risponde con quanto accettato, ad esempio {"format":"binary","compression":"deflate"}
+                if (protocol.equals(valoreAccettato(body.toString(), "format"))) protocollo = protocol;
+                if (compression.equals(valoreAccettato(body.toString(), "compression"))) compressione = new Compressione(compression);
+            }
+            return new Connection(creaTransport(socket, transport, protocollo), protocollo, compressione);
+        } catch (SocketTimeoutException e) {
+            // il server non conosce il comando e non risponde: la connessione viene riaperta per partire da uno stato
+            // pulito con il protocollo testuale
+            socket.close();
+            return null;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static String valoreAccettato(String body, String campo) {
+        try {
+            JsonElement json = JsonParser.parseString(body);
+            if (!json.isJsonObject() || !json.getAsJsonObject().has(campo)) return null;
+            return json.getAsJsonObject().get(campo).getAsString();
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return la riga letta senza terminatore, o null se la connessione è stata chiusa
+     */
+    private static String leggiRiga(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = input.read()) != '\n') {
+            if (c < 0) return null;
+            if (c != '\r') line.write(c);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Invia una richiesta senza attendere le risposte alle richieste precedenti
+     * @param request richiesta da mandare, in formato json
+     * @return la risposta del server, completata dal thread lettore
+     */
+    public CompletableFuture<Response> send(String request) {
+        return send(request, null);
+    }
+
+    /**
+     * Invia una richiesta il cui body di risposta viene letto in streaming dal gestore
+     * @param request richiesta da mandare, in formato json
+     * @param handler gestore del body, invocato dal thread lettore; se null il body viene accumulato
+     * @return la risposta del server, con il body restituito dal gestore
+     */
+    public CompletableFuture<Response> send(String request, BodyHandler handler) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        synchronized (writeLock) {
+            if (closed) {
+                future.completeExceptionally(new IOException("Connessione chiusa"));
+                return future;
+            }
+            pending.add(new InAttesa(future, handler, request));
+            try {
+                transport.write(request);
+                transport.flush();
+            } catch (IOException e) {
+                chiudi(e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Invia un gruppo di richieste una dietro l'altra, con un'unica scrittura sul socket
+     * @param requests richieste da mandare
+     * @return le risposte del server, nello stesso ordine delle richieste
+     */
+    public List<CompletableFuture<Response>> sendAll(List<String> requests) {
+        List<CompletableFuture<Response>> futures = new ArrayList<>(requests.size());
+        synchronized (writeLock) {
+            for (String request : requests) {
+                CompletableFuture<Response> future = new CompletableFuture<>();
+                futures.add(future);
+                if (closed) {
+                    future.completeExceptionally(new IOException("Connessione chiusa"));
+                    continue;
+                }
+                pending.add(new InAttesa(future, null, request));
+                try {
+                    transport.write(request);
+                } catch (IOException e) {
+                    chiudi(e);
+                }
+            }
+            if (!closed) {
+                try {
+                    transport.flush();
+                } catch (IOException e) {
+                    chiudi(e);
+                }
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * @return numero di richieste inviate di cui non è ancora iniziata la lettura della risposta
+     */
+    public int inAttesa() {
+        return pending.size();
+    }
+
+    /**
+     * @return numero di richieste inviate la cui risposta non è ancora stata ricevuta per intero
+     */
+    public int inCorso() {
+        return inCorso.get();
+    }
+
+    /**
+     * @return il protocollo in uso, "text" oppure "binary" se negoziato con il server
+     */
+    public String getProtocollo() {
+        return protocollo;
+    }
+
+    /**
+     * @return la compressione negoziata con il server, con i contatori dei byte, o null se non in uso
+     */
+    public Compressione getCompressione() {
+        return compressione;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return future completato con la causa della chiusura, dal server, per un errore o con {@link #close()}
+     */
+    public CompletableFuture<IOException> getChiusura() {
+        return chiusura;
+    }
+
+    /**
+     * Corpo del thread lettore: legge le risposte una alla volta e completa le richieste in attesa in ordine FIFO
+     */
+    private void leggiRisposte() {
+        IOException causa = new IOException("Connessione chiusa dal server");
+        InAttesa richiesta = null;
+        try {
+            while (!closed) {
+                // senza richieste in attesa resta comunque in lettura, per accorgersi subito se il server chiude
+                if (pending.isEmpty() && !transport.attendi()) break;
+
+                // attende una richiesta inviata: è quella a cui si riferisce la prossima risposta, e serve sapere
+                // prima di leggere se il body va gestito in streaming
+                richiesta = pending.take();
+
+                Response response;
+                try {
+                    response = leggi(richiesta);
+                } catch (RuntimeException e) {
+                    // risposta malformata: fallisce solo la richiesta corrispondente
+                    richiesta.fallisci(e);
+                    richiesta = null;
+                    continue;
+                }
+                if (response == null) break;
+
+                richiesta.completa(response);
+                richiesta = null;
+            }
+        } catch (IOException e) {
+            causa = e;
+        } catch (InterruptedException ignored) {
+            // la connessione è stata chiusa mentre il thread attendeva una richiesta
+        } finally {
+            if (richiesta != null) richiesta.fallisci(causa);
+            chiudi(causa);
+        }
+    }
+
+    /**
+     * Legge la risposta alla richiesta, contando i byte del body ricevuto e decomprimendolo se necessario
+     */
+    private Response leggi(InAttesa richiesta) throws IOException {
+        if (richiesta.handler == null) {
+            Response response = transport.read();
+            if (response == null) return null;
+            richiesta.byteRicevuti = byteUtf8(response.getBody());
+            if (compressione != null) response.setBody(compressione.decomprimi(response.getBody()));
+            return response;
+        }
+
+        BodyHandler handler = compressione != null ? compressione.decomprimi(richiesta.handler) : richiesta.handler;
+        return transport.read((status, body) -> {
+            BodyContato contato = new BodyContato(body);
+            try {
+                return handler.handle(status, contato);
+            } finally {
+                richiesta.byteRicevuti = contato.byteLetti;
+            }
+        });
+    }
+
+    /**
+     * @return numero di byte della stringa codificata in UTF-8, calcolato senza codificarla
+     */
+    private static long byteUtf8(CharSequence testo) {
+        long n = 0;
+        for (int i = 0; i < testo.length(); i++) {
+            n += byteUtf8(testo.charAt(i));
+        }
+        return n;
+    }
+
+    private static int byteUtf8(char c) {
+        if (c < 0x80) return 1;
+        if (c < 0x800) return 2;
+        // un carattere fuori dal Basic Multilingual Plane occupa 4 byte, 2 per ogni surrogato
+        if (Character.isSurrogate(c)) return 2;
+        return 3;
+    }
+
+    /**
+     * Chiude la connessione e fa fallire tutte le richieste ancora in attesa
+     * @param causa eccezione con cui completare le richieste in attesa
+     */
+    private void chiudi(IOException causa) {
+        synchronized (writeLock) {
+            closed = true;
+            try {
+                transport.close();
+            } catch (IOException ignored) {}
+        }
+
+        InAttesa richiesta;
+        while ((richiesta = pending.poll()) != null) {
+            richiesta.fallisci(causa);
+        }
+
+        // sblocca il thread lettore se è in attesa di una richiesta
+        if (Thread.currentThread() != reader) reader.interrupt();
+
+        chiusura.complete(causa);
+    }
+
+    @Override
+    public void close() {
+        chiudi(new IOException("Connessione chiusa"));
+    }
+
+    /**
+     * Richiesta inviata in attesa di risposta
+     */
+    private class InAttesa {
+        private final CompletableFuture<Response> future;
+
+        // gestore del body in streaming, null se il body va accumulato
+        private final BodyHandler handler;
+
+        // metriche del comando della richiesta
+        private final CommandMetrics metriche;
+
+        // istante di invio (System.nanoTime) e byte della richiesta
+        private final long inviata;
+        private final long byteInviati;
+
+        // byte del body della risposta, scritto e letto solo dal thread lettore
+        private long byteRicevuti;
+
+        // registratore del traffico attivo all'invio e testo della richiesta, null se il traffico non viene registrato
+        private final TraceRecorder trace;
+        private final String request;
+
+        private InAttesa(CompletableFuture<Response> future, BodyHandler handler, String request) {
+            this.future = future;
+            this.handler = handler;
+            this.metriche = ClientMetrics.getDefault().getComando(ClientMetrics.comando(request));
+            this.inviata = System.nanoTime();
+            this.byteInviati = byteUtf8(request);
+            this.trace = TraceRecorder.getAttivo();
+            this.request = trace != null ? request : null;
+            inCorso.incrementAndGet();
+        }
+
+        private void completa(Response response) {
+            inCorso.decrementAndGet();
+            long latenza = System.nanoTime() - inviata;
+            metriche.registra(latenza, response.getStatus(), byteInviati, byteRicevuti);
+            if (trace != null) trace.registraRichiesta(id, inviata, latenza, response.getStatus(), byteInviati, byteRicevuti, request);
+            future.complete(response);
+        }
+
+        private void fallisci(Throwable causa) {
+            inCorso.decrementAndGet();
+            metriche.registraErrore(byteInviati);
+            if (trace != null) trace.registraRichiesta(id, inviata, System.nanoTime() - inviata, 0, byteInviati, 0, request);
+            future.completeExceptionally(causa);
+        }
+    }
+
+    /**
+     * Body in streaming che conta i byte letti dal gestore
+     */
+    private static class BodyContato extends FilterReader {
+        private long byteLetti;
+
+        private BodyContato(Reader body) {
+            super(body);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) byteLetti += byteUtf8((char) c);
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = super.read(cbuf, off, len);
+            for (int i = off; i < off + n; i++) {
+                byteLetti += byteUtf8(cbuf[i]);
+            }
+            return n;
+        }
+    }
+}
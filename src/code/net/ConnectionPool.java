@@ -0,0 +1,226 @@
+package code.net;
+
+import code.entities.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool di connessioni verso il server HOTELIER, per distribuire le richieste che non dipendono dalla sessione
+ * (le ricerche) su più socket.<br>
+ * Ogni richiesta va alla connessione con meno richieste in corso; se sono tutte occupate e il pool non è pieno ne
+ * viene aperta una nuova. Le connessioni inutilizzate da più del timeout vengono chiuse, mantenendone aperte almeno
+ * quante indicate dal warm-up.
+ */
+public class ConnectionPool implements AutoCloseable {
+    // server verso cui aprire le connessioni
+    private final EndpointSelector endpoints;
+
+    // numero massimo di connessioni aperte
+    private final int size;
+
+    // millisecondi di inattività dopo cui una connessione viene chiusa (0 = mai)
+    private final long idleTimeout;
+
+    // connessioni aperte all'avvio e mantenute anche se inattive
+    private final int warmup;
+
+    // acceduta solo sotto la lock del pool
+    private final List<Pooled> connessioni;
+
+    // connessioni in apertura fuori dalla lock, contate nella dimensione del pool
+    private int inApertura;
+
+    private ScheduledExecutorService pulizia;
+
+    private boolean closed;
+
+    /**
+     * @param hostName indirizzo del server
+     * @param port porta del server
+     * @param size numero massimo di connessioni
+     * @param idleTimeout millisecondi di inattività dopo cui una connessione viene chiusa, 0 per non chiuderle mai
+     * @param warmup connessioni da aprire all'avvio e da mantenere anche se inattive
+     */
+    public ConnectionPool(String hostName, int port, int size, long idleTimeout, int warmup) {
+        this(new EndpointSelector(hostName, port), size, idleTimeout, warmup);
+    }
+
+    /**
+     * @param endpoints server tra cui scegliere: ogni nuova connessione va a quello raggiungibile più veloce
+     * @param size numero massimo di connessioni
+     * @param idleTimeout millisecondi di inattività dopo cui una connessione viene chiusa, 0 per non chiuderle mai
+     * @param warmup connessioni da aprire all'avvio e da mantenere anche se inattive
+     */
+    public ConnectionPool(EndpointSelector endpoints, int size, long idleTimeout, int warmup) {
+        if (size <= 0) throw new IllegalArgumentException("La dimensione del pool deve essere positiva");
+        this.endpoints = endpoints;
+        this.size = size;
+        this.idleTimeout = idleTimeout;
+        this.warmup = Math.min(warmup, size);
+        this.connessioni = new ArrayList<>();
+    }
+
+    /**
+     * Apre le connessioni di warm-up e avvia la chiusura di quelle inattive
+     * @throws IOException se non è possibile connettersi
+     */
+    public synchronized void start() throws IOException {
+        for (int i = connessioni.size(); i < warmup; i++) apri();
+
+        if (idleTimeout > 0 && pulizia == null) {
+            pulizia = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "hotelier-pool-cleaner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long periodo = Math.max(1, idleTimeout / 2);
+            pulizia.scheduleWithFixedDelay(this::chiudiInattive, periodo, periodo, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Invia una richiesta sulla connessione meno carica
+     * @param request richiesta da mandare
+     * @return la risposta del server
+     */
+    public CompletableFuture<Response> send(String request) {
+        return send(request, null);
+    }
+
+    /**
+     * Invia una richiesta sulla connessione meno carica, con il body di risposta letto in streaming
+     * @param request richiesta da mandare
+     * @param handler gestore del body, se null il body viene accumulato
+     * @return la risposta del server
+     */
+    public CompletableFuture<Response> send(String request, BodyHandler handler) {
+        try {
+            return scegli().send(request, handler);
+        } catch (IOException e) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private Connection scegli() throws IOException {
+        synchronized (this) {
+            while (true) {
+                if (closed) throw new IOException("Pool chiuso");
+
+                Pooled migliore = null;
+                Iterator<Pooled> iterator = connessioni.iterator();
+                while (iterator.hasNext()) {
+                    Pooled pooled = iterator.next();
+                    if (pooled.connection.isClosed()) {
+                        // chiusa dal server o per un errore: viene sostituita alla prossima necessità
+                        iterator.remove();
+                        continue;
+                    }
+                    if (migliore == null || pooled.connection.inCorso() < migliore.connection.inCorso()) migliore = pooled;
+                }
+                boolean pieno = connessioni.size() + inApertura >= size;
+                if (migliore != null && (migliore.connection.inCorso() == 0 || pieno)) {
+                    migliore.ultimoUso = System.nanoTime();
+                    return migliore.connection;
+                }
+                if (!pieno) {
+                    inApertura++;
+                    break;
+                }
+                // nessuna connessione aperta e tutte quelle possibili in apertura: si attende la prima
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrotto in attesa di una connessione del pool");
+                }
+            }
+        }
+
+        // la connessione (connect e negoziazione del protocollo) viene aperta fuori dalla lock, così le altre
+        // richieste continuano a usare le connessioni già aperte
+        Connection connection = null;
+        boolean aggiunta = false;
+        try {
+            connection = endpoints.apri().getConnection();
+        } finally {
+            synchronized (this) {
+                inApertura--;
+                if (connection != null && !closed) {
+                    connessioni.add(new Pooled(connection));
+                    aggiunta = true;
+                }
+                notifyAll();
+            }
+        }
+        if (!aggiunta) {
+            // il pool è stato chiuso durante l'apertura
+            connection.close();
+            throw new IOException("Pool chiuso");
+        }
+        return connection;
+    }
+
+    private Pooled apri() throws IOException {
+        Pooled pooled = new Pooled(endpoints.apri().getConnection());
+        connessioni.add(pooled);
+        return pooled;
+    }
+
+    private synchronized void chiudiInattive() {
+        long limite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        Iterator<Pooled> iterator = connessioni.iterator();
+        while (iterator.hasNext() && connessioni.size() > warmup) {
+            Pooled pooled = iterator.next();
+            if (pooled.connection.isClosed() || (pooled.ultimoUso < limite && pooled.connection.inCorso() == 0)) {
+                pooled.connection.close();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return numero di connessioni attualmente aperte
+     */
+    public synchronized int getAperte() {
+        return connessioni.size();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Chiude tutte le connessioni; le richieste in attesa falliscono
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (pulizia != null) pulizia.shutdownNow();
+        for (Pooled pooled : connessioni) pooled.connection.close();
+        connessioni.clear();
+        notifyAll();
+    }
+
+    /**
+     * Connessione del pool con l'istante dell'ultimo utilizzo
+     */
+    private static class Pooled {
+        private final Connection connection;
+        private long ultimoUso;
+
+        private Pooled(Connection connection) {
+            this.connection = connection;
+            this.ultimoUso = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package code.net;
+
+/**
+ * Server HOTELIER a cui connettersi, con lo stato misurato dalle sonde: raggiungibilità e latenza di connessione
+ * (media mobile esponenziale dei tempi di apertura del socket, cioè un round-trip di rete).
+ */
+public class Endpoint {
+    // peso dell'ultima misura nella media mobile
+    private static final double ALFA = 0.3;
+
+    private final String hostName;
+    private final int port;
+
+    private volatile boolean sano;
+
+    // latenza media in nanosecondi, 0 se non ancora misurata
+    private volatile long latenza;
+
+    private volatile int fallimentiConsecutivi;
+
+    public Endpoint(String hostName, int port) {
+        this.hostName = hostName;
+        this.port = port;
+        // finché non viene sondato si assume raggiungibile
+        this.sano = true;
+    }
+
+    /**
+     * @param endpoint indirizzo nella forma host:porta
+     * @param portaDefault porta usata se nell'indirizzo non è indicata
+     * @return l'endpoint
+     * @throws IllegalArgumentException se la porta non è un intero
+     */
+    public static Endpoint parse(String endpoint, int portaDefault) {
+        String valore = endpoint.trim();
+        int separatore = valore.lastIndexOf(':');
+        if (separatore < 0) return new Endpoint(valore, portaDefault);
+        try {
+            return new Endpoint(valore.substring(0, separatore), Integer.parseInt(valore.substring(separatore + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Porta non valida nell'endpoint " + endpoint);
+        }
+    }
+
+    /**
+     * Registra una connessione riuscita
+     * @param nanos tempo impiegato per aprire il socket
+     */
+    synchronized void registraSuccesso(long nanos) {
+        latenza = latenza == 0 ? nanos : (long) (ALFA * nanos + (1 - ALFA) * latenza);
+        fallimentiConsecutivi = 0;
+        sano = true;
+    }
+
+    /**
+     * Registra una connessione riuscita senza misurarne la latenza
+     */
+    synchronized void registraRaggiungibile() {
+        fallimentiConsecutivi = 0;
+        sano = true;
+    }
+
+    /**
+     * Registra una connessione fallita: l'endpoint non viene più scelto finché una sonda non lo raggiunge
+     */
+    synchronized void registraFallimento() {
+        fallimentiConsecutivi++;
+        sano = false;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isSano() {
+        return sano;
+    }
+
+    /**
+     * @return latenza media di connessione in millisecondi, 0 se non ancora misurata
+     */
+    public double getLatenzaMs() {
+        return latenza / 1e6;
+    }
+
+    long getLatenza() {
+        return latenza;
+    }
+
+    public int getFallimentiConsecutivi() {
+        return fallimentiConsecutivi;
+    }
+
+    @Override
+    public String toString() {
+        return hostName + ":" + port;
+    }
+}
@@ -0,0 +1,176 @@
+package code.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sceglie il server a cui connettersi tra più endpoint.<br>
+ * Con più endpoint, una sonda in background apre periodicamente un socket verso ognuno, misurando la latenza di
+ * connessione TCP (non il tempo di risposta alle richieste) e segnando come non raggiungibili quelli che non
+ * rispondono. Ogni sonda apre e chiude una connessione sul server, quindi è disabilitata di default. Le nuove connessioni vanno all'endpoint raggiungibile più
+ * veloce; se la connessione fallisce si prova il successivo. Fornisce anche l'attesa con jitter tra i tentativi di
+ * riconnessione, così che molti client non si riconnettano tutti nello stesso istante dopo un riavvio del server.
+ */
+public class EndpointSelector implements AutoCloseable {
+    // timeout di connessione delle sonde, in millisecondi
+    private static final int TIMEOUT_SONDA = 1000;
+
+    private final List<Endpoint> endpoints;
+
+    // millisecondi tra una sonda e l'altra (0 = nessuna sonda in background)
+    private final long intervalloSonda;
+
+    // attesa minima e massima tra i tentativi di riconnessione, in millisecondi
+    private final long attesaMin;
+    private final long attesaMax;
+
+    private ScheduledExecutorService sonda;
+
+    /**
+     * @param endpoints server tra cui scegliere, in ordine di preferenza a parità di latenza
+     * @param intervalloSonda millisecondi tra una sonda e l'altra, 0 per non sondare in background
+     * @param attesaMin attesa prima del primo tentativo di riconnessione, in millisecondi
+     * @param attesaMax attesa massima tra i tentativi di riconnessione, in millisecondi
+     */
+    public EndpointSelector(List<Endpoint> endpoints, long intervalloSonda, long attesaMin, long attesaMax) {
+        if (endpoints.isEmpty()) throw new IllegalArgumentException("Serve almeno un endpoint");
+        this.endpoints = new ArrayList<>(endpoints);
+        this.intervalloSonda = intervalloSonda;
+        this.attesaMin = Math.max(1, attesaMin);
+        this.attesaMax = Math.max(this.attesaMin, attesaMax);
+    }
+
+    /**
+     * Endpoint singolo, senza sonde in background
+     */
+    public EndpointSelector(String hostName, int port) {
+        this(Collections.singletonList(new Endpoint(hostName, port)), 0, 100, 5000);
+    }
+
+    /**
+     * Sonda subito tutti gli endpoint e avvia le sonde periodiche. Con un solo endpoint non c'è niente da scegliere e
+     * le sonde non vengono avviate
+     */
+    public synchronized void start() {
+        if (intervalloSonda <= 0 || endpoints.size() < 2 || sonda != null) return;
+        sonda = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hotelier-endpoint-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sonda.scheduleWithFixedDelay(this::sonda, 0, intervalloSonda, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Apre e chiude un socket verso ogni endpoint e ne aggiorna lo stato, con la latenza di connessione
+     */
+    public void sonda() {
+        for (Endpoint endpoint : endpoints) {
+            long inizio = System.nanoTime();
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(endpoint.getHostName(), endpoint.getPort()), TIMEOUT_SONDA);
+                endpoint.registraSuccesso(System.nanoTime() - inizio);
+            } catch (IOException e) {
+                endpoint.registraFallimento();
+            }
+        }
+    }
+
+    /**
+     * @return gli endpoint in ordine di preferenza: prima quelli raggiungibili, dal più veloce
+     */
+    public List<Endpoint> ordinati() {
+        List<Endpoint> ordinati = new ArrayList<>(endpoints);
+        // ordinamento stabile: a parità di stato resta l'ordine della configurazione
+        ordinati.sort((a, b) -> {
+            if (a.isSano() != b.isSano()) return a.isSano() ? -1 : 1;
+            return Long.compare(a.getLatenza(), b.getLatenza());
+        });
+        return ordinati;
+    }
+
+    /**
+     * Apre una connessione verso l'endpoint migliore, provando i successivi se non è raggiungibile
+     * @return la connessione aperta e l'endpoint usato
+     * @throws IOException se nessun endpoint è raggiungibile (con l'errore dell'ultimo tentativo)
+     */
+    public Aperta apri() throws IOException {
+        IOException errore = null;
+        for (Endpoint endpoint : ordinati()) {
+            try {
+                Connection connection = Connection.open(endpoint.getHostName(), endpoint.getPort());
+                // la latenza la misurano solo le sonde: l'apertura comprende anche la negoziazione del protocollo
+                endpoint.registraRaggiungibile();
+                return new Aperta(endpoint, connection);
+            } catch (IOException e) {
+                endpoint.registraFallimento();
+                errore = e;
+            }
+        }
+        throw errore;
+    }
+
+    /**
+     * Backoff esponenziale con jitter: un valore casuale tra metà e tutta l'attesa del tentativo
+     * @param tentativo numero di tentativi già falliti
+     * @return millisecondi da attendere prima del prossimo tentativo di riconnessione
+     */
+    public long attesa(int tentativo) {
+        long attesa = attesaMin << Math.min(tentativo, 20);
+        if (attesa <= 0 || attesa > attesaMax) attesa = attesaMax;
+        return attesa / 2 + ThreadLocalRandom.current().nextLong(attesa / 2 + 1);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (sonda != null) {
+            sonda.shutdownNow();
+            sonda = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Endpoint endpoint : ordinati()) {
+            if (builder.length() > 0) builder.append(", ");
+            builder.append(endpoint).append(endpoint.isSano() ? "" : " (non raggiungibile)")
+                    .append(String.format(Locale.ROOT, " %.2f ms", endpoint.getLatenzaMs()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Connessione aperta con l'endpoint scelto
+     */
+    public static class Aperta {
+        private final Endpoint endpoint;
+        private final Connection connection;
+
+        private Aperta(Endpoint endpoint, Connection connection) {
+            this.endpoint = endpoint;
+            this.connection = connection;
+        }
+
+        public Endpoint getEndpoint() {
+            return endpoint;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package code.net;
+
+import code.entities.Response;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.net.Socket;
+import java.util.Scanner;
+
+/**
+ * Trasporto originale del client, basato su {@link Scanner} e {@link PrintWriter}
+ */
+public class LineTransport implements Transport {
+    // risorsa da chiudere alla chiusura del trasporto (il socket)
+    private final Closeable socket;
+
+    // per leggere i messaggi inviati dal server
+    private final Scanner in;
+
+    // per scrivere messaggi al server
+    private final PrintWriter out;
+
+    public LineTransport(Socket socket) throws IOException {
+        this(socket.getInputStream(), socket.getOutputStream(), socket);
+    }
+
+    LineTransport(InputStream input, OutputStream output, Closeable socket) {
+        this.socket = socket;
+        this.in = new Scanner(input);
+        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output)), false);
+    }
+
+    @Override
+    public void write(String request) {
+        out.println(request);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        // PrintWriter non lancia eccezioni: se la scrittura è fallita la connessione non è più utilizzabile
+        if (out.checkError()) throw new IOException("Errore di scrittura sul socket");
+    }
+
+    @Override
+    public Response read() {
+        String response = leggiRisposta();
+        return response == null ? null : toResponseObject(response);
+    }
+
+    @Override
+    public Response read(BodyHandler handler) throws IOException {
+        if (!in.hasNextLine()) return null;
+        String statusLine = in.nextLine();
+        Reader body = new BodyReader();
+
+        int status;
+        String descrizione;
+        try {
+            Scanner scanner = new Scanner(statusLine);
+            status = scanner.nextInt();
+            descrizione = scanner.hasNextLine() ? scanner.nextLine().trim() : "";
+        } catch (RuntimeException e) {
+            // riga di stato non valida: scarto la risposta e faccio fallire solo questa richiesta
+            BodyHandler.testo(body);
+            throw e;
+        }
+
+        return StreamingBody.leggi(status, descrizione, body, handler);
+    }
+
+    @Override
+    public boolean attendi() {
+        return in.hasNextLine();
+    }
+
+    /**
+     * Legge una risposta dal server, che termina appena viene trovata una riga vuota
+     * @return una stringa rappresentante la risposta del server, o null se la connessione è stata chiusa
+     */
+    private String leggiRisposta() {
+        StringBuilder bodyBuilder = new StringBuilder();
+        while (in.hasNextLine()) {
+            String line = in.nextLine();
+            if (line.isEmpty()) return bodyBuilder.toString();
+            bodyBuilder.append(line).append("\n");
+        }
+        return null;
+    }
+
+    /**
+     * Permette di prendere la risposta del server e trasformarla in un oggetto che distingue le diverse parti<br>
+     * Contiene lo status code, la descrizione associata allo status code, e il body
+     * @param response la risposta del server
+     * @return risposta del server come entità Response
+     * @see Response
+     */
+    public static Response toResponseObject(String response) {
+        Scanner scanner = new Scanner(response);
+        Integer status = scanner.nextInt();
+        String descrizione = scanner.nextLine().trim();
+
+        StringBuilder bodyBuilder = new StringBuilder();
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine();
+            if (line.isEmpty()) break;
+            bodyBuilder.append(line).append("\n");
+        }
+
+        return new Response(status, descrizione, bodyBuilder.toString());
+    }
+
+    /**
+     * Body della risposta corrente, letto una riga alla volta dallo Scanner fino alla riga vuota
+     */
+    private class BodyReader extends Reader {
+        private String line;
+        private int pos;
+        private boolean finito;
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (finito) return -1;
+            if (len == 0) return 0;
+            if (line == null) {
+                if (!in.hasNextLine()) throw new EOFException("Connessione chiusa durante la risposta");
+                String next = in.nextLine();
+                if (next.isEmpty()) {
+                    finito = true;
+                    return -1;
+                }
+                line = next + "\n";
+                pos = 0;
+            }
+
+            int n = Math.min(len, line.length() - pos);
+            line.getChars(pos, pos + n, cbuf, off);
+            pos += n;
+            if (pos == line.length()) line = null;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,40 @@
+package code.net;
+
+import code.entities.Response;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * Logica comune ai trasporti per la lettura in streaming del body
+ */
+final class StreamingBody {
+
+    private StreamingBody() {}
+
+    /**
+     * Passa il body al gestore e poi scarta la parte non consumata, così che la prossima risposta parta dal punto
+     * giusto. Gli errori del gestore fanno fallire solo questa risposta, non la connessione
+     * @throws IOException solo per errori di lettura dal socket
+     */
+    static Response leggi(int status, String descrizione, Reader body, BodyHandler handler) throws IOException {
+        String testo = "";
+        RuntimeException errore = null;
+        try {
+            testo = handler.handle(status, body);
+        } catch (RuntimeException e) {
+            errore = e;
+        } catch (IOException e) {
+            errore = new UncheckedIOException(e);
+        }
+
+        char[] scarto = new char[1024];
+        while (body.read(scarto) >= 0) {
+            // scarto il resto del body
+        }
+
+        if (errore != null) throw errore;
+        return new Response(status, descrizione, testo);
+    }
+}
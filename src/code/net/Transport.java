@@ -0,0 +1,51 @@
+package code.net;
+
+import code.entities.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Trasporto del protocollo testuale di HOTELIER: le richieste sono righe di testo terminate da una riga vuota, le
+ * risposte sono composte da una riga di stato, dal body e da una riga vuota di terminazione.<br>
+ * Le scritture avvengono sempre da un solo thread alla volta (sotto la lock della {@link Connection}), le letture
+ * solo dal thread lettore; le due operazioni possono avvenire in contemporanea.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Accoda una richiesta da inviare al server, senza necessariamente scriverla sul socket
+     * @param request richiesta da mandare
+     * @throws IOException in caso di errore di scrittura
+     */
+    void write(String request) throws IOException;
+
+    /**
+     * Scrive sul socket tutte le richieste accodate
+     * @throws IOException in caso di errore di scrittura
+     */
+    void flush() throws IOException;
+
+    /**
+     * Legge la prossima risposta del server, bloccandosi finché non è arrivata per intero
+     * @return la risposta, o null se il server ha chiuso la connessione
+     * @throws IOException in caso di errore di lettura
+     */
+    Response read() throws IOException;
+
+    /**
+     * Legge la prossima risposta del server passando il body al gestore man mano che arriva, senza accumularlo
+     * @param handler gestore del body
+     * @return la risposta, con il body restituito dal gestore, o null se il server ha chiuso la connessione
+     * @throws IOException in caso di errore di lettura
+     */
+    Response read(BodyHandler handler) throws IOException;
+
+    /**
+     * Attende che arrivi qualcosa dal server, senza consumarlo: permette al thread lettore di accorgersi che il server
+     * ha chiuso la connessione anche quando non ci sono richieste in attesa di risposta
+     * @return false se il server ha chiuso la connessione
+     * @throws IOException in caso di errore di lettura
+     */
+    boolean attendi() throws IOException;
+}
@@ -0,0 +1,219 @@
+package code.ranking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indice locale dei ranking degli hotel, per città.<br>
+ * Ogni ricerca searchAllHotels andata a buon fine sostituisce la classifica della città (gli hotel arrivano dal server
+ * in ordine di ranking); ogni notifica multicast di cambio del primo posto sposta il nuovo leader in testa.<br>
+ * Le classifiche sono immutabili e vengono sostituite per intero, quindi le letture non usano lock: la prima
+ * posizione e la posizione di un hotel costano O(1), i primi N hotel O(N), i leader di tutte le città O(C log C).
+ * Come per la cache, una ricerca inviata prima di una notifica sulla stessa città non sovrascrive la classifica
+ * aggiornata da questa.
+ */
+public class RankingIndex {
+    private final ConcurrentHashMap<String, Classifica> classifiche;
+
+    private final AtomicLong ricerche;
+    private final AtomicLong notifiche;
+
+    public RankingIndex() {
+        this.classifiche = new ConcurrentHashMap<>();
+        this.ricerche = new AtomicLong();
+        this.notifiche = new AtomicLong();
+    }
+
+    /**
+     * @param citta città da cercare
+     * @return la versione della classifica (numero di notifiche ricevute per la città), da leggere prima di inviare
+     * la ricerca il cui risultato verrà indicizzato
+     */
+    public long getVersione(String citta) {
+        Classifica classifica = classifiche.get(citta);
+        return classifica == null ? 0 : classifica.versione;
+    }
+
+    /**
+     * Sostituisce la classifica di una città con il risultato di una ricerca
+     * @param citta città cercata
+     * @param hotel nomi degli hotel, in ordine di ranking
+     * @param versione versione letta prima di inviare la ricerca (vedi {@link #getVersione(String)})
+     * @return true se la classifica è stata aggiornata, false se nel frattempo è arrivata una notifica per la città
+     */
+    public boolean aggiorna(String citta, List<String> hotel, long versione) {
+        List<String> copia = new ArrayList<>(hotel);
+        boolean[] aggiornata = {false};
+        classifiche.compute(citta, (c, attuale) -> {
+            // il controllo della versione avviene sotto la lock della voce, come le notifiche
+            if (attuale != null && attuale.versione != versione) return attuale;
+            aggiornata[0] = true;
+            return new Classifica(citta, copia, true, versione);
+        });
+        if (aggiornata[0]) ricerche.incrementAndGet();
+        return aggiornata[0];
+    }
+
+    /**
+     * Porta in prima posizione l'hotel notificato dal server, facendo scendere di una posizione quelli che lo
+     * precedevano. Se la città non è ancora stata cercata, la sua classifica contiene solo il leader
+     * @param citta città il cui primo posto è cambiato
+     * @param nomeHotel nuovo primo classificato
+     */
+    public void aggiornaPrimo(String citta, String nomeHotel) {
+        classifiche.compute(citta, (c, attuale) -> {
+            if (attuale == null) return new Classifica(citta, Collections.singletonList(nomeHotel), false, 1);
+            return attuale.conPrimo(nomeHotel);
+        });
+        notifiche.incrementAndGet();
+    }
+
+    /**
+     * @return la classifica della città, o null se non è mai stata cercata né notificata
+     */
+    public Classifica getClassifica(String citta) {
+        return classifiche.get(citta);
+    }
+
+    /**
+     * @param citta città
+     * @param n numero massimo di hotel
+     * @return i primi n hotel della città in ordine di ranking (vuota se la città non è indicizzata)
+     */
+    public List<String> primi(String citta, int n) {
+        Classifica classifica = classifiche.get(citta);
+        return classifica == null ? Collections.emptyList() : classifica.primi(n);
+    }
+
+    /**
+     * @return la posizione dell'hotel nella classifica della città (1 = primo), o -1 se non è indicizzato
+     */
+    public int posizione(String citta, String nomeHotel) {
+        Classifica classifica = classifiche.get(citta);
+        return classifica == null ? -1 : classifica.posizione(nomeHotel);
+    }
+
+    /**
+     * @return il primo classificato di ogni città indicizzata, in ordine di città
+     */
+    public Map<String, String> leader() {
+        Map<String, String> leader = new TreeMap<>();
+        for (Classifica classifica : classifiche.values()) leader.put(classifica.citta, classifica.primo());
+        return leader;
+    }
+
+    /**
+     * @return numero di città indicizzate
+     */
+    public int getCitta() {
+        return classifiche.size();
+    }
+
+    /**
+     * Elimina tutte le classifiche
+     */
+    public void svuota() {
+        classifiche.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ranking locale: " + getCitta() + " città, " + ricerche.get() + " ricerche indicizzate, " +
+                notifiche.get() + " notifiche applicate";
+    }
+
+    /**
+     * Classifica immutabile degli hotel di una città
+     */
+    public static class Classifica {
+        private final String citta;
+
+        // nomi degli hotel in ordine di ranking
+        private final List<String> hotel;
+
+        // posizione (da 0) di ogni hotel nella lista
+        private final Map<String, Integer> posizioni;
+
+        // false se la città non è mai stata cercata: è noto solo il leader
+        private final boolean completa;
+
+        // istante dell'ultimo aggiornamento (System.currentTimeMillis)
+        private final long aggiornata;
+
+        // notifiche applicate alla città
+        private final long versione;
+
+        private Classifica(String citta, List<String> hotel, boolean completa, long versione) {
+            this.citta = citta;
+            this.hotel = Collections.unmodifiableList(hotel);
+            this.posizioni = new HashMap<>(hotel.size() * 2);
+            // in caso di nomi ripetuti vale la posizione migliore
+            for (int i = hotel.size() - 1; i >= 0; i--) posizioni.put(hotel.get(i), i);
+            this.completa = completa;
+            this.aggiornata = System.currentTimeMillis();
+            this.versione = versione;
+        }
+
+        private Classifica conPrimo(String nomeHotel) {
+            List<String> nuova = new ArrayList<>(hotel.size() + 1);
+            nuova.add(nomeHotel);
+            for (String h : hotel) {
+                if (!h.equals(nomeHotel)) nuova.add(h);
+            }
+            return new Classifica(citta, nuova, completa, versione + 1);
+        }
+
+        public String getCitta() {
+            return citta;
+        }
+
+        /**
+         * @return il primo classificato, o null se la classifica è vuota
+         */
+        public String primo() {
+            return hotel.isEmpty() ? null : hotel.get(0);
+        }
+
+        /**
+         * @return i primi n hotel in ordine di ranking
+         */
+        public List<String> primi(int n) {
+            return hotel.subList(0, Math.min(Math.max(n, 0), hotel.size()));
+        }
+
+        /**
+         * @return la posizione dell'hotel (1 = primo), o -1 se non è in classifica
+         */
+        public int posizione(String nomeHotel) {
+            Integer posizione = posizioni.get(nomeHotel);
+            return posizione == null ? -1 : posizione + 1;
+        }
+
+        /**
+         * @return numero di hotel in classifica
+         */
+        public int getSize() {
+            return hotel.size();
+        }
+
+        /**
+         * @return false se la città è nota solo da una notifica (c'è soltanto il leader)
+         */
+        public boolean isCompleta() {
+            return completa;
+        }
+
+        /**
+         * @return istante dell'ultimo aggiornamento, in millisecondi
+         */
+        public long getAggiornata() {
+            return aggiornata;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package code.startup;
+
+import code.HotelierClient;
+import code.cache.SearchCache;
+import code.entities.Hotel;
+import code.entities.Response;
+import code.fakeserver.FakeServer;
+import code.fakeserver.FakeServerConfig;
+import code.metrics.ClientMetrics;
+import code.multicast.NotificationHistory;
+import code.net.EndpointSelector;
+import code.ranking.RankingIndex;
+import code.utils.AppConfig;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Esecuzione di addestramento per l'archivio AppCDS del client (vedi il profilo Maven <code>cds</code>).<br>
+ * Avvia nel processo un server finto e ripete il percorso di una sessione interattiva: connessione, registrazione,
+ * login, ricerche, recensione, badge e logout, con la stampa formattata delle risposte. Eseguita con
+ * <code>-XX:ArchiveClassesAtExit</code>, la JVM salva nell'archivio tutte le classi caricate, che agli avvii
+ * successivi con <code>-XX:SharedArchiveFile</code> non vanno più lette dal JAR e verificate.
+ */
+public class TrainingRun {
+    private static final String USERNAME = "training";
+    private static final String PASSWORD = "training";
+
+    public static void main(String[] args) throws Exception {
+        long inizio = System.nanoTime();
+        FakeServer server = new FakeServer(FakeServerConfig.fromArgs("port=0", "hotels=5"));
+        int porta = server.start();
+
+        // stesse classi dell'avvio interattivo: endpoint, cache, classifiche e lettura da tastiera
+        EndpointSelector endpoints = new EndpointSelector(server.getHostName(), porta);
+        endpoints.start();
+        new Scanner("0\n").nextLine();
+        Gson stampa = new GsonBuilder().setPrettyPrinting().create();
+
+        try (HotelierClient client = new HotelierClient(server.getHostName(), porta)) {
+            client.setEndpoints(endpoints);
+            if (AppConfig.getCacheSize() > 0) {
+                client.setCache(new SearchCache(AppConfig.getCacheSize(), AppConfig.getCacheTtl()));
+            }
+            client.setRanking(new RankingIndex());
+            if (AppConfig.getNotificationHistory() > 0) {
+                client.getNotifiche().setStorico(new NotificationHistory(AppConfig.getNotificationHistory()));
+            }
+            client.connect();
+            System.out.println("Connected to " + client.getHostName() + ":" + client.getPort());
+
+            client.register(USERNAME, PASSWORD).join().printResponseFormat();
+            client.login(USERNAME, PASSWORD).join().printResponseFormat();
+
+            String citta = FakeServerConfig.fromArgs().getCitta().get(0);
+            List<Hotel> hotel = client.searchAllHotels(citta).join().getHotels();
+            client.searchAllHotels(citta, h -> stampa.toJson(h)).join();
+            stampa.toJson(client.unisciHotel(client.searchAllHotels(Arrays.asList(citta)).join()));
+            if (!hotel.isEmpty()) {
+                String nome = hotel.get(0).getName();
+                client.searchHotel(nome, citta).join().printResponseFormat();
+                client.insertReview(nome, citta, 4, 4, 3, 5, 4).join().printResponseFormat();
+            }
+            Response badge = client.showMyBadges().join();
+            badge.getBadges();
+            badge.printResponseFormat();
+            client.getRanking().leader();
+            if (client.getNotifiche().getStorico() != null) client.getNotifiche().getStorico().cambi(null, 0);
+            client.logout().join().printResponseFormat();
+
+            if (AppConfig.isMetricsJmx()) ClientMetrics.getDefault().registraJmx();
+            ClientMetrics.getDefault().toString();
+        } finally {
+            server.close();
+        }
+        System.out.println("Addestramento completato in " + (System.nanoTime() - inizio) / 1_000_000 + " ms");
+    }
+}
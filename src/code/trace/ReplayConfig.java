@@ -0,0 +1,76 @@
+package code.trace;
+
+import code.utils.AppConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parametri del replay di un trace. Ogni parametro viene letto dalla proprietà replay.&lt;nome&gt; di
+ * application.properties, e può essere sovrascritto da riga di comando con un argomento nella forma nome=valore
+ */
+public class ReplayConfig {
+    private final Map<String, String> overrides;
+
+    private ReplayConfig(Map<String, String> overrides) {
+        this.overrides = overrides;
+    }
+
+    /**
+     * Costruisce la configurazione a partire dagli argomenti passati al programma
+     * @param args argomenti nella forma nome=valore
+     * @return la configurazione
+     * @throws IllegalArgumentException se un argomento non è nella forma corretta
+     */
+    public static ReplayConfig fromArgs(String[] args) {
+        Map<String, String> overrides = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Argomento non valido: " + arg + " (atteso nome=valore)");
+            overrides.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+        return new ReplayConfig(overrides);
+    }
+
+    private String get(String nome, String defaultValue) {
+        String value = overrides.get(nome);
+        return value != null ? value : AppConfig.getProperty("replay." + nome, defaultValue);
+    }
+
+    /**
+     * @return file di trace da riprodurre
+     */
+    public String getFile() {
+        String file = get("file", "");
+        if (file.isEmpty()) throw new IllegalArgumentException("Parametro obbligatorio mancante: file");
+        return file;
+    }
+
+    /**
+     * @return fattore di velocità rispetto al trace (1 = tempi originali, 2 = il doppio più veloce), 0 per la velocità
+     * massima: ogni connessione invia la richiesta successiva appena riceve la risposta alla precedente
+     * @throws IllegalArgumentException se il valore non è un numero positivo o "max"
+     */
+    public double getVelocita() {
+        String value = get("speed", "1");
+        if (value.equalsIgnoreCase("max")) return 0;
+        double velocita = Double.parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+        if (!(velocita > 0)) throw new IllegalArgumentException("Velocità non valida: " + value);
+        return velocita;
+    }
+
+    /**
+     * @return quante volte riprodurre in parallelo ogni connessione del trace, per moltiplicare il carico
+     */
+    public int getCopie() {
+        return Math.max(1, Integer.parseInt(get("copies", "1")));
+    }
+
+    /**
+     * @return password da inviare nelle richieste login e register al posto di quella oscurata nel trace, vuota per
+     * inviarle come registrate
+     */
+    public String getPassword() {
+        return get("password", "");
+    }
+}
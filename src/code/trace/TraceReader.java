@@ -0,0 +1,173 @@
+package code.trace;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lettura sequenziale di un file di trace scritto da {@link TraceRecorder}.<br>
+ * Un record incompleto in fondo al file (processo terminato durante la scrittura) viene ignorato, come la fine del file.
+ */
+public class TraceReader implements Closeable {
+    private final DataInputStream in;
+
+    private final long avvio;
+
+    private boolean troncato;
+
+    /**
+     * @param file file di trace
+     * @throws IOException se il file non esiste o non è un trace in un formato supportato
+     */
+    public TraceReader(String file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != TraceRecorder.MAGIC) throw new IOException(file + " non è un file di trace");
+            int versione = in.readUnsignedByte();
+            if (versione != TraceRecorder.VERSIONE) throw new IOException("Versione del trace non supportata: " + versione);
+            this.avvio = in.readLong();
+        } catch (IOException e) {
+            in.close();
+            throw e instanceof EOFException ? new IOException(file + " non è un file di trace") : e;
+        }
+    }
+
+    /**
+     * @return il prossimo record, o null alla fine del trace
+     * @throws IOException se il file non può essere letto o contiene un record di tipo sconosciuto
+     */
+    public Record leggi() throws IOException {
+        int tipo = in.read();
+        if (tipo < 0) return null;
+        try {
+            Record record = new Record(tipo, leggiVarint());
+            switch (tipo) {
+                case TraceRecorder.RICHIESTA:
+                    record.connessione = (int) leggiVarint();
+                    record.latenza = leggiVarint();
+                    record.status = (int) leggiVarint();
+                    record.byteInviati = leggiVarint();
+                    record.byteRicevuti = leggiVarint();
+                    record.richiesta = new String(leggiBytes(), StandardCharsets.UTF_8);
+                    break;
+                case TraceRecorder.NOTIFICA:
+                    record.datagramma = leggiBytes();
+                    break;
+                default:
+                    throw new IOException("Record di tipo sconosciuto: " + tipo);
+            }
+            return record;
+        } catch (EOFException e) {
+            troncato = true;
+            return null;
+        }
+    }
+
+    /**
+     * @return istante di avvio della registrazione, in millisecondi
+     */
+    public long getAvvio() {
+        return avvio;
+    }
+
+    /**
+     * @return true se il trace termina con un record incompleto
+     */
+    public boolean isTroncato() {
+        return troncato;
+    }
+
+    private byte[] leggiBytes() throws IOException {
+        long lunghezza = leggiVarint();
+        if (lunghezza > Integer.MAX_VALUE) throw new IOException("Record troppo grande: " + lunghezza);
+        byte[] data = new byte[(int) lunghezza];
+        in.readFully(data);
+        return data;
+    }
+
+    private long leggiVarint() throws IOException {
+        long valore = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            valore |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return valore;
+        }
+        throw new IOException("Varint non valido");
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Evento registrato nel trace: una richiesta con la sua risposta o una notifica multicast
+     */
+    public static class Record {
+        private final int tipo;
+        private final long tempo;
+        private int connessione;
+        private long latenza;
+        private int status;
+        private long byteInviati;
+        private long byteRicevuti;
+        private String richiesta;
+        private byte[] datagramma;
+
+        private Record(int tipo, long tempo) {
+            this.tipo = tipo;
+            this.tempo = tempo;
+        }
+
+        public boolean isRichiesta() {
+            return tipo == TraceRecorder.RICHIESTA;
+        }
+
+        /**
+         * @return istante di invio della richiesta o di ricezione della notifica, in nanosecondi dall'avvio della
+         * registrazione
+         */
+        public long getTempo() {
+            return tempo;
+        }
+
+        public int getConnessione() {
+            return connessione;
+        }
+
+        /**
+         * @return latenza della richiesta in nanosecondi
+         */
+        public long getLatenza() {
+            return latenza;
+        }
+
+        /**
+         * @return status della risposta, 0 se la richiesta è fallita
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        public long getByteInviati() {
+            return byteInviati;
+        }
+
+        public long getByteRicevuti() {
+            return byteRicevuti;
+        }
+
+        /**
+         * @return testo della richiesta, null per le notifiche
+         */
+        public String getRichiesta() {
+            return richiesta;
+        }
+
+        /**
+         * @return contenuto del datagramma, null per le richieste
+         */
+        public byte[] getDatagramma() {
+            return datagramma;
+        }
+    }
+}
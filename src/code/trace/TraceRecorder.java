@@ -0,0 +1,200 @@
+package code.trace;
+
+import code.json.JsonCodec;
+import code.metrics.ClientMetrics;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Registra il traffico del client in un file di trace binario compatto: ogni richiesta con la risposta (status, byte
+ * inviati e ricevuti, istante di invio e latenza in nanosecondi) e ogni notifica multicast ricevuta.<br>
+ * Il registratore è unico per il processo, come le metriche: una volta avviato registra tutte le connessioni.<br>
+ * Formato: intestazione <code>HTRC</code>, versione (1 byte) e istante di avvio in millisecondi (8 byte), poi un record
+ * per evento. I numeri sono varint (7 bit per byte, il bit alto indica che il numero continua) e i tempi sono
+ * nanosecondi dall'avvio del registratore:
+ * <ul>
+ *     <li>richiesta: tipo 1, istante di invio, connessione, latenza, status (0 se la richiesta è fallita), byte
+ *     inviati, byte ricevuti, lunghezza e testo UTF-8 della richiesta</li>
+ *     <li>notifica: tipo 2, istante di ricezione, lunghezza e contenuto del datagramma</li>
+ * </ul>
+ * I record vengono scritti al completamento della richiesta, quindi sono in ordine di invio solo all'interno della
+ * stessa connessione.<br>
+ * Nelle richieste login e register la password viene sostituita da {@value #PASSWORD_OSCURATA}: il trace contiene
+ * comunque i nomi utente e il contenuto delle altre richieste (ad esempio le recensioni).
+ */
+public class TraceRecorder implements AutoCloseable {
+    static final int MAGIC = 0x48545243;
+    static final int VERSIONE = 1;
+
+    static final int RICHIESTA = 1;
+    static final int NOTIFICA = 2;
+
+    // valore scritto nel trace al posto della password di login e register
+    static final String PASSWORD_OSCURATA = "***";
+
+    private static final AtomicReference<TraceRecorder> attivo = new AtomicReference<>();
+
+    private final OutputStream out;
+
+    // istante di avvio (System.nanoTime), origine dei tempi dei record
+    private final long inizio;
+
+    private long record;
+
+    private boolean chiuso;
+
+    private TraceRecorder(OutputStream out) throws IOException {
+        this.out = out;
+        this.inizio = System.nanoTime();
+        scriviInt(MAGIC);
+        out.write(VERSIONE);
+        long avvio = System.currentTimeMillis();
+        scriviInt((int) (avvio >>> 32));
+        scriviInt((int) avvio);
+    }
+
+    /**
+     * Avvia la registrazione del traffico di tutto il processo, sostituendo quella eventualmente in corso
+     * @param file file di trace, sovrascritto se esiste
+     * @return il registratore avviato
+     * @throws IOException se il file non può essere creato
+     */
+    public static TraceRecorder avvia(String file) throws IOException {
+        TraceRecorder recorder = new TraceRecorder(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        TraceRecorder precedente = attivo.getAndSet(recorder);
+        if (precedente != null) precedente.close();
+        return recorder;
+    }
+
+    /**
+     * @return il registratore in uso, o null se il traffico non viene registrato
+     */
+    public static TraceRecorder getAttivo() {
+        return attivo.get();
+    }
+
+    /**
+     * Registra una richiesta completata
+     * @param connessione identificativo della connessione su cui è stata inviata
+     * @param inviata istante di invio (System.nanoTime)
+     * @param latenza nanosecondi tra l'invio e la risposta (o il fallimento)
+     * @param status status della risposta, 0 se la richiesta è fallita
+     * @param byteInviati byte della richiesta
+     * @param byteRicevuti byte del body della risposta
+     * @param richiesta testo della richiesta
+     */
+    public void registraRichiesta(int connessione, long inviata, long latenza, int status, long byteInviati,
+                                  long byteRicevuti, String richiesta) {
+        byte[] testo = conPassword(richiesta, PASSWORD_OSCURATA).getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (chiuso) return;
+            try {
+                out.write(RICHIESTA);
+                scriviVarint(Math.max(0, inviata - inizio));
+                scriviVarint(connessione);
+                scriviVarint(Math.max(0, latenza));
+                scriviVarint(status);
+                scriviVarint(byteInviati);
+                scriviVarint(byteRicevuti);
+                scriviVarint(testo.length);
+                out.write(testo);
+                record++;
+            } catch (IOException e) {
+                interrompi(e);
+            }
+        }
+    }
+
+    /**
+     * Sostituisce la password nel body di una richiesta login o register
+     * @param richiesta testo della richiesta
+     * @param password password da scrivere al posto di quella della richiesta
+     * @return la richiesta con la password sostituita, la richiesta invariata se non è un login o un register (o se
+     * non contiene una password), il solo comando se il body non è un oggetto json valido
+     */
+    static String conPassword(String richiesta, String password) {
+        String comando = ClientMetrics.comando(richiesta);
+        if (!comando.equals("login") && !comando.equals("register")) return richiesta;
+        if (richiesta.length() <= comando.length() + 1) return richiesta;
+        try {
+            JsonObject json = JsonParser.parseString(richiesta.substring(comando.length() + 1)).getAsJsonObject();
+            if (!json.has("password")) return richiesta;
+            json.addProperty("password", password);
+            return comando + "\n" + JsonCodec.gson().toJson(json) + "\n";
+        } catch (JsonParseException | IllegalStateException e) {
+            // body illeggibile: meglio perderlo che registrare una password in chiaro
+            return comando + "\n";
+        }
+    }
+
+    /**
+     * Registra una notifica multicast ricevuta
+     * @param ricevuta istante di ricezione (System.nanoTime)
+     * @param data buffer del datagramma
+     * @param length lunghezza del datagramma
+     */
+    public synchronized void registraNotifica(long ricevuta, byte[] data, int length) {
+        if (chiuso) return;
+        try {
+            out.write(NOTIFICA);
+            scriviVarint(Math.max(0, ricevuta - inizio));
+            scriviVarint(length);
+            out.write(data, 0, length);
+            record++;
+        } catch (IOException e) {
+            interrompi(e);
+        }
+    }
+
+    /**
+     * @return numero di record scritti
+     */
+    public synchronized long getRecord() {
+        return record;
+    }
+
+    private void scriviVarint(long valore) throws IOException {
+        while ((valore & ~0x7FL) != 0) {
+            out.write((int) ((valore & 0x7F) | 0x80));
+            valore >>>= 7;
+        }
+        out.write((int) valore);
+    }
+
+    private void scriviInt(int valore) throws IOException {
+        out.write(valore >>> 24);
+        out.write(valore >>> 16);
+        out.write(valore >>> 8);
+        out.write(valore);
+    }
+
+    /**
+     * Un errore di scrittura (ad esempio disco pieno) ferma la registrazione, non il client
+     */
+    private void interrompi(IOException e) {
+        System.err.println("Registrazione del traffico interrotta: " + e.getMessage());
+        close();
+    }
+
+    /**
+     * Scrive su disco i record rimasti nel buffer e ferma la registrazione
+     */
+    @Override
+    public synchronized void close() {
+        if (chiuso) return;
+        chiuso = true;
+        attivo.compareAndSet(this, null);
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
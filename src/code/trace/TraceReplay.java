@@ -0,0 +1,215 @@
+package code.trace;
+
+import code.entities.Response;
+import code.metrics.ClientMetrics;
+import code.metrics.LatencyHistogram;
+import code.net.Connection;
+import code.utils.AppConfig;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Riproduce un trace registrato da {@link TraceRecorder} contro un server: ogni connessione del trace diventa una
+ * connessione del replay, con le stesse richieste nello stesso ordine, tutte in parallelo.<br>
+ * Alla velocità 1x (o Nx) ogni richiesta parte all'istante registrato (diviso per N), anche se la risposta alla
+ * precedente non è ancora arrivata, e la latenza viene misurata dall'istante previsto, come nel load test in
+ * modalità open-loop; alla velocità massima ogni connessione attende la risposta prima di inviare la richiesta
+ * successiva. Il report confronta, per comando, le latenze del trace con quelle del replay e conta le risposte con
+ * status diverso da quello registrato.<br>
+ * Le richieste del trace vengono caricate in memoria, raggruppate per connessione.
+ */
+public class TraceReplay {
+    private final ReplayConfig config;
+
+    private final String hostName;
+
+    private final int port;
+
+    // richieste per connessione del trace, in ordine di invio
+    private final Map<Integer, List<TraceReader.Record>> connessioni;
+
+    // latenze (in nanosecondi) registrate nel trace e misurate nel replay, per comando
+    private final Map<String, LatencyHistogram> originali;
+    private final Map<String, LatencyHistogram> replay;
+
+    // risposte con status diverso da quello registrato, per comando
+    private final Map<String, AtomicLong> statusDiversi;
+
+    private final AtomicLong connessioniFallite;
+
+    private long notifiche;
+
+    // istante della prima richiesta del trace e durata del trace, in nanosecondi
+    private long origine;
+    private long durataTrace;
+
+    public TraceReplay(ReplayConfig config, String hostName, int port) {
+        this.config = config;
+        this.hostName = hostName;
+        this.port = port;
+        this.connessioni = new LinkedHashMap<>();
+        this.originali = new ConcurrentHashMap<>();
+        this.replay = new ConcurrentHashMap<>();
+        this.statusDiversi = new ConcurrentHashMap<>();
+        this.connessioniFallite = new AtomicLong();
+    }
+
+    /**
+     * Carica il trace, lo riproduce e stampa il report finale
+     * @throws IOException se il trace non può essere letto
+     */
+    public void run() throws IOException, InterruptedException {
+        carica(config.getFile());
+        double velocita = config.getVelocita();
+        int copie = config.getCopie();
+        String password = config.getPassword();
+        int totale = connessioni.size() * copie;
+        System.out.println("Replay di " + config.getFile() + " verso " + hostName + ":" + port + ": " + totale
+                + " connessioni, velocità " + (velocita == 0 ? "massima" : velocita + "x"));
+
+        ExecutorService executor = creaExecutor();
+        CountDownLatch fine = new CountDownLatch(totale);
+        // margine per avviare tutte le connessioni prima della prima richiesta
+        long inizio = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        for (int copia = 0; copia < copie; copia++) {
+            for (List<TraceReader.Record> richieste : connessioni.values()) {
+                executor.execute(() -> {
+                    try {
+                        riproduci(richieste, inizio, velocita, password);
+                    } finally {
+                        fine.countDown();
+                    }
+                });
+            }
+        }
+        fine.await();
+        executor.shutdown();
+        stampaReport((System.nanoTime() - inizio) / 1e9);
+    }
+
+    /**
+     * Legge il trace, raggruppando le richieste per connessione e portando l'istante della prima a 0
+     */
+    private void carica(String file) throws IOException {
+        long prima = Long.MAX_VALUE;
+        long ultima = 0;
+        try (TraceReader reader = new TraceReader(file)) {
+            TraceReader.Record record;
+            while ((record = reader.leggi()) != null) {
+                if (!record.isRichiesta()) {
+                    notifiche++;
+                    continue;
+                }
+                connessioni.computeIfAbsent(record.getConnessione(), c -> new ArrayList<>()).add(record);
+                prima = Math.min(prima, record.getTempo());
+                ultima = Math.max(ultima, record.getTempo());
+            }
+            if (reader.isTroncato()) System.out.println("Il trace termina con un record incompleto, ignorato");
+        }
+        for (List<TraceReader.Record> richieste : connessioni.values()) {
+            richieste.sort(Comparator.comparingLong(TraceReader.Record::getTempo));
+        }
+        origine = connessioni.isEmpty() ? 0 : prima;
+        durataTrace = ultima - origine;
+        // le connessioni partono nell'ordine in cui sono state aperte nel trace
+        List<Map.Entry<Integer, List<TraceReader.Record>>> ordinate = new ArrayList<>(connessioni.entrySet());
+        ordinate.sort(Comparator.comparingLong(e -> e.getValue().get(0).getTempo()));
+        connessioni.clear();
+        for (Map.Entry<Integer, List<TraceReader.Record>> entry : ordinate) connessioni.put(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Riproduce le richieste di una connessione del trace su una nuova connessione
+     * @param password password per login e register, vuota per inviarli come registrati
+     */
+    private void riproduci(List<TraceReader.Record> richieste, long inizio, double velocita, String password) {
+        try (Connection connection = Connection.open(hostName, port)) {
+            CompletableFuture<?> ultima = CompletableFuture.completedFuture(null);
+            for (TraceReader.Record record : richieste) {
+                if (connection.isClosed()) break;
+                long previsto = velocita == 0 ? System.nanoTime() : inizio + (long) ((record.getTempo() - origine) / velocita);
+                aspettaFino(previsto);
+                String richiesta = password.isEmpty() ? record.getRichiesta()
+                        : TraceRecorder.conPassword(record.getRichiesta(), password);
+                ultima = connection.send(richiesta).handle((response, errore) -> {
+                    registra(record, System.nanoTime() - previsto, response);
+                    return null;
+                });
+                if (velocita == 0) ultima.join();
+            }
+            // le risposte arrivano in ordine: quando è arrivata l'ultima sono arrivate tutte
+            ultima.join();
+        } catch (IOException e) {
+            connessioniFallite.incrementAndGet();
+        }
+    }
+
+    private void registra(TraceReader.Record record, long latenza, Response response) {
+        String comando = ClientMetrics.comando(record.getRichiesta());
+        originali.computeIfAbsent(comando, c -> new LatencyHistogram()).record(record.getLatenza());
+        replay.computeIfAbsent(comando, c -> new LatencyHistogram()).record(latenza);
+        AtomicLong diversi = statusDiversi.computeIfAbsent(comando, c -> new AtomicLong());
+        int status = response == null ? 0 : response.getStatus();
+        if (status != record.getStatus()) diversi.incrementAndGet();
+    }
+
+    /**
+     * Crea l'executor delle connessioni: un virtual thread per connessione se la JVM li supporta (Java 21+),
+     * altrimenti un thread di piattaforma per connessione
+     */
+    private static ExecutorService creaExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "replay-session");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private static void aspettaFino(long deadline) {
+        long attesa;
+        while ((attesa = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(attesa);
+        }
+    }
+
+    private void stampaReport(double secondi) {
+        StringBuilder builder = new StringBuilder("-------------------------\nRisultati replay (")
+                .append(String.format(Locale.ROOT, "%.1fs, trace di %.1fs, ", secondi, durataTrace / 1e9))
+                .append(notifiche).append(" notifiche nel trace, ")
+                .append(connessioniFallite.get()).append(" connessioni fallite)\n");
+        builder.append(String.format(Locale.ROOT, "%-16s %10s %10s %10s %10s %10s %10s %10s %10s%n",
+                "comando", "richieste", "p50 trace", "p50", "delta", "p99 trace", "p99", "delta", "status !="));
+
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(replay).entrySet()) {
+            LatencyHistogram misurate = entry.getValue();
+            LatencyHistogram registrate = originali.get(entry.getKey());
+            double p50 = misurate.getValueAtPercentile(50) / 1e6;
+            double p50Trace = registrate.getValueAtPercentile(50) / 1e6;
+            double p99 = misurate.getValueAtPercentile(99) / 1e6;
+            double p99Trace = registrate.getValueAtPercentile(99) / 1e6;
+            builder.append(String.format(Locale.ROOT, "%-16s %10d %10.3f %10.3f %+10.3f %10.3f %10.3f %+10.3f %10d%n",
+                    entry.getKey(), misurate.getCount(), p50Trace, p50, p50 - p50Trace, p99Trace, p99, p99 - p99Trace,
+                    statusDiversi.get(entry.getKey()).get()));
+        }
+        builder.append("(latenze in ms)\n-------------------------");
+
+        System.out.println(builder);
+    }
+
+    /**
+     * Riproduce un trace verso il server configurato in application.properties
+     * @param args parametri nella forma nome=valore (vedi {@link ReplayConfig})
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ReplayConfig config = ReplayConfig.fromArgs(args);
+        new TraceReplay(config, AppConfig.getServerAddress(), AppConfig.getServerPort()).run();
+    }
+}
@@ -2,6 +2,8 @@ package code.utils;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class AppConfig {
@@ -39,4 +41,231 @@ public class AppConfig {
     public static Integer getServerPort() throws NumberFormatException {
         return Integer.parseInt(properties.getProperty("server.port", "800"));
     }
+
+    /**
+     * Permette di ottenere i server a cui connettersi, specificati dalla proprietà server.endpoints come elenco
+     * separato da virgole di indirizzi host:porta
+     * @return gli indirizzi dei server, in assenza quello di server.address e server.port
+     */
+    public static List<String> getServerEndpoints() {
+        List<String> endpoints = new ArrayList<>();
+        for (String endpoint : properties.getProperty("server.endpoints", "").split(",")) {
+            if (!endpoint.trim().isEmpty()) endpoints.add(endpoint.trim());
+        }
+        if (endpoints.isEmpty()) endpoints.add(getServerAddress() + ":" + getServerPort());
+        return endpoints;
+    }
+
+    /**
+     * Permette di ottenere ogni quanto sondare i server per misurarne la latenza di connessione, specificato dalla
+     * proprietà server.probe.interval
+     * @return il periodo in millisecondi, o in assenza quello di default (0, sonde disabilitate)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Long getServerProbeInterval() throws NumberFormatException {
+        return Long.parseLong(properties.getProperty("server.probe.interval", "0").trim());
+    }
+
+    /**
+     * Permette di ottenere l'attesa prima del primo tentativo di riconnessione, specificata dalla proprietà
+     * server.reconnect.min
+     * @return l'attesa in millisecondi, o in assenza quella di default (100)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Long getReconnectMin() throws NumberFormatException {
+        return Long.parseLong(properties.getProperty("server.reconnect.min", "100").trim());
+    }
+
+    /**
+     * Permette di ottenere l'attesa massima tra i tentativi di riconnessione, specificata dalla proprietà
+     * server.reconnect.max
+     * @return l'attesa in millisecondi, o in assenza quella di default (5000)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Long getReconnectMax() throws NumberFormatException {
+        return Long.parseLong(properties.getProperty("server.reconnect.max", "5000").trim());
+    }
+
+    /**
+     * Permette di ottenere il trasporto da usare per la connessione al server, specificato dalla proprietà
+     * client.transport
+     * @return "legacy" (Scanner/PrintWriter) o "nio" (SocketChannel), in assenza quello di default (legacy)
+     */
+    public static String getTransport() {
+        return properties.getProperty("client.transport", "legacy").trim();
+    }
+
+    /**
+     * Permette di ottenere il protocollo da negoziare con il server, specificato dalla proprietà client.protocol
+     * @return "text" (json compatto su righe di testo) o "binary" (messaggi preceduti dalla lunghezza, con ritorno al
+     * testo se il server non lo supporta), in assenza quello di default (text)
+     */
+    public static String getProtocol() {
+        return properties.getProperty("client.protocol", "text").trim();
+    }
+
+    /**
+     * Permette di ottenere la compressione dei body da negoziare con il server, specificata dalla proprietà
+     * client.compression
+     * @return "none", "deflate" o "gzip", in assenza quella di default (none)
+     */
+    public static String getCompression() {
+        return properties.getProperty("client.compression", "none").trim();
+    }
+
+    /**
+     * Permette di ottenere la soglia oltre la quale il server comprime i body, specificata dalla proprietà
+     * client.compression.threshold
+     * @return la soglia in byte, o in assenza quella di default (1024)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Integer getCompressionThreshold() throws NumberFormatException {
+        return Integer.parseInt(properties.getProperty("client.compression.threshold", "1024").trim());
+    }
+
+    /**
+     * Permette di ottenere la dimensione della cache delle ricerche, specificata dalla proprietà cache.size
+     * @return il numero massimo di ricerche salvate, o in assenza quello di default (0, cache disabilitata)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Integer getCacheSize() throws NumberFormatException {
+        return Integer.parseInt(properties.getProperty("cache.size", "0").trim());
+    }
+
+    /**
+     * Permette di ottenere la durata delle ricerche salvate in cache, specificata dalla proprietà cache.ttl
+     * @return la durata in millisecondi, o in assenza quella di default (30000)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Long getCacheTtl() throws NumberFormatException {
+        return Long.parseLong(properties.getProperty("cache.ttl", "30000").trim());
+    }
+
+    /**
+     * Permette di ottenere il file in cui registrare il traffico del client, specificato dalla proprietà trace.file
+     * @return il file specificato, o in assenza una stringa vuota (traffico non registrato)
+     */
+    public static String getTraceFile() {
+        return properties.getProperty("trace.file", "").trim();
+    }
+
+    /**
+     * Permette di sapere se mantenere le classifiche locali delle città, specificato dalla proprietà ranking.index
+     * @return il valore della proprietà, in assenza quello di default (true)
+     */
+    public static boolean isRankingIndex() {
+        return Boolean.parseBoolean(properties.getProperty("ranking.index", "true").trim());
+    }
+
+    /**
+     * Permette di ottenere l'interfaccia di rete su cui ricevere le notifiche multicast, specificata dalla proprietà
+     * multicast.interface (nome, ad esempio eth0, oppure un indirizzo dell'interfaccia)
+     * @return il valore della proprietà, in assenza stringa vuota (si usa l'interfaccia predefinita del sistema)
+     */
+    public static String getMulticastInterface() {
+        return properties.getProperty("multicast.interface", "").trim();
+    }
+
+    /**
+     * Permette di ottenere quanti cambi di prima posizione conservare nello storico delle notifiche, specificato dalla
+     * proprietà notifications.history
+     * @return il numero di cambi, o in assenza quello di default (4096); 0 disabilita storico e deduplicazione
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Integer getNotificationHistory() throws NumberFormatException {
+        return Integer.parseInt(properties.getProperty("notifications.history", "4096").trim());
+    }
+
+    /**
+     * Permette di ottenere la dimensione del pool di connessioni per le ricerche, specificata dalla proprietà pool.size
+     * @return il numero massimo di connessioni del pool, o in assenza quello di default (0, pool disabilitato)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Integer getPoolSize() throws NumberFormatException {
+        return Integer.parseInt(properties.getProperty("pool.size", "0").trim());
+    }
+
+    /**
+     * Permette di ottenere dopo quanto chiudere le connessioni inattive del pool, specificato dalla proprietà
+     * pool.idle.timeout
+     * @return il timeout in millisecondi, o in assenza quello di default (60000); 0 per non chiuderle mai
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Long getPoolIdleTimeout() throws NumberFormatException {
+        return Long.parseLong(properties.getProperty("pool.idle.timeout", "60000").trim());
+    }
+
+    /**
+     * Permette di ottenere quante connessioni del pool aprire all'avvio, specificato dalla proprietà pool.warmup
+     * @return il numero di connessioni, o in assenza quello di default (0)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Integer getPoolWarmup() throws NumberFormatException {
+        return Integer.parseInt(properties.getProperty("pool.warmup", "0").trim());
+    }
+
+    /**
+     * Permette di sapere se esporre le metriche del client via JMX, specificato dalla proprietà metrics.jmx
+     * @return il valore della proprietà, in assenza quello di default (true)
+     */
+    public static boolean isMetricsJmx() {
+        return Boolean.parseBoolean(properties.getProperty("metrics.jmx", "true").trim());
+    }
+
+    /**
+     * Permette di ottenere il file su cui scrivere periodicamente le metriche, specificato dalla proprietà
+     * metrics.dump.file
+     * @return il percorso del file, o null se la scrittura è disabilitata
+     */
+    public static String getMetricsDumpFile() {
+        String file = properties.getProperty("metrics.dump.file");
+        return file == null || file.trim().isEmpty() ? null : file.trim();
+    }
+
+    /**
+     * Permette di ottenere ogni quanto scrivere le metriche su file, specificato dalla proprietà metrics.dump.interval
+     * @return il periodo in secondi, o in assenza quello di default (60)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Long getMetricsDumpInterval() throws NumberFormatException {
+        return Long.parseLong(properties.getProperty("metrics.dump.interval", "60").trim());
+    }
+
+    /**
+     * Permette di ottenere il file del journal in cui salvare le recensioni quando il server non è raggiungibile,
+     * specificato dalla proprietà journal.file
+     * @return il percorso del file, o null se il journal è disabilitato (default)
+     */
+    public static String getJournalFile() {
+        String file = properties.getProperty("journal.file", "");
+        return file.trim().isEmpty() ? null : file.trim();
+    }
+
+    /**
+     * Permette di ottenere quante recensioni del journal reinviare per ogni scrittura sul socket, specificato dalla
+     * proprietà journal.batch
+     * @return la dimensione dei batch, o in assenza quella di default (50)
+     * @throws NumberFormatException se il valore nella proprietà non è un intero
+     */
+    public static Integer getJournalBatch() throws NumberFormatException {
+        return Integer.parseInt(properties.getProperty("journal.batch", "50").trim());
+    }
+
+    /**
+     * Permette di sapere se sincronizzare su disco ogni scrittura del journal, specificato dalla proprietà journal.sync
+     * @return il valore della proprietà, in assenza quello di default (true)
+     */
+    public static boolean isJournalSync() {
+        return Boolean.parseBoolean(properties.getProperty("journal.sync", "true").trim());
+    }
+
+    /**
+     * Permette di ottenere una proprietà generica del file di configurazione
+     * @param key nome della proprietà
+     * @param defaultValue valore restituito se la proprietà non è presente
+     * @return il valore della proprietà, o quello di default
+     */
+    public static String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue).trim();
+    }
 }